@@ -0,0 +1,71 @@
+package mathquiz.bench;
+
+import mathquiz.domain.DifficultyManager;
+import mathquiz.domain.Operation;
+import mathquiz.domain.Problem;
+import mathquiz.domain.ProblemStats;
+import mathquiz.domain.Progression;
+import mathquiz.domain.SpacedRepetition;
+import org.openjdk.jmh.annotations.*;
+
+import java.time.Clock;
+import java.time.Instant;
+import java.time.ZoneOffset;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Per-answer domain work: SM-2 update, difficulty progression and answer checking.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class DomainBenchmark {
+
+    private final Clock clock = Clock.fixed(Instant.parse("2024-06-15T10:00:00Z"), ZoneOffset.UTC);
+    private final ProblemStats seen = new ProblemStats(Operation.MULTIPLICATION, 7, 8,
+            2.36, 6.0, Instant.parse("2024-06-14T10:00:00Z"), 3, 5, 4);
+    private final Problem problem = new Problem(56, 8, Operation.DIVISION);
+
+    private DifficultyManager difficulty;
+    private int attempt;
+
+    /**
+     * Fresh progression each iteration, so recordAttempt keeps crossing range expansions
+     * instead of settling at the max range.
+     */
+    @Setup(Level.Iteration)
+    public void setUp() {
+        difficulty = new DifficultyManager();
+        attempt = 0;
+    }
+
+    @Benchmark
+    public ProblemStats updateStatsCorrect() {
+        return SpacedRepetition.updateStats(seen, true, clock);
+    }
+
+    @Benchmark
+    public ProblemStats updateStatsIncorrect() {
+        return SpacedRepetition.updateStats(seen, false, clock);
+    }
+
+    @Benchmark
+    public Progression recordAttempt() {
+        // One miss in ten keeps accuracy near the expansion threshold
+        return difficulty.recordAttempt(Operation.ADDITION, attempt++ % 10 != 0);
+    }
+
+    @Benchmark
+    public List<Operation> getUnlockedOperations() {
+        return difficulty.getUnlockedOperations();
+    }
+
+    @Benchmark
+    public int problemAnswer() {
+        return problem.answer();
+    }
+}
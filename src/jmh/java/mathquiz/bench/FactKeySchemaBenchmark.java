@@ -0,0 +1,205 @@
+package mathquiz.bench;
+
+import mathquiz.domain.FactKey;
+import mathquiz.domain.Operation;
+import mathquiz.domain.OperationProgress;
+import mathquiz.domain.ProblemSpace;
+import mathquiz.domain.ProblemStats;
+import mathquiz.storage.DatabaseSetup;
+import mathquiz.storage.SqliteRepository;
+import org.flywaydb.core.Flyway;
+import org.jdbi.v3.core.Handle;
+import org.jdbi.v3.core.Jdbi;
+import org.jdbi.v3.core.statement.PreparedBatch;
+import org.openjdk.jmh.annotations.*;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Optional;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Problem stats and attempts stored under (operation, operand1, operand2) columns (schema 2)
+ * versus a packed {@link FactKey} (schema 3).
+ *
+ * <p>Each trial migrates a fresh database file to the schema version, fills it with every fact
+ * of every operation's max range for 50 users (one stats row and one attempt each),
+ * vacuums it and prints the on-disk size of each table and index from dbstat. The benchmark
+ * then times point lookups of random facts through Jdbi, as the repository does them.
+ * Run with {@code gradle jmh -Pjmh.include=FactKeySchema}.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class FactKeySchemaBenchmark {
+
+    private static final int USERS = 50;
+
+    /** 2: before fact keys; 3: after */
+    @Param({"2", "3"})
+    public String schemaVersion;
+
+    private Path dir;
+    private DatabaseSetup.SetupResult db;
+    private Lookup lookup;
+    private int[] facts;
+    private Random random;
+
+    @FunctionalInterface
+    private interface Lookup {
+        Optional<ProblemStats> find(int userId, int factKey);
+    }
+
+    @Setup(Level.Trial)
+    public void setUp() throws IOException {
+        dir = Files.createTempDirectory("factkey-bench");
+        Path dbPath = dir.resolve("bench.db");
+        var dataSource = DatabaseSetup.createDataSource(dbPath);
+        Flyway.configure()
+            .dataSource(dataSource)
+            .locations("classpath:db/migration")
+            .target(schemaVersion)
+            .load()
+            .migrate();
+        Jdbi jdbi = DatabaseSetup.createJdbi(dataSource);
+        db = new DatabaseSetup.SetupResult(dataSource, jdbi);
+
+        facts = allFacts();
+        boolean packed = schemaVersion.equals("3");
+        jdbi.useTransaction(handle -> populate(handle, packed));
+        jdbi.useHandle(handle -> handle.execute("VACUUM"));
+        jdbi.useHandle(FactKeySchemaBenchmark::printSizes);
+
+        if (packed) {
+            SqliteRepository repo = new SqliteRepository(jdbi);
+            lookup = (userId, key) -> repo.getProblemStats(userId, FactKey.operation(key),
+                    FactKey.operand1(key), FactKey.operand2(key));
+        } else {
+            lookup = (userId, key) -> findByColumns(jdbi, userId, key);
+        }
+        random = new Random(42);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws IOException {
+        db.close();
+        try (var files = Files.list(dir)) {
+            for (Path file : files.toList()) {
+                Files.delete(file);
+            }
+        }
+        Files.delete(dir);
+    }
+
+    @Benchmark
+    public Optional<ProblemStats> pointLookup() {
+        return lookup.find(1 + random.nextInt(USERS), facts[random.nextInt(facts.length)]);
+    }
+
+    private static int[] allFacts() {
+        List<Integer> keys = new ArrayList<>();
+        for (Operation op : Operation.values()) {
+            ProblemSpace space = ProblemSpace.of(op, new OperationProgress(op).getMaxRange());
+            for (int i = 0; i < space.size(); i++) {
+                keys.add(space.keyAt(i));
+            }
+        }
+        return keys.stream().mapToInt(Integer::intValue).toArray();
+    }
+
+    private void populate(Handle handle, boolean packed) {
+        long ts = Instant.parse("2024-06-15T10:00:00Z").getEpochSecond();
+        PreparedBatch stats = handle.prepareBatch(packed ? """
+            INSERT INTO problem_stats (user_id, fact_key, ease_factor, interval_days, next_review_ts,
+                                       repetitions, total_attempts, total_correct)
+            VALUES (:userId, :factKey, 2.5, 1.0, :ts, 1, 1, 1)
+            """ : """
+            INSERT INTO problem_stats (user_id, operation, operand1, operand2, ease_factor,
+                                       interval_days, next_review_ts, repetitions,
+                                       total_attempts, total_correct)
+            VALUES (:userId, :operation, :operand1, :operand2, 2.5, 1.0, :ts, 1, 1, 1)
+            """);
+        PreparedBatch attempts = handle.prepareBatch(packed ? """
+            INSERT INTO attempts (user_id, ts, fact_key, correct) VALUES (:userId, :ts, :factKey, 1)
+            """ : """
+            INSERT INTO attempts (user_id, ts, operation, operand1, operand2, correct)
+            VALUES (:userId, :ts, :operation, :operand1, :operand2, 1)
+            """);
+
+        for (int userId = 1; userId <= USERS; userId++) {
+            handle.execute("INSERT INTO users (id, name, created_at) VALUES (?, ?, '2024-01-01T00:00:00Z')",
+                    userId, "user" + userId);
+            for (int key : facts) {
+                for (PreparedBatch batch : List.of(stats, attempts)) {
+                    batch.bind("userId", userId).bind("ts", ts);
+                    if (packed) {
+                        batch.bind("factKey", key);
+                    } else {
+                        batch.bind("operation", FactKey.operation(key).name())
+                            .bind("operand1", FactKey.operand1(key))
+                            .bind("operand2", FactKey.operand2(key));
+                    }
+                    batch.add();
+                }
+            }
+        }
+        stats.execute();
+        attempts.execute();
+    }
+
+    private static void printSizes(Handle handle) {
+        long rows = handle.createQuery("SELECT COUNT(*) FROM problem_stats").mapTo(Long.class).one();
+        System.out.printf("%n%d problem_stats rows, %d attempts%n", rows,
+                handle.createQuery("SELECT COUNT(*) FROM attempts").mapTo(Long.class).one());
+        handle.createQuery("""
+                SELECT name, SUM(pgsize) AS bytes FROM dbstat
+                WHERE name IN (SELECT name FROM sqlite_schema WHERE tbl_name IN ('problem_stats', 'attempts'))
+                GROUP BY name ORDER BY name
+                """)
+            .map((rs, ctx) -> String.format("  %-36s %8.2f MB  (%.1f B/row)", rs.getString("name"),
+                    rs.getLong("bytes") / 1e6, (double) rs.getLong("bytes") / rows))
+            .forEach(System.out::println);
+    }
+
+    /**
+     * The point lookup as the repository did it before fact keys.
+     */
+    private static Optional<ProblemStats> findByColumns(Jdbi jdbi, int userId, int key) {
+        return jdbi.withHandle(handle ->
+            handle.createQuery("""
+                SELECT operation, operand1, operand2, ease_factor, interval_days,
+                       next_review_ts, repetitions, total_attempts, total_correct
+                FROM problem_stats
+                WHERE user_id = :userId AND operation = :operation
+                  AND operand1 = :operand1 AND operand2 = :operand2
+                """)
+                .bind("userId", userId)
+                .bind("operation", FactKey.operation(key).name())
+                .bind("operand1", FactKey.operand1(key))
+                .bind("operand2", FactKey.operand2(key))
+                .map((rs, ctx) -> {
+                    long nextReviewTs = rs.getLong("next_review_ts");
+                    Instant nextReview = rs.wasNull() ? null : Instant.ofEpochSecond(nextReviewTs);
+                    return new ProblemStats(
+                        Operation.valueOf(rs.getString("operation")),
+                        rs.getInt("operand1"),
+                        rs.getInt("operand2"),
+                        rs.getDouble("ease_factor"),
+                        rs.getDouble("interval_days"),
+                        nextReview,
+                        rs.getInt("repetitions"),
+                        rs.getInt("total_attempts"),
+                        rs.getInt("total_correct"));
+                })
+                .findFirst()
+        );
+    }
+}
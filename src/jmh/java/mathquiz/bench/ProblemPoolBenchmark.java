@@ -0,0 +1,59 @@
+package mathquiz.bench;
+
+import mathquiz.domain.Operation;
+import mathquiz.domain.OperationProgress;
+import mathquiz.domain.ProblemPool;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Problem generation: pool lookup across every reachable range, and picking from a pool.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ProblemPoolBenchmark {
+
+    @Param({"ADDITION", "SUBTRACTION", "MULTIPLICATION", "DIVISION"})
+    public Operation operation;
+
+    private int minRange;
+    private int maxRange;
+    private ProblemPool largestPool;
+    private Random random;
+
+    @Setup
+    public void setUp() {
+        OperationProgress progress = new OperationProgress(operation);
+        minRange = progress.maxNumber();
+        maxRange = progress.getMaxRange();
+        largestPool = ProblemPool.forOperation(operation, maxRange);
+        random = new Random(42);
+    }
+
+    /**
+     * Look up the pool for each range the operation can reach, from starting to max range.
+     */
+    @Benchmark
+    public void forOperationEveryRange(Blackhole bh) {
+        for (int max = minRange; max <= maxRange; max++) {
+            bh.consume(ProblemPool.forOperation(operation, max));
+        }
+    }
+
+    @Benchmark
+    public Object pickRandom() {
+        return largestPool.pickRandom(random);
+    }
+
+    @Benchmark
+    public int pickRandomKey() {
+        return largestPool.pickRandomKey(random);
+    }
+}
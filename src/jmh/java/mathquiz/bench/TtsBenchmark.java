@@ -0,0 +1,39 @@
+package mathquiz.bench;
+
+import mathquiz.domain.Operation;
+import mathquiz.tts.EstonianSpeechFormatter;
+import mathquiz.tts.TtsCacheService;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Speech text formatting and audio cache keying, done for every problem and feedback shown.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class TtsBenchmark {
+
+    /** Hashing doesn't depend on the cache being enabled, and this one touches no files */
+    private final TtsCacheService tts = TtsCacheService.disabled();
+    private final String text = EstonianSpeechFormatter.formatCorrect(47, Operation.ADDITION, 38, 85);
+
+    @Benchmark
+    public String formatProblem() {
+        return EstonianSpeechFormatter.formatProblem(47, Operation.ADDITION, 38);
+    }
+
+    @Benchmark
+    public String formatCorrect() {
+        return EstonianSpeechFormatter.formatCorrect(47, Operation.ADDITION, 38, 85);
+    }
+
+    @Benchmark
+    public String computeHash() {
+        return tts.computeHash(text);
+    }
+}
@@ -5,17 +5,29 @@ import gg.jte.TemplateEngine;
 import gg.jte.resolve.ResourceCodeResolver;
 import io.javalin.Javalin;
 import io.javalin.rendering.template.JavalinJte;
+import mathquiz.service.QuizActorRegistry;
 import mathquiz.storage.DatabaseSetup;
 import mathquiz.storage.Repository;
 import mathquiz.storage.SqliteRepository;
+import mathquiz.storage.WriteBehindRepository;
 import mathquiz.tts.TtsCacheService;
+import mathquiz.tts.TtsWarmup;
+import mathquiz.web.BoundedSessionCache;
 import mathquiz.web.Routes;
+import mathquiz.web.SqliteSessionDataStore;
+import mathquiz.web.handlers.ActorQuizStateStore;
+import mathquiz.web.handlers.QuizStateSigner;
+import mathquiz.web.handlers.QuizStateStore;
+import mathquiz.web.handlers.SignedQuizStateStore;
+import org.eclipse.jetty.server.session.SessionHandler;
+import org.jdbi.v3.core.Jdbi;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import java.nio.file.Path;
 import java.time.Clock;
+import java.time.Duration;
 
 public class App {
     private static final Logger log = LoggerFactory.getLogger(App.class);
@@ -35,27 +47,139 @@ public class App {
         } catch (java.io.IOException e) {
             throw new RuntimeException("Failed to create data directory", e);
         }
-        var dbSetup = DatabaseSetup.setup(dbPath);
-        Repository repo = new SqliteRepository(dbSetup.jdbi());
+        int dbReaders = Integer.parseInt(System.getenv().getOrDefault("DB_READERS", "0"));
+        boolean syncNormal = Boolean.parseBoolean(System.getenv().getOrDefault("DB_SYNC_NORMAL", "false"));
+        var dbSetup = dbReaders > 0
+                ? DatabaseSetup.setupWal(dbPath, dbReaders, syncNormal)
+                : DatabaseSetup.setup(dbPath);
+        Repository repo = createRepository(dbSetup);
         
-        // Initialize TTS cache
-        TtsCacheService ttsService = new TtsCacheService(ttsDir, ttsSpeaker);
+        // Initialize TTS cache, keeping the hottest audio (TTS_MEMORY_BYTES, default 32 MiB) in memory
+        long ttsMemoryBytes = Long.parseLong(System.getenv().getOrDefault("TTS_MEMORY_BYTES", String.valueOf(32L << 20)));
+        TtsCacheService ttsService = new TtsCacheService(ttsDir, ttsSpeaker, ttsMemoryBytes);
         
-        var app = createApp(repo, Clock.systemDefaultZone(), ttsService);
+        Clock clock = Clock.systemDefaultZone();
+        QuizStateStore quizState = createQuizStateStore(repo, clock);
+        
+        // Sessions persist in the database; only the most recently active stay in memory
+        int sessionsInMemory = Integer.parseInt(System.getenv().getOrDefault("SESSIONS_IN_MEMORY", "1000"));
+        SessionHandler sessions = createSessionHandler(dbSetup.jdbi(), sessionsInMemory);
+        
+        TtsWarmup ttsWarmup = createTtsWarmup(ttsService);
+        
+        // Admin status is served only if ADMIN_TOKEN is set, to requests presenting it as a bearer token
+        String adminToken = System.getenv("ADMIN_TOKEN");
+        if (adminToken != null && adminToken.isBlank()) {
+            adminToken = null;
+        }
+        
+        var app = createApp(repo, clock, ttsService, quizState, sessions, ttsWarmup, adminToken);
         app.start(port);
+        if (ttsWarmup != null) {
+            ttsWarmup.start();
+        }
+        
+        // Stop the server first so live quiz state is flushed before pending writes are drained
+        Runtime.getRuntime().addShutdownHook(new Thread(() -> {
+            if (ttsWarmup != null) {
+                ttsWarmup.close();
+            }
+            app.stop();
+            if (repo instanceof WriteBehindRepository writeBehind) {
+                writeBehind.close();
+            }
+        }, "shutdown"));
         
         log.info("Math Quiz started on port {}", port);
     }
     
+    /**
+     * Create the repository, optionally with write-behind persistence.
+     * WRITE_BEHIND_MS sets the durability window; 0 (default) commits every answer immediately.
+     * DB_SYNC_NORMAL=true (WAL mode only, DB_READERS > 0) skips the fsync on each commit, so
+     * committed answers since the last checkpoint can also be lost on power failure.
+     */
+    private static Repository createRepository(DatabaseSetup.SetupResult dbSetup) {
+        SqliteRepository sqliteRepo = new SqliteRepository(dbSetup.jdbi(), dbSetup.readJdbi());
+        long windowMs = Long.parseLong(System.getenv().getOrDefault("WRITE_BEHIND_MS", "0"));
+        if (windowMs <= 0) {
+            return sqliteRepo;
+        }
+
+        var writeBehind = new WriteBehindRepository(sqliteRepo, Duration.ofMillis(windowMs));
+        log.info("Write-behind persistence enabled ({} ms durability window)", windowMs);
+        return writeBehind;
+    }
+    
+    /**
+     * Quiz state in this process by default. Setting QUIZ_STATE_SECRET switches to stateless mode,
+     * where the state travels in a cookie signed with that secret, so several nodes can share one
+     * database; every node must use the same secret.
+     * In-process state is bounded by QUIZ_MAX_USERS and QUIZ_IDLE_MINUTES.
+     */
+    private static QuizStateStore createQuizStateStore(Repository repo, Clock clock) {
+        String secret = System.getenv("QUIZ_STATE_SECRET");
+        if (secret != null && !secret.isBlank()) {
+            log.info("Stateless quiz state enabled (signed cookie)");
+            return new SignedQuizStateStore(repo, clock, new QuizStateSigner(secret));
+        }
+
+        int maxUsers = Integer.parseInt(System.getenv().getOrDefault("QUIZ_MAX_USERS",
+                String.valueOf(QuizActorRegistry.DEFAULT_MAX_ACTORS)));
+        long idleMinutes = Long.parseLong(System.getenv().getOrDefault("QUIZ_IDLE_MINUTES",
+                String.valueOf(QuizActorRegistry.DEFAULT_IDLE_TIMEOUT.toMinutes())));
+        return new ActorQuizStateStore(
+                new QuizActorRegistry(repo, clock, maxUsers, Duration.ofMinutes(idleMinutes)));
+    }
+    
+    /**
+     * Background synthesis of every utterance, if TTS_WARMUP is true. It resumes where it stopped
+     * after a restart; TTS_WARMUP_CONCURRENCY and TTS_WARMUP_RATE (fetches per second) keep the
+     * load on the TTS API in check.
+     */
+    private static TtsWarmup createTtsWarmup(TtsCacheService ttsService) {
+        if (!Boolean.parseBoolean(System.getenv().getOrDefault("TTS_WARMUP", "false"))) {
+            return null;
+        }
+        int concurrency = Integer.parseInt(System.getenv().getOrDefault("TTS_WARMUP_CONCURRENCY", "2"));
+        double rate = Double.parseDouble(System.getenv().getOrDefault("TTS_WARMUP_RATE", "2"));
+        log.info("TTS warm-up enabled ({} concurrent, {} per second)", concurrency, rate);
+        return new TtsWarmup(ttsService, concurrency, rate);
+    }
+    
     public static Javalin createApp(Repository repo, Clock clock, TtsCacheService ttsService) {
+        return createApp(repo, clock, ttsService,
+                new ActorQuizStateStore(new QuizActorRegistry(repo, clock)), null);
+    }
+    
+    /**
+     * Create the app with the given quiz state store, which is closed (flushed) when the server stops,
+     * and a custom session handler, or Jetty's in-memory sessions if null.
+     */
+    public static Javalin createApp(Repository repo, Clock clock, TtsCacheService ttsService,
+                                    QuizStateStore quizState, SessionHandler sessions) {
+        return createApp(repo, clock, ttsService, quizState, sessions, null, null);
+    }
+    
+    /**
+     * Create the app as above, with admin routes behind the given bearer token (not served if null)
+     * reporting the given TTS warm-up's progress (if not null).
+     */
+    public static Javalin createApp(Repository repo, Clock clock, TtsCacheService ttsService,
+                                    QuizStateStore quizState, SessionHandler sessions, TtsWarmup ttsWarmup,
+                                    String adminToken) {
         var templateEngine = createTemplateEngine();
         
         var app = Javalin.create(config -> {
             config.staticFiles.add("/public");
             config.fileRenderer(new JavalinJte(templateEngine));
+            config.events.serverStopped(quizState::close);
+            if (sessions != null) {
+                config.jetty.modifyServletContextHandler(handler -> handler.setSessionHandler(sessions));
+            }
         });
         
-        new Routes(repo, clock, ttsService).configure(app);
+        new Routes(repo, quizState, ttsService, ttsWarmup, adminToken).configure(app);
         
         return app;
     }
@@ -74,6 +198,23 @@ public class App {
         return createApp(repo, clock, TtsCacheService.disabled());
     }
     
+    /**
+     * Sessions stored in SQLite, with at most maxInMemory of them cached on the heap.
+     * Sessions expire after 30 days without a request, like the remembered-player cookie.
+     */
+    public static SessionHandler createSessionHandler(Jdbi jdbi, int maxInMemory) {
+        var sessions = new SessionHandler();
+        var cache = new BoundedSessionCache(sessions, maxInMemory);
+        cache.setSessionDataStore(new SqliteSessionDataStore(jdbi));
+        // Also drop sessions idle for half an hour, saving them first
+        cache.setEvictionPolicy((int) Duration.ofMinutes(30).toSeconds());
+        cache.setSaveOnInactiveEviction(true);
+        sessions.setSessionCache(cache);
+        sessions.setMaxInactiveInterval((int) Duration.ofDays(30).toSeconds());
+        sessions.setHttpOnly(true);
+        return sessions;
+    }
+    
     private static TemplateEngine createTemplateEngine() {
         var codeResolver = new ResourceCodeResolver("jte");
         return TemplateEngine.create(codeResolver, ContentType.Html);
@@ -1,7 +1,6 @@
 package mathquiz.domain;
 
 import java.util.ArrayList;
-import java.util.EnumMap;
 import java.util.List;
 import java.util.Map;
 
@@ -9,49 +8,104 @@ import static mathquiz.domain.OperationProgress.RANGE_TO_UNLOCK_NEXT_OP;
 
 /**
  * Manages difficulty progression across all operations.
+ *
+ * <p>Progress is held in an array by operation ordinal, and the unlocked set as a bitmask
+ * with a precomputed immutable list per mask, so queries on the answer path allocate nothing.
+ * Operations unlock in declaration order: each one unlocks the next.
  */
 public class DifficultyManager {
 
-    /** Order of operations for unlocking */
-    private static final List<Operation> OPERATION_ORDER = List.of(
-        Operation.ADDITION,
-        Operation.SUBTRACTION,
-        Operation.MULTIPLICATION,
-        Operation.DIVISION
-    );
+    private static final Operation[] OPERATIONS = Operation.values();
 
-    private final Map<Operation, OperationProgress> operations;
+    private static final int ALL_OPERATIONS_MASK = (1 << OPERATIONS.length) - 1;
 
+    /** Unlocked operations in declaration order, indexed by mask */
+    private static final List<List<Operation>> UNLOCKED_LISTS = unlockedLists();
+
+    private final OperationProgress[] operations = new OperationProgress[OPERATIONS.length];
+
+    /** Bitmask (by operation ordinal) of unlocked operations */
+    private int unlockedMask;
+
+    /** Progress version last persisted, per operation ordinal */
+    private final int[] savedVersions = new int[OPERATIONS.length];
+
+    /**
+     * Create a DifficultyManager for a new user. Nothing is saved yet,
+     * so any progress that differs from a fresh OperationProgress is dirty.
+     */
     public DifficultyManager() {
-        this.operations = new EnumMap<>(Operation.class);
-        for (Operation op : Operation.values()) {
+        for (Operation op : OPERATIONS) {
             OperationProgress progress = new OperationProgress(op);
             // Only addition unlocked by default
             if (op == Operation.ADDITION) {
                 progress.unlock();
             }
-            operations.put(op, progress);
+            operations[op.ordinal()] = progress;
         }
+        this.unlockedMask = computeUnlockedMask();
     }
 
     /**
      * Create a DifficultyManager with pre-existing progress (e.g., from database).
      */
     public DifficultyManager(Map<Operation, OperationProgress> operations) {
-        this.operations = new EnumMap<>(operations);
+        for (Operation op : OPERATIONS) {
+            this.operations[op.ordinal()] = operations.get(op);
+        }
+        this.unlockedMask = computeUnlockedMask();
+        // Given state is treated as saved
+        markSaved(ALL_OPERATIONS_MASK);
+    }
+
+    private static List<List<Operation>> unlockedLists() {
+        List<List<Operation>> lists = new ArrayList<>();
+        for (int mask = 0; mask <= ALL_OPERATIONS_MASK; mask++) {
+            List<Operation> list = new ArrayList<>();
+            for (Operation op : OPERATIONS) {
+                if ((mask & bit(op)) != 0) {
+                    list.add(op);
+                }
+            }
+            lists.add(List.copyOf(list));
+        }
+        return List.copyOf(lists);
+    }
+
+    private static int bit(Operation operation) {
+        return 1 << operation.ordinal();
+    }
+
+    private int computeUnlockedMask() {
+        int mask = 0;
+        for (Operation op : OPERATIONS) {
+            if (operations[op.ordinal()].isUnlocked()) {
+                mask |= bit(op);
+            }
+        }
+        return mask;
     }
 
     /**
-     * Get list of currently unlocked operations.
+     * Get list of currently unlocked operations, in declaration order.
+     * The list is shared and immutable.
      */
     public List<Operation> getUnlockedOperations() {
-        List<Operation> unlocked = new ArrayList<>();
-        for (Operation op : Operation.values()) {
-            if (operations.get(op).isUnlocked()) {
-                unlocked.add(op);
-            }
-        }
-        return unlocked;
+        return UNLOCKED_LISTS.get(unlockedMask);
+    }
+
+    /**
+     * Bitmask (by operation ordinal) of unlocked operations.
+     */
+    public int unlockedMask() {
+        return unlockedMask;
+    }
+
+    /**
+     * Number of unlocked operations.
+     */
+    public int unlockedCount() {
+        return Integer.bitCount(unlockedMask);
     }
 
     /**
@@ -59,7 +113,7 @@ public class DifficultyManager {
      * @return Tuple of (minValue, maxValue)
      */
     public int[] getRange(Operation operation) {
-        OperationProgress progress = operations.get(operation);
+        OperationProgress progress = operations[operation.ordinal()];
         return new int[] { 1, progress.maxNumber() };
     }
 
@@ -67,45 +121,32 @@ public class DifficultyManager {
      * Get the progress for a specific operation.
      */
     public OperationProgress getProgress(Operation operation) {
-        return operations.get(operation);
+        return operations[operation.ordinal()];
     }
 
     /**
      * Record an attempt and check for progression.
-     * @return true if range was expanded or new operation was unlocked
+     * @return what changed; {@link Progression#NONE} if nothing did
      */
-    public boolean recordAttempt(Operation operation, boolean correct) {
-        OperationProgress progress = operations.get(operation);
+    public Progression recordAttempt(Operation operation, boolean correct) {
+        OperationProgress progress = operations[operation.ordinal()];
         progress.recordAttempt(correct);
 
-        boolean progressionOccurred = false;
-
-        if (progress.shouldExpandRange()) {
-            progress.expandRange();
-            progressionOccurred = true;
-
-            // Check if this unlocks a new operation
-            if (progress.maxNumber() >= RANGE_TO_UNLOCK_NEXT_OP) {
-                Operation nextOp = getNextOperation(operation);
-                if (nextOp != null && !operations.get(nextOp).isUnlocked()) {
-                    operations.get(nextOp).unlock();
-                    progressionOccurred = true;
-                }
-            }
+        if (!progress.shouldExpandRange()) {
+            return Progression.NONE;
         }
-
-        return progressionOccurred;
-    }
-
-    /**
-     * Get the next operation in sequence, if any.
-     */
-    private Operation getNextOperation(Operation current) {
-        int idx = OPERATION_ORDER.indexOf(current);
-        if (idx >= 0 && idx + 1 < OPERATION_ORDER.size()) {
-            return OPERATION_ORDER.get(idx + 1);
+        progress.expandRange();
+
+        // Check if this unlocks a new operation
+        if (progress.maxNumber() >= RANGE_TO_UNLOCK_NEXT_OP && operation.ordinal() + 1 < OPERATIONS.length) {
+            Operation nextOp = OPERATIONS[operation.ordinal() + 1];
+            if (!isUnlocked(nextOp)) {
+                operations[nextOp.ordinal()].unlock();
+                unlockedMask |= bit(nextOp);
+                return Progression.unlocked(nextOp);
+            }
         }
-        return null;
+        return Progression.RANGE_EXPANDED;
     }
 
     /**
@@ -113,11 +154,11 @@ public class DifficultyManager {
      * @return true if operation was newly unlocked, false if already unlocked
      */
     public boolean unlockOperation(Operation operation) {
-        OperationProgress progress = operations.get(operation);
-        if (progress.isUnlocked()) {
+        if (isUnlocked(operation)) {
             return false;
         }
-        progress.manualUnlock();
+        operations[operation.ordinal()].manualUnlock();
+        unlockedMask |= bit(operation);
         return true;
     }
 
@@ -125,6 +166,39 @@ public class DifficultyManager {
      * Check if an operation is unlocked.
      */
     public boolean isUnlocked(Operation operation) {
-        return operations.get(operation).isUnlocked();
+        return (unlockedMask & bit(operation)) != 0;
+    }
+
+    // --- Change tracking ---
+
+    /**
+     * Bitmask (by operation ordinal) of operations whose progress changed since last saved.
+     */
+    public int dirtyMask() {
+        int mask = 0;
+        for (Operation op : OPERATIONS) {
+            if (operations[op.ordinal()].version() != savedVersions[op.ordinal()]) {
+                mask |= bit(op);
+            }
+        }
+        return mask;
+    }
+
+    /**
+     * Check if any operation has unsaved changes.
+     */
+    public boolean isDirty() {
+        return dirtyMask() != 0;
+    }
+
+    /**
+     * Record that the current progress of the operations in the mask has been persisted.
+     */
+    public void markSaved(int mask) {
+        for (Operation op : OPERATIONS) {
+            if ((mask & bit(op)) != 0) {
+                savedVersions[op.ordinal()] = operations[op.ordinal()].version();
+            }
+        }
     }
 }
@@ -0,0 +1,110 @@
+package mathquiz.domain;
+
+/**
+ * Packs a math fact (operation and both operands) into a single int.
+ * Used as the storage key for problem stats and attempts.
+ *
+ * <p>Layout: bits 28-29 hold the operation code, bits 14-27 the first field and
+ * bits 0-13 the second operand. Division stores the quotient in the first field
+ * rather than the dividend, so all fields stay within 14 bits for factors up to
+ * {@link #MAX_OPERAND}. The operation codes are persisted and must not change.
+ *
+ * <p>Also serves as the in-memory form of a problem: the generation path passes keys
+ * around and only turns them into {@link Problem} objects for rendering.
+ */
+public final class FactKey {
+
+    /** Largest value each packed field can hold */
+    public static final int MAX_OPERAND = (1 << 14) - 1;
+
+    /** Never a valid key - valid keys are non-negative */
+    public static final int NONE = -1;
+
+    private static final int FIELD_BITS = 14;
+    private static final int FIELD_MASK = MAX_OPERAND;
+    private static final int OPERATION_SHIFT = 2 * FIELD_BITS;
+
+    private FactKey() {}
+
+    /**
+     * Encode a fact.
+     * @throws IllegalArgumentException if an operand doesn't fit or a division isn't exact
+     */
+    public static int of(Operation operation, int operand1, int operand2) {
+        int first = operand1;
+        if (operation == Operation.DIVISION) {
+            if (operand2 == 0 || operand1 % operand2 != 0) {
+                throw new IllegalArgumentException("Division must be exact: " + operand1 + " ÷ " + operand2);
+            }
+            first = operand1 / operand2;
+        }
+        if (first < 0 || first > MAX_OPERAND || operand2 < 0 || operand2 > MAX_OPERAND) {
+            throw new IllegalArgumentException("Operand out of range: " + operand1 + ", " + operand2);
+        }
+        return (code(operation) << OPERATION_SHIFT) | (first << FIELD_BITS) | operand2;
+    }
+
+    /**
+     * Encode a problem.
+     */
+    public static int of(Problem problem) {
+        return of(problem.operation(), problem.operand1(), problem.operand2());
+    }
+
+    public static Operation operation(int key) {
+        return switch (key >>> OPERATION_SHIFT) {
+            case 0 -> Operation.ADDITION;
+            case 1 -> Operation.SUBTRACTION;
+            case 2 -> Operation.MULTIPLICATION;
+            case 3 -> Operation.DIVISION;
+            default -> throw new IllegalArgumentException("Invalid fact key: " + key);
+        };
+    }
+
+    public static int operand1(int key) {
+        int first = (key >>> FIELD_BITS) & FIELD_MASK;
+        return operation(key) == Operation.DIVISION ? first * operand2(key) : first;
+    }
+
+    public static int operand2(int key) {
+        return key & FIELD_MASK;
+    }
+
+    /**
+     * Calculate the correct answer for an encoded problem.
+     */
+    public static int answer(int key) {
+        int first = (key >>> FIELD_BITS) & FIELD_MASK;
+        int second = operand2(key);
+        return switch (operation(key)) {
+            case ADDITION -> first + second;
+            case SUBTRACTION -> first - second;
+            case MULTIPLICATION -> first * second;
+            // The first field already holds the quotient
+            case DIVISION -> first;
+        };
+    }
+
+    /**
+     * Check if the given response is correct for an encoded problem.
+     */
+    public static boolean check(int key, int response) {
+        return response == answer(key);
+    }
+
+    /**
+     * Decode into a problem, e.g., for rendering.
+     */
+    public static Problem toProblem(int key) {
+        return new Problem(operand1(key), operand2(key), operation(key));
+    }
+
+    private static int code(Operation operation) {
+        return switch (operation) {
+            case ADDITION -> 0;
+            case SUBTRACTION -> 1;
+            case MULTIPLICATION -> 2;
+            case DIVISION -> 3;
+        };
+    }
+}
@@ -0,0 +1,119 @@
+package mathquiz.domain;
+
+import java.util.Random;
+
+/**
+ * Weighted random sampling over a {@link ProblemSpace}, favouring weak facts.
+ *
+ * <p>Weights come from each fact's {@link ProblemStats} (see {@link #weight}) and live in a
+ * Fenwick tree indexed like the space, so both sampling and re-weighting a fact after an
+ * answer are O(log n). Weights are integers, so the running total never drifts.
+ * Mutable, not thread-safe.
+ */
+public final class FactSampler {
+
+    /** Weight of a fact that has never been attempted */
+    static final int UNSEEN_WEIGHT = 4;
+
+    private final ProblemSpace space;
+    private final int[] weights;
+    /** 1-based Fenwick tree of weights */
+    private final long[] tree;
+
+    /**
+     * Build a sampler for the space, weighting facts by their stats in the review queue.
+     * O(n) in the size of the space.
+     */
+    public FactSampler(ProblemSpace space, ReviewQueue reviews) {
+        this.space = space;
+        int size = space.size();
+        this.weights = new int[size];
+        this.tree = new long[size + 1];
+
+        for (int i = 0; i < size; i++) {
+            weights[i] = weight(reviews.get(space.keyAt(i)).orElse(null));
+            tree[i + 1] += weights[i];
+            int parent = (i + 1) + ((i + 1) & -(i + 1));
+            if (parent <= size) {
+                tree[parent] += tree[i + 1];
+            }
+        }
+    }
+
+    /**
+     * Sampling weight for a fact: 1 for a fact that is always answered right with full
+     * ease, up to 13 for one that is always missed and at minimum ease.
+     * @param stats the fact's stats, or null if never attempted
+     */
+    public static int weight(ProblemStats stats) {
+        if (stats == null || stats.totalAttempts() == 0) {
+            return UNSEEN_WEIGHT;
+        }
+        double missRate = 1.0 - stats.accuracy() / 100.0;
+        double easeDeficit = (ProblemStats.DEFAULT_EASE - stats.easeFactor())
+                / (ProblemStats.DEFAULT_EASE - SpacedRepetition.MIN_EASE);
+        easeDeficit = Math.max(0.0, Math.min(1.0, easeDeficit));
+        return 1 + (int) Math.round(8 * missRate) + (int) Math.round(4 * easeDeficit);
+    }
+
+    public ProblemSpace space() {
+        return space;
+    }
+
+    /**
+     * Pick a fact with probability proportional to its weight.
+     * @return the fact key
+     */
+    public int sampleKey(Random random) {
+        long total = totalWeight();
+        if (total == 0) {
+            throw new IllegalStateException("Cannot sample from empty space");
+        }
+        long target = random.nextLong(total);
+
+        // Descend the tree to the first index whose prefix sum exceeds target
+        int pos = 0;
+        for (int step = Integer.highestOneBit(weights.length); step > 0; step >>= 1) {
+            int next = pos + step;
+            if (next <= weights.length && tree[next] <= target) {
+                pos = next;
+                target -= tree[next];
+            }
+        }
+        return space.keyAt(pos);
+    }
+
+    /**
+     * Re-weight a fact after its stats changed. Facts outside the space are ignored.
+     */
+    public void update(ProblemStats stats) {
+        int index = space.indexOf(FactKey.of(stats.operation(), stats.operand1(), stats.operand2()));
+        if (index < 0) {
+            return;
+        }
+        int weight = weight(stats);
+        int delta = weight - weights[index];
+        weights[index] = weight;
+        for (int i = index + 1; i <= weights.length; i += i & -i) {
+            tree[i] += delta;
+        }
+    }
+
+    /**
+     * Current weight of the fact at the given index in the space.
+     */
+    public int weightAt(int index) {
+        return weights[index];
+    }
+
+    /**
+     * Sum of all weights.
+     */
+    public long totalWeight() {
+        long total = 0;
+        for (int i = weights.length; i > 0; i -= i & -i) {
+            total += tree[i];
+        }
+        return total;
+    }
+}
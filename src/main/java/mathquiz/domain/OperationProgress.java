@@ -31,6 +31,7 @@ public class OperationProgress {
     private boolean manuallyUnlocked;
     private int problemsAtCurrentRange;
     private int correctAtCurrentRange;
+    private int version;
 
     public OperationProgress(Operation operation) {
         this(operation, startingRange(operation), false, false, 0, 0);
@@ -75,6 +76,13 @@ public class OperationProgress {
         return correctAtCurrentRange;
     }
 
+    /**
+     * Change counter - incremented on every mutation, used to detect unsaved changes.
+     */
+    public int version() {
+        return version;
+    }
+
     public int getMaxRange() {
         return maxRange(operation);
     }
@@ -104,6 +112,7 @@ public class OperationProgress {
         maxNumber = Math.min(getMaxRange(), maxNumber + amount);
         problemsAtCurrentRange = 0;
         correctAtCurrentRange = 0;
+        version++;
     }
 
     /**
@@ -121,6 +130,7 @@ public class OperationProgress {
         if (correct) {
             correctAtCurrentRange++;
         }
+        version++;
     }
 
     /**
@@ -128,6 +138,7 @@ public class OperationProgress {
      */
     public void unlock() {
         unlocked = true;
+        version++;
     }
 
     /**
@@ -136,5 +147,6 @@ public class OperationProgress {
     public void manualUnlock() {
         unlocked = true;
         manuallyUnlocked = true;
+        version++;
     }
 }
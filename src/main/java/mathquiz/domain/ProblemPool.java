@@ -1,122 +1,145 @@
 package mathquiz.domain;
 
-import java.util.ArrayList;
-import java.util.Collections;
+import java.util.AbstractList;
+import java.util.EnumMap;
 import java.util.List;
+import java.util.Map;
 import java.util.Random;
+import java.util.concurrent.ConcurrentHashMap;
 
 /**
- * Pre-generated pool of all valid problems for an operation and range.
+ * Pool of all valid problems for an operation and range.
  * Ensures uniform distribution when picking randomly.
+ *
+ * <p>A view over a {@link ProblemSpace}: picking and sizing never materialize the problems.
+ * {@link #all()} fills an {@code int[]} of fact keys once, on first call, and decodes
+ * entries on access. Pools are immutable and depend only on (operation, max number),
+ * so the factories return shared instances.
  */
 public final class ProblemPool {
-    private final List<Problem> problems;
-    private final Operation operation;
 
-    private ProblemPool(Operation operation, List<Problem> problems) {
-        this.operation = operation;
-        this.problems = Collections.unmodifiableList(new ArrayList<>(problems));
+    private static final Map<Operation, Map<Integer, ProblemPool>> CACHE = new EnumMap<>(Operation.class);
+
+    static {
+        for (Operation op : Operation.values()) {
+            CACHE.put(op, new ConcurrentHashMap<>());
+        }
+    }
+
+    private final ProblemSpace space;
+    private volatile int[] keys;
+
+    private ProblemPool(ProblemSpace space) {
+        this.space = space;
     }
 
     /**
-     * Create a pool of addition problems where sum <= maxSum.
+     * Get the pool of addition problems where sum <= maxSum.
      * e.g., maxSum=10 → 1+1, 1+2, ..., 5+5 (all pairs where a+b <= maxSum)
      */
     public static ProblemPool forAddition(int maxSum) {
-        List<Problem> pool = new ArrayList<>();
-        for (int a = 1; a <= maxSum - 1; a++) {
-            for (int b = 1; b <= maxSum - a; b++) {
-                pool.add(new Problem(a, b, Operation.ADDITION));
-            }
-        }
-        return new ProblemPool(Operation.ADDITION, pool);
+        return forOperation(Operation.ADDITION, maxSum);
     }
 
     /**
-     * Create a pool of subtraction problems where minuend <= maxMinuend.
+     * Get the pool of subtraction problems where minuend <= maxMinuend.
      * e.g., maxMinuend=10 → 2-1, 3-1, 3-2, ..., 10-9
      * Results are always non-negative (a >= b).
      */
     public static ProblemPool forSubtraction(int maxMinuend) {
-        List<Problem> pool = new ArrayList<>();
-        for (int a = 2; a <= maxMinuend; a++) {
-            for (int b = 1; b < a; b++) {
-                pool.add(new Problem(a, b, Operation.SUBTRACTION));
-            }
-        }
-        return new ProblemPool(Operation.SUBTRACTION, pool);
+        return forOperation(Operation.SUBTRACTION, maxMinuend);
     }
 
     /**
-     * Create a pool of multiplication problems where both factors <= maxFactor.
+     * Get the pool of multiplication problems where both factors <= maxFactor.
      * e.g., maxFactor=5 → 1×1, 1×2, ..., 5×5
      */
     public static ProblemPool forMultiplication(int maxFactor) {
-        List<Problem> pool = new ArrayList<>();
-        for (int a = 1; a <= maxFactor; a++) {
-            for (int b = 1; b <= maxFactor; b++) {
-                pool.add(new Problem(a, b, Operation.MULTIPLICATION));
-            }
-        }
-        return new ProblemPool(Operation.MULTIPLICATION, pool);
+        return forOperation(Operation.MULTIPLICATION, maxFactor);
     }
 
     /**
-     * Create a pool of division problems where divisor and quotient <= maxFactor.
+     * Get the pool of division problems where divisor and quotient <= maxFactor.
      * e.g., maxFactor=5 → 1÷1, 2÷1, 2÷2, ..., 25÷5
      * All divisions are exact (no remainder).
      */
     public static ProblemPool forDivision(int maxFactor) {
-        List<Problem> pool = new ArrayList<>();
-        for (int divisor = 1; divisor <= maxFactor; divisor++) {
-            for (int quotient = 1; quotient <= maxFactor; quotient++) {
-                int dividend = divisor * quotient;
-                pool.add(new Problem(dividend, divisor, Operation.DIVISION));
-            }
-        }
-        return new ProblemPool(Operation.DIVISION, pool);
+        return forOperation(Operation.DIVISION, maxFactor);
     }
 
     /**
-     * Create a pool for the given operation and max number.
+     * Get the pool for the given operation and max number.
+     * Thread-safe; each pool is created at most once.
      */
     public static ProblemPool forOperation(Operation operation, int maxNumber) {
-        return switch (operation) {
-            case ADDITION -> forAddition(maxNumber);
-            case SUBTRACTION -> forSubtraction(maxNumber);
-            case MULTIPLICATION -> forMultiplication(maxNumber);
-            case DIVISION -> forDivision(maxNumber);
-        };
+        return CACHE.get(operation).computeIfAbsent(maxNumber,
+            max -> new ProblemPool(ProblemSpace.of(operation, max)));
     }
 
     /**
      * Pick a random problem from the pool.
      */
     public Problem pickRandom(Random random) {
-        if (problems.isEmpty()) {
+        return FactKey.toProblem(pickRandomKey(random));
+    }
+
+    /**
+     * Pick a random problem from the pool as a {@link FactKey}, without allocating.
+     */
+    public int pickRandomKey(Random random) {
+        int size = space.size();
+        if (size == 0) {
             throw new IllegalStateException("Cannot pick from empty pool");
         }
-        return problems.get(random.nextInt(problems.size()));
+        return space.keyAt(random.nextInt(size));
     }
 
     /**
      * Get all problems in the pool.
+     * Keys are materialized on first call; prefer {@link #pickRandomKey} and {@link #size()} on hot paths.
      */
     public List<Problem> all() {
-        return problems;
+        int[] result = keys;
+        if (result == null) {
+            result = new int[space.size()];
+            for (int i = 0; i < result.length; i++) {
+                result[i] = space.keyAt(i);
+            }
+            // Racing callers build identical arrays, so publishing either one is fine
+            keys = result;
+        }
+        int[] snapshot = result;
+        return new AbstractList<>() {
+            @Override
+            public Problem get(int index) {
+                return FactKey.toProblem(snapshot[index]);
+            }
+
+            @Override
+            public int size() {
+                return snapshot.length;
+            }
+        };
     }
 
     /**
      * Get the number of problems in the pool.
      */
     public int size() {
-        return problems.size();
+        return space.size();
     }
 
     /**
      * Get the operation for this pool.
      */
     public Operation operation() {
-        return operation;
+        return space.operation();
+    }
+
+    /**
+     * Get the problem space this pool is a view of.
+     */
+    public ProblemSpace space() {
+        return space;
     }
 }
@@ -0,0 +1,232 @@
+package mathquiz.domain;
+
+/**
+ * All valid problems for an operation and range, without materializing them.
+ *
+ * <p>Each space knows its size in closed form and maps an index in {@code [0, size())}
+ * directly to a problem, so picking uniformly at random is O(1) time and memory
+ * regardless of range. Indexes follow the same order the pools have always listed
+ * problems in. Problems come out as {@link FactKey} ints; {@link #problemAt} decodes.
+ */
+public sealed interface ProblemSpace {
+
+    /**
+     * Get the space for the given operation and max number.
+     */
+    static ProblemSpace of(Operation operation, int maxNumber) {
+        return switch (operation) {
+            case ADDITION -> new Addition(maxNumber);
+            case SUBTRACTION -> new Subtraction(maxNumber);
+            case MULTIPLICATION -> new Multiplication(maxNumber);
+            case DIVISION -> new Division(maxNumber);
+        };
+    }
+
+    Operation operation();
+
+    /**
+     * Number of problems in the space.
+     */
+    int size();
+
+    /**
+     * Get the fact key of the problem at the given index.
+     * @throws IndexOutOfBoundsException if index is outside {@code [0, size())}
+     */
+    int keyAt(int index);
+
+    /**
+     * Get the index of a problem given as a fact key - the inverse of {@link #keyAt}.
+     * @return the index, or -1 if the problem isn't in this space
+     */
+    int indexOf(int factKey);
+
+    /**
+     * Get the problem at the given index.
+     * @throws IndexOutOfBoundsException if index is outside {@code [0, size())}
+     */
+    default Problem problemAt(int index) {
+        return FactKey.toProblem(keyAt(index));
+    }
+
+    /**
+     * Addition problems a + b with a, b >= 1 and a + b <= maxSum, ordered by a then b.
+     */
+    record Addition(int maxSum) implements ProblemSpace {
+        @Override
+        public Operation operation() {
+            return Operation.ADDITION;
+        }
+
+        @Override
+        public int size() {
+            return triangle(maxSum - 1);
+        }
+
+        @Override
+        public int keyAt(int index) {
+            int size = size();
+            // Read backwards the rows grow by one (a = maxSum-1 has a single b), so unrank
+            // from the end and mirror the result
+            int reversed = size - 1 - checkIndex(index, size);
+            int row = triangleRow(reversed);
+            int column = reversed - triangle(row);
+            int a = maxSum - 1 - row;
+            int b = row + 1 - column;
+            return FactKey.of(Operation.ADDITION, a, b);
+        }
+
+        @Override
+        public int indexOf(int factKey) {
+            if (FactKey.operation(factKey) != Operation.ADDITION) {
+                return -1;
+            }
+            int a = FactKey.operand1(factKey);
+            int b = FactKey.operand2(factKey);
+            if (a < 1 || b < 1 || a + b > maxSum) {
+                return -1;
+            }
+            // Rows before a hold maxSum-1, maxSum-2, ..., maxSum-(a-1) problems
+            return Math.toIntExact((long) (a - 1) * maxSum - triangle(a - 1) + b - 1);
+        }
+    }
+
+    /**
+     * Subtraction problems a - b with 1 <= b < a <= maxMinuend, ordered by a then b.
+     */
+    record Subtraction(int maxMinuend) implements ProblemSpace {
+        @Override
+        public Operation operation() {
+            return Operation.SUBTRACTION;
+        }
+
+        @Override
+        public int size() {
+            return triangle(maxMinuend - 1);
+        }
+
+        @Override
+        public int keyAt(int index) {
+            checkIndex(index, size());
+            int row = triangleRow(index);
+            int column = index - triangle(row);
+            return FactKey.of(Operation.SUBTRACTION, row + 2, column + 1);
+        }
+
+        @Override
+        public int indexOf(int factKey) {
+            if (FactKey.operation(factKey) != Operation.SUBTRACTION) {
+                return -1;
+            }
+            int a = FactKey.operand1(factKey);
+            int b = FactKey.operand2(factKey);
+            if (b < 1 || b >= a || a > maxMinuend) {
+                return -1;
+            }
+            return triangle(a - 2) + b - 1;
+        }
+    }
+
+    /**
+     * Multiplication problems a × b with both factors in [1, maxFactor], ordered by a then b.
+     */
+    record Multiplication(int maxFactor) implements ProblemSpace {
+        @Override
+        public Operation operation() {
+            return Operation.MULTIPLICATION;
+        }
+
+        @Override
+        public int size() {
+            return square(maxFactor);
+        }
+
+        @Override
+        public int keyAt(int index) {
+            checkIndex(index, size());
+            return FactKey.of(Operation.MULTIPLICATION, index / maxFactor + 1, index % maxFactor + 1);
+        }
+
+        @Override
+        public int indexOf(int factKey) {
+            if (FactKey.operation(factKey) != Operation.MULTIPLICATION) {
+                return -1;
+            }
+            return gridIndex(FactKey.operand1(factKey), FactKey.operand2(factKey), maxFactor);
+        }
+    }
+
+    /**
+     * Exact division problems with divisor and quotient in [1, maxFactor], ordered by divisor then quotient.
+     */
+    record Division(int maxFactor) implements ProblemSpace {
+        @Override
+        public Operation operation() {
+            return Operation.DIVISION;
+        }
+
+        @Override
+        public int size() {
+            return square(maxFactor);
+        }
+
+        @Override
+        public int keyAt(int index) {
+            checkIndex(index, size());
+            int divisor = index / maxFactor + 1;
+            int quotient = index % maxFactor + 1;
+            return FactKey.of(Operation.DIVISION, divisor * quotient, divisor);
+        }
+
+        @Override
+        public int indexOf(int factKey) {
+            if (FactKey.operation(factKey) != Operation.DIVISION) {
+                return -1;
+            }
+            return gridIndex(FactKey.operand2(factKey), FactKey.answer(factKey), maxFactor);
+        }
+    }
+
+    /**
+     * Number of entries in the first n rows of a triangle whose row r holds r + 1 entries.
+     */
+    private static int triangle(int n) {
+        return n <= 0 ? 0 : Math.toIntExact((long) n * (n + 1) / 2);
+    }
+
+    private static int square(int n) {
+        return n <= 0 ? 0 : Math.multiplyExact(n, n);
+    }
+
+    /**
+     * Index of (row, column) in an n × n grid of 1-based coordinates, or -1 if outside.
+     */
+    private static int gridIndex(int row, int column, int n) {
+        if (row < 1 || column < 1 || row > n || column > n) {
+            return -1;
+        }
+        return (row - 1) * n + column - 1;
+    }
+
+    /**
+     * Row holding the given index in that triangle: the largest r with triangle(r) <= index.
+     */
+    private static int triangleRow(int index) {
+        int row = (int) ((Math.sqrt(8.0 * index + 1) - 1) / 2);
+        // Correct for floating point rounding at exact triangle numbers
+        while (triangle(row) > index) {
+            row--;
+        }
+        while (triangle(row + 1) <= index) {
+            row++;
+        }
+        return row;
+    }
+
+    private static int checkIndex(int index, int size) {
+        if (index < 0 || index >= size) {
+            throw new IndexOutOfBoundsException("Index " + index + " out of bounds for size " + size);
+        }
+        return index;
+    }
+}
@@ -0,0 +1,39 @@
+package mathquiz.domain;
+
+/**
+ * What an attempt changed in difficulty progression.
+ * Instances are shared, so reporting progression allocates nothing.
+ *
+ * @param rangeExpanded   whether the operation's number range grew
+ * @param newlyUnlocked   operation unlocked as a result, or null
+ */
+public record Progression(boolean rangeExpanded, Operation newlyUnlocked) {
+
+    /** Nothing changed */
+    public static final Progression NONE = new Progression(false, null);
+
+    /** The range grew, nothing was unlocked */
+    public static final Progression RANGE_EXPANDED = new Progression(true, null);
+
+    private static final Progression[] UNLOCKED = new Progression[Operation.values().length];
+
+    static {
+        for (Operation op : Operation.values()) {
+            UNLOCKED[op.ordinal()] = new Progression(true, op);
+        }
+    }
+
+    /**
+     * The range grew and, through that, the given operation was unlocked.
+     */
+    public static Progression unlocked(Operation operation) {
+        return UNLOCKED[operation.ordinal()];
+    }
+
+    /**
+     * Whether anything changed.
+     */
+    public boolean progressed() {
+        return rangeExpanded || newlyUnlocked != null;
+    }
+}
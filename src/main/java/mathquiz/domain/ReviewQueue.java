@@ -0,0 +1,268 @@
+package mathquiz.domain;
+
+import java.time.Instant;
+import java.util.*;
+
+/**
+ * In-memory review schedule for one user.
+ * Keeps every known problem in a min-heap per operation, ordered by next review time
+ * (never-reviewed problems first), so the most overdue problem is found in O(log n)
+ * without touching the database.
+ *
+ * <p>Heaps hold {@link FactKey} ints, due times and stats in parallel arrays, and find an
+ * entry's position through an open-addressing {@code int -> int} index, so updates and
+ * lookups don't box. Mutable - updated as answers are recorded. Not thread-safe.
+ */
+public final class ReviewQueue {
+
+    /** Due time for never-reviewed problems, ahead of any real time */
+    private static final long NEVER_REVIEWED = Long.MIN_VALUE;
+
+    private static final Operation[] OPERATIONS = Operation.values();
+
+    /** One heap per operation, by ordinal */
+    private final Heap[] heaps = new Heap[OPERATIONS.length];
+
+    public ReviewQueue() {
+        for (Operation op : OPERATIONS) {
+            heaps[op.ordinal()] = new Heap();
+        }
+    }
+
+    /**
+     * Create a queue pre-loaded with existing stats (e.g., from database).
+     */
+    public ReviewQueue(Collection<ProblemStats> stats) {
+        this();
+        for (ProblemStats s : stats) {
+            update(s);
+        }
+    }
+
+    /**
+     * Get stats for a specific problem, or empty if never attempted.
+     */
+    public Optional<ProblemStats> get(Operation operation, int operand1, int operand2) {
+        return get(FactKey.of(operation, operand1, operand2));
+    }
+
+    /**
+     * Get stats for a problem by {@link FactKey}, or empty if never attempted.
+     */
+    public Optional<ProblemStats> get(int factKey) {
+        return Optional.ofNullable(stats(factKey));
+    }
+
+    /**
+     * Insert new stats or replace the existing stats for the same problem.
+     */
+    public void update(ProblemStats stats) {
+        int key = FactKey.of(stats.operation(), stats.operand1(), stats.operand2());
+        heaps[stats.operation().ordinal()].put(key, dueTime(stats.nextReview()), stats);
+    }
+
+    /**
+     * Get the most overdue problem among the given operations.
+     * @return stats of the problem to review, or empty if nothing is due
+     */
+    public Optional<ProblemStats> nextDue(Instant now, Collection<Operation> operations) {
+        int key = nextDueKey(now, operations);
+        return key == FactKey.NONE ? Optional.empty() : Optional.of(stats(key));
+    }
+
+    /**
+     * Get the most overdue problem among the given operations as a {@link FactKey}.
+     * @return key of the problem to review, or {@link FactKey#NONE} if nothing is due
+     */
+    public int nextDueKey(Instant now, Collection<Operation> operations) {
+        int mask = 0;
+        for (Operation op : operations) {
+            mask |= 1 << op.ordinal();
+        }
+        return nextDueKey(now, mask);
+    }
+
+    /**
+     * Same as {@link #nextDueKey(Instant, Collection)}, with operations given as a bitmask
+     * by ordinal (see {@link DifficultyManager#unlockedMask()}).
+     */
+    public int nextDueKey(Instant now, int operationMask) {
+        long nowTime = dueTime(now);
+        int bestKey = FactKey.NONE;
+        long bestDue = 0;
+        for (Operation op : OPERATIONS) {
+            if ((operationMask & (1 << op.ordinal())) == 0) {
+                continue;
+            }
+            Heap heap = heaps[op.ordinal()];
+            if (heap.size > 0 && heap.due[0] <= nowTime && (bestKey == FactKey.NONE || heap.due[0] < bestDue)) {
+                bestKey = heap.keys[0];
+                bestDue = heap.due[0];
+            }
+        }
+        return bestKey;
+    }
+
+    /**
+     * Number of problems in the queue.
+     */
+    public int size() {
+        int size = 0;
+        for (Heap heap : heaps) {
+            size += heap.size;
+        }
+        return size;
+    }
+
+    private ProblemStats stats(int factKey) {
+        Heap heap = heaps[FactKey.operation(factKey).ordinal()];
+        int pos = heap.positionOf(factKey);
+        return pos < 0 ? null : heap.stats[pos];
+    }
+
+    /**
+     * Nanoseconds since the epoch, saturating far outside the supported range,
+     * or {@link #NEVER_REVIEWED} for null.
+     */
+    private static long dueTime(Instant instant) {
+        if (instant == null) {
+            return NEVER_REVIEWED;
+        }
+        try {
+            return Math.addExact(Math.multiplyExact(instant.getEpochSecond(), 1_000_000_000L), instant.getNano());
+        } catch (ArithmeticException e) {
+            return instant.getEpochSecond() < 0 ? NEVER_REVIEWED + 1 : Long.MAX_VALUE;
+        }
+    }
+
+    /**
+     * Binary min-heap of fact keys by due time, with a position index so existing
+     * entries can be re-keyed in place.
+     */
+    private static final class Heap {
+        private int[] keys = new int[16];
+        private long[] due = new long[16];
+        private ProblemStats[] stats = new ProblemStats[16];
+        private int size;
+
+        /** Linear-probing index from key to heap position; at most half full */
+        private int[] slotKeys = emptySlots(32);
+        private int[] slotPositions = new int[32];
+
+        void put(int key, long dueTime, ProblemStats value) {
+            int pos = positionOf(key);
+            if (pos < 0) {
+                if (size == keys.length) {
+                    keys = Arrays.copyOf(keys, size * 2);
+                    due = Arrays.copyOf(due, size * 2);
+                    stats = Arrays.copyOf(stats, size * 2);
+                }
+                keys[size] = key;
+                due[size] = dueTime;
+                stats[size] = value;
+                if (2 * (size + 1) > slotKeys.length) {
+                    rehash(slotKeys.length * 2);
+                }
+                setPosition(key, size);
+                siftUp(size++);
+            } else {
+                long previous = due[pos];
+                due[pos] = dueTime;
+                stats[pos] = value;
+                if (dueTime < previous) {
+                    siftUp(pos);
+                } else if (dueTime > previous) {
+                    siftDown(pos);
+                }
+            }
+        }
+
+        int positionOf(int key) {
+            int mask = slotKeys.length - 1;
+            for (int slot = slot(key, mask); ; slot = (slot + 1) & mask) {
+                if (slotKeys[slot] == key) {
+                    return slotPositions[slot];
+                }
+                if (slotKeys[slot] == FactKey.NONE) {
+                    return -1;
+                }
+            }
+        }
+
+        private void setPosition(int key, int pos) {
+            int mask = slotKeys.length - 1;
+            int slot = slot(key, mask);
+            while (slotKeys[slot] != key && slotKeys[slot] != FactKey.NONE) {
+                slot = (slot + 1) & mask;
+            }
+            slotKeys[slot] = key;
+            slotPositions[slot] = pos;
+        }
+
+        private void rehash(int capacity) {
+            slotKeys = emptySlots(capacity);
+            slotPositions = new int[capacity];
+            int mask = capacity - 1;
+            for (int pos = 0; pos < size; pos++) {
+                int slot = slot(keys[pos], mask);
+                while (slotKeys[slot] != FactKey.NONE) {
+                    slot = (slot + 1) & mask;
+                }
+                slotKeys[slot] = keys[pos];
+                slotPositions[slot] = pos;
+            }
+        }
+
+        private static int slot(int key, int mask) {
+            int h = key * 0x9E3779B9;
+            return (h ^ (h >>> 16)) & mask;
+        }
+
+        private static int[] emptySlots(int capacity) {
+            int[] slots = new int[capacity];
+            Arrays.fill(slots, FactKey.NONE);
+            return slots;
+        }
+
+        private void siftUp(int pos) {
+            while (pos > 0) {
+                int parent = (pos - 1) >>> 1;
+                if (due[pos] >= due[parent]) {
+                    break;
+                }
+                swap(pos, parent);
+                pos = parent;
+            }
+        }
+
+        private void siftDown(int pos) {
+            while (true) {
+                int left = 2 * pos + 1;
+                if (left >= size) {
+                    break;
+                }
+                int right = left + 1;
+                int smallest = right < size && due[right] < due[left] ? right : left;
+                if (due[smallest] >= due[pos]) {
+                    break;
+                }
+                swap(pos, smallest);
+                pos = smallest;
+            }
+        }
+
+        private void swap(int i, int j) {
+            int key = keys[i];
+            keys[i] = keys[j];
+            keys[j] = key;
+            long time = due[i];
+            due[i] = due[j];
+            due[j] = time;
+            ProblemStats value = stats[i];
+            stats[i] = stats[j];
+            stats[j] = value;
+            setPosition(keys[i], i);
+            setPosition(keys[j], j);
+        }
+    }
+}
@@ -10,22 +10,23 @@ public record AnswerResult(
     int correctAnswer,
     int streak,
     int newStars,
+    int totalStars,
     boolean rangeExpanded,
     Operation newOperationUnlocked
 ) {
     /**
      * Create a result for a correct answer.
      */
-    public static AnswerResult correct(int correctAnswer, int streak, int newStars,
+    public static AnswerResult correct(int correctAnswer, int streak, int newStars, int totalStars,
                                        boolean rangeExpanded, Operation newOperationUnlocked) {
-        return new AnswerResult(true, correctAnswer, streak, newStars, rangeExpanded, newOperationUnlocked);
+        return new AnswerResult(true, correctAnswer, streak, newStars, totalStars, rangeExpanded, newOperationUnlocked);
     }
 
     /**
      * Create a result for an incorrect answer.
      */
-    public static AnswerResult incorrect(int correctAnswer, int newStars,
+    public static AnswerResult incorrect(int correctAnswer, int newStars, int totalStars,
                                          boolean rangeExpanded, Operation newOperationUnlocked) {
-        return new AnswerResult(false, correctAnswer, 0, newStars, rangeExpanded, newOperationUnlocked);
+        return new AnswerResult(false, correctAnswer, 0, newStars, totalStars, rangeExpanded, newOperationUnlocked);
     }
 }
@@ -0,0 +1,117 @@
+package mathquiz.service;
+
+import java.util.Queue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Executor;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.Function;
+import java.util.function.Supplier;
+
+/**
+ * Serializes all access to one user's {@link QuizService} through a mailbox.
+ *
+ * <p>Commands are queued and run one at a time, in submission order, by a drain task on the
+ * given executor (a virtual thread per drain in production). At most one drain runs per actor,
+ * so the service needs no locking, while different users' actors run in parallel.
+ * Results are completed on the executor rather than the drain task, so callers' continuations
+ * never hold up the mailbox.
+ *
+ * <p>The service can be loaded lazily as the actor's first command, so creating an actor is
+ * cheap and never blocks; if loading fails, every command fails with the load error.
+ */
+public final class QuizActor {
+
+    private final Executor executor;
+    private final Queue<Runnable> mailbox = new ConcurrentLinkedQueue<>();
+    private final AtomicBoolean draining = new AtomicBoolean();
+    private final CompletableFuture<Void> loaded = new CompletableFuture<>();
+    private volatile long lastUsedNanos = System.nanoTime();
+
+    // Only touched by the drain task
+    private QuizService service;
+    private Throwable loadFailure;
+
+    public QuizActor(QuizService service, Executor executor) {
+        this(() -> service, executor);
+    }
+
+    /**
+     * Create an actor whose service is loaded by its first command, on the executor.
+     */
+    public QuizActor(Supplier<QuizService> loader, Executor executor) {
+        this.executor = executor;
+        mailbox.add(() -> {
+            try {
+                service = loader.get();
+                loaded.complete(null);
+            } catch (Throwable e) {
+                loadFailure = e;
+                loaded.completeExceptionally(e);
+            }
+        });
+    }
+
+    /**
+     * Run a command against the service, after every command submitted before it.
+     * The command must not leak the service or block on other actors.
+     * @return the command's result; completes exceptionally if the command throws
+     */
+    public <T> CompletableFuture<T> ask(Function<QuizService, T> command) {
+        CompletableFuture<T> result = new CompletableFuture<>();
+        lastUsedNanos = System.nanoTime();
+        mailbox.add(() -> {
+            try {
+                if (loadFailure != null) {
+                    throw new IllegalStateException("Quiz state failed to load", loadFailure);
+                }
+                T value = command.apply(service);
+                result.completeAsync(() -> value, executor);
+            } catch (Throwable e) {
+                executor.execute(() -> result.completeExceptionally(e));
+            }
+        });
+        scheduleDrain();
+        return result;
+    }
+
+    /**
+     * Completes once the service has loaded, or exceptionally if loading failed.
+     * Dependents run on the drain task and must be quick.
+     */
+    CompletableFuture<Void> loaded() {
+        return loaded;
+    }
+
+    /**
+     * {@link System#nanoTime()} of the last {@link #ask}.
+     */
+    long lastUsedNanos() {
+        return lastUsedNanos;
+    }
+
+    /**
+     * True if no command is queued or running.
+     */
+    boolean isIdle() {
+        return !draining.get() && mailbox.isEmpty();
+    }
+
+    private void scheduleDrain() {
+        if (draining.compareAndSet(false, true)) {
+            executor.execute(this::drain);
+        }
+    }
+
+    private void drain() {
+        Runnable command;
+        while ((command = mailbox.poll()) != null) {
+            command.run();
+        }
+        draining.set(false);
+        // A command may have arrived between the last poll and releasing the flag
+        if (!mailbox.isEmpty()) {
+            scheduleDrain();
+        }
+    }
+}
@@ -0,0 +1,205 @@
+package mathquiz.service;
+
+import mathquiz.storage.Repository;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.time.Clock;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Function;
+
+/**
+ * Process-wide live quiz state: one {@link QuizActor} per user, shared by all of that user's
+ * sessions, tabs and devices, so a user's state is loaded once and has a single writer.
+ *
+ * <p>Bounded: actors idle for longer than the idle timeout are evicted by a periodic sweep,
+ * and going over the size limit evicts the least recently used idle actors straight away.
+ * Busy actors are never evicted, so the limit can be exceeded briefly under load. An evicted
+ * actor flushes its service (see {@link QuizService#flush()}); the next request for that
+ * user loads fresh state.
+ *
+ * <p>Commands are enqueued under the map's per-key lock, the same lock eviction checks
+ * idleness under, so a command can never land on an actor that has already been evicted.
+ * Only an empty actor is created under that lock; the user's state is loaded by the actor's
+ * first command, on the executor, so a slow load holds up no other user. An actor whose
+ * load fails is dropped, and the next request for that user tries again.
+ */
+public class QuizActorRegistry implements AutoCloseable {
+    private static final Logger log = LoggerFactory.getLogger(QuizActorRegistry.class);
+
+    public static final int DEFAULT_MAX_ACTORS = 10_000;
+    public static final Duration DEFAULT_IDLE_TIMEOUT = Duration.ofMinutes(30);
+
+    private final Repository repo;
+    private final Clock clock;
+    private final int maxActors;
+    private final long idleTimeoutNanos;
+    private final ExecutorService executor =
+            Executors.newThreadPerTaskExecutor(Thread.ofVirtual().name("quiz-actor-", 0).factory());
+    private final ScheduledExecutorService sweeper = Executors.newSingleThreadScheduledExecutor(
+            Thread.ofPlatform().name("quiz-actor-sweeper").daemon().factory());
+    private final Map<Integer, QuizActor> actors = new ConcurrentHashMap<>();
+
+    public QuizActorRegistry(Repository repo, Clock clock) {
+        this(repo, clock, DEFAULT_MAX_ACTORS, DEFAULT_IDLE_TIMEOUT);
+    }
+
+    public QuizActorRegistry(Repository repo, Clock clock, int maxActors, Duration idleTimeout) {
+        if (maxActors < 1) {
+            throw new IllegalArgumentException("maxActors must be positive: " + maxActors);
+        }
+        this.repo = repo;
+        this.clock = clock;
+        this.maxActors = maxActors;
+        this.idleTimeoutNanos = idleTimeout.toNanos();
+
+        long sweepMillis = Math.max(1000, idleTimeout.toMillis() / 2);
+        sweeper.scheduleWithFixedDelay(this::evictIdle, sweepMillis, sweepMillis, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Run a command against a user's quiz state, loading it on first use.
+     * Commands for the same user run one at a time, in order.
+     * @see QuizActor#ask(Function)
+     */
+    public <T> CompletableFuture<T> ask(int userId, Function<QuizService, T> command) {
+        List<CompletableFuture<T>> result = new ArrayList<>(1);
+        QuizActor[] created = new QuizActor[1];
+        actors.compute(userId, (id, actor) -> {
+            if (actor == null) {
+                actor = new QuizActor(() -> new QuizService(repo, id, clock), executor);
+                created[0] = actor;
+            }
+            result.add(actor.ask(command));
+            return actor;
+        });
+        if (created[0] != null) {
+            QuizActor actor = created[0];
+            actor.loaded().exceptionally(e -> {
+                log.warn("Failed to load quiz state for user {}", userId, e);
+                actors.remove(userId, actor);
+                return null;
+            });
+            if (actors.size() > maxActors) {
+                evictLeastRecentlyUsed(userId);
+            }
+        }
+        return result.get(0);
+    }
+
+    /**
+     * Number of users with live quiz state.
+     */
+    public int size() {
+        return actors.size();
+    }
+
+    /**
+     * True if the user's quiz state is currently loaded.
+     */
+    boolean isLive(int userId) {
+        return actors.containsKey(userId);
+    }
+
+    /**
+     * Evict every actor that has been idle for longer than the idle timeout, and wait for
+     * their flushes.
+     * @return number of actors evicted
+     */
+    public int evictIdle() {
+        long cutoff = System.nanoTime() - idleTimeoutNanos;
+        List<CompletableFuture<Void>> flushes = new ArrayList<>();
+        for (var entry : List.copyOf(actors.entrySet())) {
+            if (entry.getValue().lastUsedNanos() - cutoff <= 0) {
+                CompletableFuture<Void> flush = evict(entry.getKey(), entry.getValue());
+                if (flush != null) {
+                    flushes.add(flush);
+                }
+            }
+        }
+        // Runs on the sweeper thread, so waiting here holds up nobody
+        CompletableFuture.allOf(flushes.toArray(CompletableFuture[]::new)).join();
+        if (!flushes.isEmpty()) {
+            log.debug("Evicted {} idle quiz actors, {} live", flushes.size(), actors.size());
+        }
+        return flushes.size();
+    }
+
+    /**
+     * Evict the least recently used idle actors until back within the limit.
+     * O(n) per eviction, only paid when a new user pushes the registry over its limit.
+     */
+    private void evictLeastRecentlyUsed(int keepUserId) {
+        while (actors.size() > maxActors) {
+            Map.Entry<Integer, QuizActor> oldest = null;
+            for (var entry : actors.entrySet()) {
+                if (entry.getKey() != keepUserId && entry.getValue().isIdle()
+                        && (oldest == null || entry.getValue().lastUsedNanos() - oldest.getValue().lastUsedNanos() < 0)) {
+                    oldest = entry;
+                }
+            }
+            if (oldest == null) {
+                return; // Everyone else is busy
+            }
+            evict(oldest.getKey(), oldest.getValue());
+        }
+    }
+
+    /**
+     * Remove the actor if it is still registered and idle, then flush it.
+     * @return the flush, or null if the actor was not evicted
+     */
+    private CompletableFuture<Void> evict(int userId, QuizActor actor) {
+        boolean[] removed = new boolean[1];
+        actors.computeIfPresent(userId, (id, current) -> {
+            if (current == actor && actor.isIdle()) {
+                removed[0] = true;
+                return null;
+            }
+            return current;
+        });
+        if (!removed[0]) {
+            return null;
+        }
+        return actor.ask(service -> {
+            service.flush();
+            return (Void) null;
+        }).exceptionally(e -> {
+            log.warn("Failed to flush quiz state for user {}", userId, e);
+            return null;
+        });
+    }
+
+    /**
+     * Stop sweeping and flush every actor once its queued commands have run.
+     */
+    @Override
+    public void close() {
+        sweeper.shutdownNow();
+        List<CompletableFuture<Void>> flushes = new ArrayList<>();
+        for (Integer userId : List.copyOf(actors.keySet())) {
+            QuizActor actor = actors.remove(userId);
+            if (actor != null) {
+                flushes.add(actor.ask(service -> {
+                    service.flush();
+                    return (Void) null;
+                }));
+            }
+        }
+        try {
+            CompletableFuture.allOf(flushes.toArray(CompletableFuture[]::new)).get(30, TimeUnit.SECONDS);
+        } catch (Exception e) {
+            log.warn("Not all quiz state was flushed on close", e);
+        }
+        executor.shutdown();
+    }
+}
@@ -4,32 +4,55 @@ import mathquiz.domain.*;
 import mathquiz.storage.Repository;
 
 import java.time.Clock;
+import java.time.Instant;
 import java.time.LocalDate;
-import java.util.HashSet;
+import java.util.EnumMap;
 import java.util.List;
+import java.util.Map;
+import java.util.Optional;
 import java.util.Random;
-import java.util.Set;
 
 /**
  * Main quiz orchestration - generates problems, processes answers.
  */
 public class QuizService {
 
+    /** Due problems fetched per query while the review schedule isn't loaded */
+    private static final int DUE_BATCH = 16;
+
     private final Repository repo;
     private final int userId;
     private final Clock clock;
     private final Random random;
+    /** Review schedule, or null until first needed (see {@link #forRequest}) */
+    private ReviewQueue reviews;
+    /** Weak-fact samplers for the current range of each operation, built on first use */
+    private final Map<Operation, FactSampler> samplers = new EnumMap<>(Operation.class);
 
     private DifficultyManager difficulty;
     private DailyStats dailyStats;
     private SessionStats sessionStats;
-    private Problem currentProblem;
+    /** Current problem as a {@link FactKey}, or {@link FactKey#NONE} */
+    private int currentKey = FactKey.NONE;
 
     public QuizService(Repository repo, int userId, Clock clock) {
         this(repo, userId, clock, new Random());
     }
 
     public QuizService(Repository repo, int userId, Clock clock, Random random) {
+        this(repo, userId, clock, random, true);
+    }
+
+    /**
+     * Create a service that lives for a single request, as in stateless mode. Only difficulty
+     * and today's stats are loaded up front: answers and due reviews use targeted queries, and
+     * the review schedule is only loaded when a new problem has to be sampled.
+     */
+    public static QuizService forRequest(Repository repo, int userId, Clock clock) {
+        return new QuizService(repo, userId, clock, new Random(), false);
+    }
+
+    private QuizService(Repository repo, int userId, Clock clock, Random random, boolean loadSchedule) {
         this.repo = repo;
         this.userId = userId;
         this.clock = clock;
@@ -38,6 +61,11 @@ public class QuizService {
         // Load or create difficulty manager
         this.difficulty = repo.getDifficulty(userId);
 
+        // Load the review schedule once; it is kept up to date in memory from here on
+        if (loadSchedule) {
+            reviews();
+        }
+
         // Load or create today's stats
         LocalDate today = LocalDate.now(clock);
         this.dailyStats = repo.getDailyStats(userId, today)
@@ -52,10 +80,12 @@ public class QuizService {
     }
 
     public SessionStats sessionStats() {
+        rollOverDay();
         return sessionStats;
     }
 
     public DailyStats dailyStats() {
+        rollOverDay();
         return dailyStats;
     }
 
@@ -64,7 +94,24 @@ public class QuizService {
     }
 
     public Problem currentProblem() {
-        return currentProblem;
+        return currentKey == FactKey.NONE ? null : FactKey.toProblem(currentKey);
+    }
+
+    /**
+     * The current problem as a {@link FactKey}, or {@link FactKey#NONE} if there is none.
+     */
+    public int currentProblemKey() {
+        return currentKey;
+    }
+
+    /**
+     * Restore per-session state kept outside this service: the current problem and streak.
+     * @param problemKey the current problem as a {@link FactKey}, or {@link FactKey#NONE}
+     */
+    public void resume(int problemKey, int streak) {
+        currentKey = problemKey;
+        DailyStats today = dailyStats();
+        sessionStats = new SessionStats(streak, Math.max(streak, today.bestStreak()), 0, 0);
     }
 
     /**
@@ -96,20 +143,24 @@ public class QuizService {
      * @return The next problem
      */
     public Problem getNextProblem(Operation operation) {
+        return FactKey.toProblem(nextProblemKey(operation));
+    }
+
+    /**
+     * Pick the next problem and make it current, as a {@link FactKey}.
+     * Same selection as {@link #getNextProblem}, without allocating a {@link Problem}.
+     */
+    public int nextProblemKey(Operation operation) {
         // Check for due problems first (spaced repetition)
-        List<ProblemStats> dueProblems = repo.getDueProblems(userId, clock.instant(), 10);
-        Set<Operation> unlocked = new HashSet<>(getUnlockedOperations());
-
-        // Filter to only unlocked operations
-        List<ProblemStats> dueUnlocked = dueProblems.stream()
-                .filter(p -> unlocked.contains(p.operation()))
-                .toList();
-
-        if (!dueUnlocked.isEmpty()) {
-            // Review a due problem (pick the most overdue one - first in list)
-            ProblemStats stats = dueUnlocked.get(0);
-            currentProblem = new Problem(stats.operand1(), stats.operand2(), stats.operation());
-            return currentProblem;
+        Instant now = clock.instant();
+        int due = reviews != null
+                ? reviews.nextDueKey(now, difficulty.unlockedMask())
+                : storedDueKey(now);
+
+        if (due != FactKey.NONE) {
+            // Review the most overdue problem
+            currentKey = due;
+            return currentKey;
         }
 
         // No due problems - generate a new one
@@ -123,14 +174,49 @@ public class QuizService {
             }
         }
 
-        // Generate a new problem within the current range
-        int[] range = difficulty.getRange(operation);
-        int maxNumber = range[1];
+        // Generate a new problem within the current range, favouring weak facts
+        currentKey = sampler(operation).sampleKey(random);
 
-        ProblemPool pool = ProblemPool.forOperation(operation, maxNumber);
-        currentProblem = pool.pickRandom(random);
+        return currentKey;
+    }
 
-        return currentProblem;
+    /**
+     * Most overdue problem among unlocked operations, queried from the repository while the
+     * review schedule isn't loaded. Loads it if a full batch holds nothing for an unlocked operation.
+     */
+    private int storedDueKey(Instant now) {
+        int mask = difficulty.unlockedMask();
+        List<ProblemStats> due = repo.getDueProblems(userId, now, DUE_BATCH);
+        for (ProblemStats stats : due) {
+            if ((mask & (1 << stats.operation().ordinal())) != 0) {
+                return FactKey.of(stats.operation(), stats.operand1(), stats.operand2());
+            }
+        }
+        return due.size() < DUE_BATCH ? FactKey.NONE : reviews().nextDueKey(now, mask);
+    }
+
+    /**
+     * Get the review schedule, loading it on first use.
+     */
+    private ReviewQueue reviews() {
+        if (reviews == null) {
+            reviews = new ReviewQueue(repo.getAllProblemStats(userId));
+        }
+        return reviews;
+    }
+
+    /**
+     * Get the sampler for the operation's current range, rebuilding it if the range moved.
+     */
+    private FactSampler sampler(Operation operation) {
+        int maxNumber = difficulty.getRange(operation)[1];
+        ProblemSpace space = ProblemPool.forOperation(operation, maxNumber).space();
+        FactSampler sampler = samplers.get(operation);
+        if (sampler == null || !sampler.space().equals(space)) {
+            sampler = new FactSampler(space, reviews());
+            samplers.put(operation, sampler);
+        }
+        return sampler;
     }
 
     /**
@@ -141,36 +227,35 @@ public class QuizService {
      * @throws IllegalStateException if no current problem
      */
     public AnswerResult submitAnswer(int answer) {
-        if (currentProblem == null) {
+        if (currentKey == FactKey.NONE) {
             throw new IllegalStateException("No current problem - call getNextProblem first");
         }
 
-        Problem problem = currentProblem;
-        boolean correct = problem.check(answer);
+        int key = currentKey;
+        Operation operation = FactKey.operation(key);
+        boolean correct = FactKey.check(key, answer);
+
+        // A long-lived service may see midnight pass; the answer counts towards the new day
+        rollOverDay();
 
         // Update session stats
         sessionStats.recordAnswer(correct);
 
         // Update spaced repetition stats
-        ProblemStats existingStats = repo.getProblemStats(
-                userId, problem.operation(), problem.operand1(), problem.operand2()
-        ).orElse(ProblemStats.newStats(problem.operation(), problem.operand1(), problem.operand2()));
+        ProblemStats existingStats = stats(key)
+                .orElseGet(() -> ProblemStats.newStats(operation, FactKey.operand1(key), FactKey.operand2(key)));
 
         ProblemStats newStats = SpacedRepetition.updateStats(existingStats, correct, clock);
-        repo.saveProblemStats(userId, newStats);
-
-        // Update difficulty and check for progression
-        Set<Operation> prevUnlocked = new HashSet<>(getUnlockedOperations());
-        boolean rangeExpanded = difficulty.recordAttempt(problem.operation(), correct);
-        Set<Operation> newUnlocked = new HashSet<>(getUnlockedOperations());
-
-        Operation newOperationUnlocked = null;
-        newUnlocked.removeAll(prevUnlocked);
-        if (!newUnlocked.isEmpty()) {
-            newOperationUnlocked = newUnlocked.iterator().next();
+        if (reviews != null) {
+            reviews.update(newStats);
+        }
+        FactSampler sampler = samplers.get(operation);
+        if (sampler != null) {
+            sampler.update(newStats);
         }
 
-        repo.saveDifficulty(userId, difficulty);
+        // Update difficulty and check for progression
+        Progression progression = difficulty.recordAttempt(operation, correct);
 
         // Update daily stats
         int prevCorrect = dailyStats.problemsCorrect();
@@ -179,25 +264,54 @@ public class QuizService {
         // Calculate new stars
         int newStars = DailyStats.calculateNewStars(prevCorrect, dailyStats.problemsCorrect());
 
-        repo.saveDailyStats(userId, dailyStats);
-
-        // Record in history
-        repo.recordAttempt(userId, problem.operation(), problem.operand1(), problem.operand2(),
+        // Persist stats, progress and history in a single transaction
+        int totalStars = repo.commitAnswer(userId, newStats, difficulty, dailyStats,
                 correct, clock.instant());
 
         // Clear current problem
-        currentProblem = null;
+        currentKey = FactKey.NONE;
 
         return new AnswerResult(
                 correct,
-                problem.answer(),
+                FactKey.answer(key),
                 sessionStats.currentStreak(),
                 newStars,
-                rangeExpanded,
-                newOperationUnlocked
+                totalStars,
+                progression.progressed(),
+                progression.newlyUnlocked()
         );
     }
 
+    /**
+     * Stats for one problem, from the review schedule if loaded, else from the repository.
+     */
+    private Optional<ProblemStats> stats(int key) {
+        if (reviews != null) {
+            return reviews.get(key);
+        }
+        return repo.getProblemStats(userId, FactKey.operation(key), FactKey.operand1(key), FactKey.operand2(key));
+    }
+
+    /**
+     * Persist anything not yet written, e.g. before this service is dropped.
+     * Answers are committed as they are submitted, so this is usually a no-op.
+     */
+    public void flush() {
+        repo.saveDifficulty(userId, difficulty);
+    }
+
+    /**
+     * Switch to the current day's stats if the date has changed since they were loaded.
+     * The streak starts over with the day, as it does for a freshly created service.
+     */
+    private void rollOverDay() {
+        LocalDate today = LocalDate.now(clock);
+        if (!today.equals(dailyStats.date())) {
+            dailyStats = repo.getDailyStats(userId, today).orElse(new DailyStats(today));
+            sessionStats = new SessionStats(dailyStats.currentStreak(), dailyStats.bestStreak(), 0, 0);
+        }
+    }
+
     /**
      * Get total stars earned across all days.
      */
@@ -6,6 +6,7 @@ import org.flywaydb.core.Flyway;
 import org.jdbi.v3.core.Jdbi;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import org.sqlite.SQLiteConfig;
 
 import javax.sql.DataSource;
 import java.nio.file.Path;
@@ -17,6 +18,8 @@ public class DatabaseSetup {
 
     private static final Logger logger = LoggerFactory.getLogger(DatabaseSetup.class);
 
+    private static final int BUSY_TIMEOUT_MS = 5000;
+
     /**
      * Create a HikariCP DataSource for SQLite.
      */
@@ -43,6 +46,49 @@ public class DatabaseSetup {
         return new HikariDataSource(config);
     }
 
+    /**
+     * Create the writer DataSource for WAL mode: a single connection that performs all writes.
+     * With syncNormal, commits skip the fsync until the next checkpoint: the database stays
+     * consistent, but the latest committed answers can be lost on power failure.
+     */
+    public static HikariDataSource createWriterDataSource(Path dbPath, boolean syncNormal) {
+        SQLiteConfig sqlite = new SQLiteConfig();
+        sqlite.setJournalMode(SQLiteConfig.JournalMode.WAL);
+        if (syncNormal) {
+            sqlite.setSynchronous(SQLiteConfig.SynchronousMode.NORMAL);
+        }
+        sqlite.setBusyTimeout(BUSY_TIMEOUT_MS);
+
+        HikariConfig config = new HikariConfig();
+        config.setPoolName("sqlite-writer");
+        config.setJdbcUrl("jdbc:sqlite:" + dbPath.toAbsolutePath());
+        config.setMaximumPoolSize(1); // SQLite only supports one writer
+        config.setConnectionTestQuery("SELECT 1");
+        config.setDataSourceProperties(sqlite.toProperties());
+
+        return new HikariDataSource(config);
+    }
+
+    /**
+     * Create a read-only DataSource for WAL mode.
+     * Readers see the last committed state and never wait for the writer.
+     */
+    public static HikariDataSource createReaderDataSource(Path dbPath, int poolSize) {
+        SQLiteConfig sqlite = new SQLiteConfig();
+        sqlite.setReadOnly(true);
+        sqlite.setBusyTimeout(BUSY_TIMEOUT_MS);
+
+        HikariConfig config = new HikariConfig();
+        config.setPoolName("sqlite-reader");
+        config.setJdbcUrl("jdbc:sqlite:" + dbPath.toAbsolutePath());
+        config.setMaximumPoolSize(poolSize);
+        config.setConnectionTestQuery("SELECT 1");
+        config.setDataSourceProperties(sqlite.toProperties());
+        config.setReadOnly(true); // Must match the open mode; the driver rejects changing it later
+
+        return new HikariDataSource(config);
+    }
+
     /**
      * Run Flyway migrations on the given data source.
      */
@@ -74,6 +120,25 @@ public class DatabaseSetup {
         return new SetupResult(dataSource, jdbi);
     }
 
+    /**
+     * Full setup in WAL mode: one writer connection plus a pool of read-only connections.
+     * Use {@link SetupResult#readJdbi()} for queries so page renders don't queue behind answer writes.
+     */
+    public static SetupResult setupWal(Path dbPath, int readers) {
+        return setupWal(dbPath, readers, false);
+    }
+
+    /**
+     * Full setup in WAL mode as above, optionally trading durability on power failure for
+     * cheaper commits (see {@link #createWriterDataSource(Path, boolean)}).
+     */
+    public static SetupResult setupWal(Path dbPath, int readers, boolean syncNormal) {
+        HikariDataSource writer = createWriterDataSource(dbPath, syncNormal);
+        runMigrations(writer);
+        HikariDataSource reader = createReaderDataSource(dbPath, readers);
+        return new SetupResult(writer, createJdbi(writer), reader, createJdbi(reader));
+    }
+
     /**
      * Full setup for in-memory database (for testing).
      */
@@ -85,11 +150,21 @@ public class DatabaseSetup {
     }
 
     /**
-     * Result of database setup containing the data source and Jdbi instance.
+     * Result of database setup containing the data sources and Jdbi instances.
+     * Without a separate read pool, the read side is the same as the write side.
      */
-    public record SetupResult(HikariDataSource dataSource, Jdbi jdbi) implements AutoCloseable {
+    public record SetupResult(HikariDataSource dataSource, Jdbi jdbi,
+                              HikariDataSource readDataSource, Jdbi readJdbi) implements AutoCloseable {
+
+        public SetupResult(HikariDataSource dataSource, Jdbi jdbi) {
+            this(dataSource, jdbi, dataSource, jdbi);
+        }
+
         @Override
         public void close() {
+            if (readDataSource != dataSource) {
+                readDataSource.close();
+            }
             dataSource.close();
         }
     }
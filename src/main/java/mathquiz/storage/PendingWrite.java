@@ -0,0 +1,82 @@
+package mathquiz.storage;
+
+import mathquiz.domain.DailyStats;
+import mathquiz.domain.Operation;
+import mathquiz.domain.OperationProgress;
+import mathquiz.domain.ProblemStats;
+
+import java.time.Instant;
+import java.time.LocalDate;
+
+/**
+ * A single queued mutation for the write-behind layer.
+ * Writes with equal keys replace each other while queued, so only the latest one is persisted.
+ * Mutable domain objects are copied on creation so later changes don't leak into the queue.
+ */
+sealed interface PendingWrite {
+
+    /**
+     * Merge key - the row this write targets.
+     */
+    Object key();
+
+    record ProblemStatsWrite(int userId, ProblemStats stats) implements PendingWrite {
+        @Override
+        public Object key() {
+            return new StatsKey(userId, stats.operation(), stats.operand1(), stats.operand2());
+        }
+    }
+
+    record ProgressWrite(int userId, OperationProgress progress) implements PendingWrite {
+        public ProgressWrite {
+            progress = copyOf(progress);
+        }
+
+        @Override
+        public Object key() {
+            return new ProgressKey(userId, progress.operation());
+        }
+    }
+
+    record DailyStatsWrite(int userId, DailyStats stats) implements PendingWrite {
+        public DailyStatsWrite {
+            stats = copyOf(stats);
+        }
+
+        @Override
+        public Object key() {
+            return new DayKey(userId, stats.date());
+        }
+    }
+
+    /**
+     * History entries are never merged; the sequence number keeps every attempt distinct.
+     */
+    record AttemptWrite(long sequence, int userId, Operation operation, int operand1, int operand2,
+                        boolean correct, Instant timestamp) implements PendingWrite {
+        @Override
+        public Object key() {
+            return this;
+        }
+    }
+
+    record StatsKey(int userId, Operation operation, int operand1, int operand2) {}
+
+    record ProgressKey(int userId, Operation operation) {}
+
+    record DayKey(int userId, LocalDate day) {}
+
+    static OperationProgress copyOf(OperationProgress p) {
+        return new OperationProgress(
+            p.operation(), p.maxNumber(), p.isUnlocked(), p.isManuallyUnlocked(),
+            p.problemsAtCurrentRange(), p.correctAtCurrentRange()
+        );
+    }
+
+    static DailyStats copyOf(DailyStats s) {
+        return new DailyStats(
+            s.date(), s.problemsSolved(), s.problemsCorrect(),
+            s.starsEarned(), s.bestStreak(), s.currentStreak()
+        );
+    }
+}
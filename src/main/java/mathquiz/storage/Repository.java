@@ -62,6 +62,7 @@ public interface Repository {
 
     /**
      * Save difficulty manager state.
+     * Only operations with unsaved changes are written; they are marked saved afterwards.
      */
     void saveDifficulty(int userId, DifficultyManager difficulty);
 
@@ -88,4 +89,24 @@ public interface Repository {
      * Record a problem attempt in history.
      */
     void recordAttempt(int userId, Operation operation, int operand1, int operand2, boolean correct, Instant timestamp);
+
+    // --- Answer commit ---
+
+    /**
+     * Persist everything a single answer changes as one transaction:
+     * problem stats, difficulty progress, daily stats and the history entry.
+     * @return total stars earned by user across all days, including this answer
+     */
+    int commitAnswer(int userId, ProblemStats stats, DifficultyManager difficulty,
+                     DailyStats dailyStats, boolean correct, Instant timestamp);
+
+    // --- Quiz state tokens ---
+
+    /**
+     * Advance the user's quiz state sequence, which makes signed quiz state tokens single-use.
+     * Applied immediately, never deferred.
+     * @param expected the sequence of the token being redeemed, or -1 to advance unconditionally
+     * @return the new sequence, or -1 if {@code expected} is not the current sequence
+     */
+    long advanceQuizStateSequence(int userId, long expected);
 }
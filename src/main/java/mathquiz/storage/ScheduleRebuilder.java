@@ -0,0 +1,186 @@
+package mathquiz.storage;
+
+import mathquiz.domain.*;
+import org.jdbi.v3.core.Jdbi;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.nio.file.Path;
+import java.sql.ResultSet;
+import java.time.Clock;
+import java.time.Duration;
+import java.time.Instant;
+import java.time.ZoneId;
+import java.time.ZoneOffset;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
+
+/**
+ * Batch tool that rebuilds problem_stats and operation_progress by replaying the attempts log.
+ *
+ * <p>Each user's attempts are streamed in timestamp order through {@link SpacedRepetition} and
+ * {@link DifficultyManager} with a clock pinned to each attempt's time, so schedules can be
+ * recomputed after changing SM-2 constants. Users run in parallel on a fork-join pool; memory
+ * per user is bounded by the number of distinct facts, not by history length. Manual unlocks
+ * are kept. Run it while the app is stopped - live answers would race the rewrite.
+ */
+public class ScheduleRebuilder {
+
+    private static final Logger log = LoggerFactory.getLogger(ScheduleRebuilder.class);
+
+    /** Rows fetched per round trip while streaming attempts */
+    private static final int FETCH_SIZE = 1000;
+
+    private final Jdbi readJdbi;
+    private final SqliteRepository repo;
+    private final int parallelism;
+
+    /**
+     * Outcome of a rebuild run.
+     */
+    public record Result(int users, long attempts, Duration elapsed) {}
+
+    public ScheduleRebuilder(DatabaseSetup.SetupResult db, int parallelism) {
+        this.readJdbi = db.readJdbi();
+        this.repo = new SqliteRepository(db.jdbi(), db.readJdbi());
+        this.parallelism = parallelism;
+    }
+
+    /**
+     * Rebuild schedules for every user.
+     */
+    public Result rebuildAll() {
+        long start = System.nanoTime();
+        List<Integer> userIds = readJdbi.withHandle(handle ->
+            handle.createQuery("SELECT id FROM users ORDER BY id")
+                .mapTo(Integer.class)
+                .list()
+        );
+
+        List<Callable<Long>> tasks = new ArrayList<>();
+        for (int userId : userIds) {
+            tasks.add(() -> rebuildUser(userId));
+        }
+
+        long attempts = 0;
+        ForkJoinPool pool = new ForkJoinPool(parallelism);
+        try {
+            for (Future<Long> future : pool.invokeAll(tasks)) {
+                attempts += future.get();
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Schedule rebuild interrupted", e);
+        } catch (ExecutionException e) {
+            throw new IllegalStateException("Schedule rebuild failed", e.getCause());
+        } finally {
+            pool.shutdown();
+        }
+
+        return new Result(userIds.size(), attempts, Duration.ofNanos(System.nanoTime() - start));
+    }
+
+    /**
+     * Rebuild schedules for one user.
+     * @return number of attempts replayed
+     */
+    public long rebuildUser(int userId) {
+        // Replay starts from a fresh user, keeping only what the log can't reproduce
+        DifficultyManager current = repo.getDifficulty(userId);
+        DifficultyManager difficulty = new DifficultyManager();
+        for (Operation op : Operation.values()) {
+            if (current.getProgress(op).isManuallyUnlocked()) {
+                difficulty.unlockOperation(op);
+            }
+        }
+
+        Map<Integer, ProblemStats> stats = new HashMap<>();
+        ReplayClock clock = new ReplayClock();
+
+        long replayed = readJdbi.withHandle(handle ->
+            handle.createQuery("""
+                SELECT ts, fact_key, correct
+                FROM attempts
+                WHERE user_id = :userId
+                ORDER BY ts, id
+                """)
+                .bind("userId", userId)
+                .setFetchSize(FETCH_SIZE)
+                .scanResultSet((supplier, ctx) -> {
+                    ResultSet rs = supplier.get();
+                    long count = 0;
+                    while (rs.next()) {
+                        int key = rs.getInt("fact_key");
+                        boolean correct = rs.getInt("correct") != 0;
+                        clock.now = Instant.ofEpochSecond(rs.getLong("ts"));
+
+                        ProblemStats previous = stats.get(key);
+                        if (previous == null) {
+                            previous = ProblemStats.newStats(
+                                FactKey.operation(key), FactKey.operand1(key), FactKey.operand2(key));
+                        }
+                        stats.put(key, SpacedRepetition.updateStats(previous, correct, clock));
+                        difficulty.recordAttempt(FactKey.operation(key), correct);
+                        count++;
+                    }
+                    return count;
+                })
+        );
+
+        repo.replaceSchedule(userId, stats.values(), difficulty);
+        return replayed;
+    }
+
+    /**
+     * Clock that reads whatever time the replay last set.
+     */
+    private static final class ReplayClock extends Clock {
+        private Instant now = Instant.EPOCH;
+
+        @Override
+        public ZoneId getZone() {
+            return ZoneOffset.UTC;
+        }
+
+        /**
+         * A clock fixed at the current replay time in the given zone.
+         */
+        @Override
+        public Clock withZone(ZoneId zone) {
+            return Clock.fixed(now, zone);
+        }
+
+        @Override
+        public Instant instant() {
+            return now;
+        }
+    }
+
+    /**
+     * Rebuild schedules in DATA_DIR/quiz.db. REPLAY_THREADS sets the parallelism
+     * (default: available processors).
+     *
+     * <p>The database is opened the way the app opens it: in WAL mode with DB_READERS read
+     * connections if that is set above 0, otherwise in its existing journal mode. Like an app
+     * start, this applies any pending migrations.
+     */
+    public static void main(String[] args) {
+        String dataDir = System.getenv().getOrDefault("DATA_DIR", "data");
+        int threads = Integer.parseInt(System.getenv().getOrDefault("REPLAY_THREADS",
+                String.valueOf(Runtime.getRuntime().availableProcessors())));
+        int dbReaders = Integer.parseInt(System.getenv().getOrDefault("DB_READERS", "0"));
+        Path dbPath = Path.of(dataDir, "quiz.db");
+
+        try (var db = dbReaders > 0 ? DatabaseSetup.setupWal(dbPath, dbReaders) : DatabaseSetup.setup(dbPath)) {
+            Result result = new ScheduleRebuilder(db, threads).rebuildAll();
+            log.info("Rebuilt schedules for {} users from {} attempts in {} ms",
+                    result.users(), result.attempts(), result.elapsed().toMillis());
+        }
+    }
+}
@@ -1,29 +1,44 @@
 package mathquiz.storage;
 
 import mathquiz.domain.*;
+import org.jdbi.v3.core.Handle;
 import org.jdbi.v3.core.Jdbi;
 
 import java.time.Instant;
 import java.time.LocalDate;
 import java.time.format.DateTimeFormatter;
 import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Supplier;
 
 /**
  * SQLite-based repository implementation using Jdbi.
+ *
+ * <p>Writes go through {@code jdbi}; plain queries go through {@code readJdbi}, which can be a
+ * separate read-only pool when the database runs in WAL mode.
  */
 public class SqliteRepository implements Repository {
 
     private final Jdbi jdbi;
+    private final Jdbi readJdbi;
+
+    /** In-process cache of user_totals.total_stars, keyed by user id */
+    private final Map<Integer, Integer> starTotals = new ConcurrentHashMap<>();
 
     public SqliteRepository(Jdbi jdbi) {
+        this(jdbi, jdbi);
+    }
+
+    public SqliteRepository(Jdbi jdbi, Jdbi readJdbi) {
         this.jdbi = jdbi;
+        this.readJdbi = readJdbi;
     }
 
     // --- User management ---
 
     @Override
     public List<User> getUsers() {
-        return jdbi.withHandle(handle ->
+        return readJdbi.withHandle(handle ->
             handle.createQuery("SELECT id, name, created_at FROM users ORDER BY name")
                 .map((rs, ctx) -> new User(
                     rs.getInt("id"),
@@ -53,7 +68,7 @@ public class SqliteRepository implements Repository {
 
     @Override
     public Optional<User> getUser(int userId) {
-        return jdbi.withHandle(handle ->
+        return readJdbi.withHandle(handle ->
             handle.createQuery("SELECT id, name, created_at FROM users WHERE id = :id")
                 .bind("id", userId)
                 .map((rs, ctx) -> new User(
@@ -69,18 +84,15 @@ public class SqliteRepository implements Repository {
 
     @Override
     public Optional<ProblemStats> getProblemStats(int userId, Operation operation, int operand1, int operand2) {
-        return jdbi.withHandle(handle ->
+        return readJdbi.withHandle(handle ->
             handle.createQuery("""
-                SELECT operation, operand1, operand2, ease_factor, interval_days,
+                SELECT fact_key, ease_factor, interval_days,
                        next_review_ts, repetitions, total_attempts, total_correct
                 FROM problem_stats
-                WHERE user_id = :userId AND operation = :operation
-                  AND operand1 = :operand1 AND operand2 = :operand2
+                WHERE user_id = :userId AND fact_key = :factKey
                 """)
                 .bind("userId", userId)
-                .bind("operation", operation.name())
-                .bind("operand1", operand1)
-                .bind("operand2", operand2)
+                .bind("factKey", FactKey.of(operation, operand1, operand2))
                 .map((rs, ctx) -> mapToProblemStats(rs))
                 .findFirst()
         );
@@ -88,9 +100,9 @@ public class SqliteRepository implements Repository {
 
     @Override
     public List<ProblemStats> getAllProblemStats(int userId) {
-        return jdbi.withHandle(handle ->
+        return readJdbi.withHandle(handle ->
             handle.createQuery("""
-                SELECT operation, operand1, operand2, ease_factor, interval_days,
+                SELECT fact_key, ease_factor, interval_days,
                        next_review_ts, repetitions, total_attempts, total_correct
                 FROM problem_stats
                 WHERE user_id = :userId
@@ -104,9 +116,9 @@ public class SqliteRepository implements Repository {
     @Override
     public List<ProblemStats> getDueProblems(int userId, Instant now, int limit) {
         long nowEpoch = now.getEpochSecond();
-        return jdbi.withHandle(handle ->
+        return readJdbi.withHandle(handle ->
             handle.createQuery("""
-                SELECT operation, operand1, operand2, ease_factor, interval_days,
+                SELECT fact_key, ease_factor, interval_days,
                        next_review_ts, repetitions, total_attempts, total_correct
                 FROM problem_stats
                 WHERE user_id = :userId
@@ -124,46 +136,47 @@ public class SqliteRepository implements Repository {
 
     @Override
     public void saveProblemStats(int userId, ProblemStats stats) {
+        jdbi.useHandle(handle -> upsertProblemStats(handle, userId, stats));
+    }
+
+    private void upsertProblemStats(Handle handle, int userId, ProblemStats stats) {
         Long nextReviewTs = stats.nextReview() != null ? stats.nextReview().getEpochSecond() : null;
 
-        jdbi.useHandle(handle ->
-            handle.createUpdate("""
-                INSERT INTO problem_stats (user_id, operation, operand1, operand2, ease_factor,
-                                           interval_days, next_review_ts, repetitions,
-                                           total_attempts, total_correct)
-                VALUES (:userId, :operation, :operand1, :operand2, :easeFactor,
-                        :intervalDays, :nextReviewTs, :repetitions,
-                        :totalAttempts, :totalCorrect)
-                ON CONFLICT(user_id, operation, operand1, operand2) DO UPDATE SET
-                    ease_factor = :easeFactor,
-                    interval_days = :intervalDays,
-                    next_review_ts = :nextReviewTs,
-                    repetitions = :repetitions,
-                    total_attempts = :totalAttempts,
-                    total_correct = :totalCorrect
-                """)
-                .bind("userId", userId)
-                .bind("operation", stats.operation().name())
-                .bind("operand1", stats.operand1())
-                .bind("operand2", stats.operand2())
-                .bind("easeFactor", stats.easeFactor())
-                .bind("intervalDays", stats.intervalDays())
-                .bind("nextReviewTs", nextReviewTs)
-                .bind("repetitions", stats.repetitions())
-                .bind("totalAttempts", stats.totalAttempts())
-                .bind("totalCorrect", stats.totalCorrect())
-                .execute()
-        );
+        handle.createUpdate("""
+            INSERT INTO problem_stats (user_id, fact_key, ease_factor,
+                                       interval_days, next_review_ts, repetitions,
+                                       total_attempts, total_correct)
+            VALUES (:userId, :factKey, :easeFactor,
+                    :intervalDays, :nextReviewTs, :repetitions,
+                    :totalAttempts, :totalCorrect)
+            ON CONFLICT(user_id, fact_key) DO UPDATE SET
+                ease_factor = :easeFactor,
+                interval_days = :intervalDays,
+                next_review_ts = :nextReviewTs,
+                repetitions = :repetitions,
+                total_attempts = :totalAttempts,
+                total_correct = :totalCorrect
+            """)
+            .bind("userId", userId)
+            .bind("factKey", FactKey.of(stats.operation(), stats.operand1(), stats.operand2()))
+            .bind("easeFactor", stats.easeFactor())
+            .bind("intervalDays", stats.intervalDays())
+            .bind("nextReviewTs", nextReviewTs)
+            .bind("repetitions", stats.repetitions())
+            .bind("totalAttempts", stats.totalAttempts())
+            .bind("totalCorrect", stats.totalCorrect())
+            .execute();
     }
 
     private ProblemStats mapToProblemStats(java.sql.ResultSet rs) throws java.sql.SQLException {
         Long nextReviewTs = rs.getObject("next_review_ts") != null ? rs.getLong("next_review_ts") : null;
         Instant nextReview = nextReviewTs != null ? Instant.ofEpochSecond(nextReviewTs) : null;
+        int factKey = rs.getInt("fact_key");
 
         return new ProblemStats(
-            Operation.valueOf(rs.getString("operation")),
-            rs.getInt("operand1"),
-            rs.getInt("operand2"),
+            FactKey.operation(factKey),
+            FactKey.operand1(factKey),
+            FactKey.operand2(factKey),
             rs.getDouble("ease_factor"),
             rs.getDouble("interval_days"),
             nextReview,
@@ -177,7 +190,7 @@ public class SqliteRepository implements Repository {
 
     @Override
     public DifficultyManager getDifficulty(int userId) {
-        List<OperationProgress> progressList = jdbi.withHandle(handle ->
+        List<OperationProgress> progressList = readJdbi.withHandle(handle ->
             handle.createQuery("""
                 SELECT operation, max_number, unlocked, manually_unlocked,
                        problems_at_current_range, correct_at_current_range
@@ -221,32 +234,47 @@ public class SqliteRepository implements Repository {
 
     @Override
     public void saveDifficulty(int userId, DifficultyManager difficulty) {
-        jdbi.useHandle(handle -> {
-            for (Operation op : Operation.values()) {
-                OperationProgress p = difficulty.getProgress(op);
-                handle.createUpdate("""
-                    INSERT INTO operation_progress (user_id, operation, max_number, unlocked,
-                                                    manually_unlocked, problems_at_current_range,
-                                                    correct_at_current_range)
-                    VALUES (:userId, :operation, :maxNumber, :unlocked, :manuallyUnlocked,
-                            :problemsAtCurrentRange, :correctAtCurrentRange)
-                    ON CONFLICT(user_id, operation) DO UPDATE SET
-                        max_number = :maxNumber,
-                        unlocked = :unlocked,
-                        manually_unlocked = :manuallyUnlocked,
-                        problems_at_current_range = :problemsAtCurrentRange,
-                        correct_at_current_range = :correctAtCurrentRange
-                    """)
-                    .bind("userId", userId)
-                    .bind("operation", op.name())
-                    .bind("maxNumber", p.maxNumber())
-                    .bind("unlocked", p.isUnlocked() ? 1 : 0)
-                    .bind("manuallyUnlocked", p.isManuallyUnlocked() ? 1 : 0)
-                    .bind("problemsAtCurrentRange", p.problemsAtCurrentRange())
-                    .bind("correctAtCurrentRange", p.correctAtCurrentRange())
-                    .execute();
+        int dirty = difficulty.dirtyMask();
+        if (dirty == 0) {
+            return;
+        }
+        jdbi.useTransaction(handle -> upsertDifficulty(handle, userId, difficulty, dirty));
+        difficulty.markSaved(dirty);
+    }
+
+    /**
+     * Upsert only the operations in the dirty mask.
+     */
+    private void upsertDifficulty(Handle handle, int userId, DifficultyManager difficulty, int dirty) {
+        for (Operation op : Operation.values()) {
+            if ((dirty & (1 << op.ordinal())) != 0) {
+                upsertProgress(handle, userId, difficulty.getProgress(op));
             }
-        });
+        }
+    }
+
+    private void upsertProgress(Handle handle, int userId, OperationProgress p) {
+        handle.createUpdate("""
+            INSERT INTO operation_progress (user_id, operation, max_number, unlocked,
+                                            manually_unlocked, problems_at_current_range,
+                                            correct_at_current_range)
+            VALUES (:userId, :operation, :maxNumber, :unlocked, :manuallyUnlocked,
+                    :problemsAtCurrentRange, :correctAtCurrentRange)
+            ON CONFLICT(user_id, operation) DO UPDATE SET
+                max_number = :maxNumber,
+                unlocked = :unlocked,
+                manually_unlocked = :manuallyUnlocked,
+                problems_at_current_range = :problemsAtCurrentRange,
+                correct_at_current_range = :correctAtCurrentRange
+            """)
+            .bind("userId", userId)
+            .bind("operation", p.operation().name())
+            .bind("maxNumber", p.maxNumber())
+            .bind("unlocked", p.isUnlocked() ? 1 : 0)
+            .bind("manuallyUnlocked", p.isManuallyUnlocked() ? 1 : 0)
+            .bind("problemsAtCurrentRange", p.problemsAtCurrentRange())
+            .bind("correctAtCurrentRange", p.correctAtCurrentRange())
+            .execute();
     }
 
     // --- Daily stats ---
@@ -254,7 +282,7 @@ public class SqliteRepository implements Repository {
     @Override
     public Optional<DailyStats> getDailyStats(int userId, LocalDate day) {
         String dayStr = day.format(DateTimeFormatter.ISO_LOCAL_DATE);
-        return jdbi.withHandle(handle ->
+        return readJdbi.withHandle(handle ->
             handle.createQuery("""
                 SELECT day, problems_solved, problems_correct, stars_earned, best_streak, current_streak
                 FROM daily_stats
@@ -276,57 +304,246 @@ public class SqliteRepository implements Repository {
 
     @Override
     public void saveDailyStats(int userId, DailyStats stats) {
+        withTotalsGuard(userId, () -> jdbi.useTransaction(handle -> upsertDailyStats(handle, userId, stats)));
+    }
+
+    /**
+     * Upsert a day's stats and apply the change in stars to user_totals.
+     * Must run inside a transaction on the writer.
+     * @return the user's new total stars
+     */
+    private int upsertDailyStats(Handle handle, int userId, DailyStats stats) {
         String dayStr = stats.date().format(DateTimeFormatter.ISO_LOCAL_DATE);
-        jdbi.useHandle(handle ->
-            handle.createUpdate("""
-                INSERT INTO daily_stats (user_id, day, problems_solved, problems_correct,
-                                         stars_earned, best_streak, current_streak)
-                VALUES (:userId, :day, :problemsSolved, :problemsCorrect,
-                        :starsEarned, :bestStreak, :currentStreak)
-                ON CONFLICT(user_id, day) DO UPDATE SET
-                    problems_solved = :problemsSolved,
-                    problems_correct = :problemsCorrect,
-                    stars_earned = :starsEarned,
-                    best_streak = :bestStreak,
-                    current_streak = :currentStreak
-                """)
-                .bind("userId", userId)
-                .bind("day", dayStr)
-                .bind("problemsSolved", stats.problemsSolved())
-                .bind("problemsCorrect", stats.problemsCorrect())
-                .bind("starsEarned", stats.starsEarned())
-                .bind("bestStreak", stats.bestStreak())
-                .bind("currentStreak", stats.currentStreak())
-                .execute()
-        );
+        int previousStars = handle.createQuery("""
+            SELECT stars_earned FROM daily_stats WHERE user_id = :userId AND day = :day
+            """)
+            .bind("userId", userId)
+            .bind("day", dayStr)
+            .mapTo(Integer.class)
+            .findFirst()
+            .orElse(0);
+
+        handle.createUpdate("""
+            INSERT INTO daily_stats (user_id, day, problems_solved, problems_correct,
+                                     stars_earned, best_streak, current_streak)
+            VALUES (:userId, :day, :problemsSolved, :problemsCorrect,
+                    :starsEarned, :bestStreak, :currentStreak)
+            ON CONFLICT(user_id, day) DO UPDATE SET
+                problems_solved = :problemsSolved,
+                problems_correct = :problemsCorrect,
+                stars_earned = :starsEarned,
+                best_streak = :bestStreak,
+                current_streak = :currentStreak
+            """)
+            .bind("userId", userId)
+            .bind("day", dayStr)
+            .bind("problemsSolved", stats.problemsSolved())
+            .bind("problemsCorrect", stats.problemsCorrect())
+            .bind("starsEarned", stats.starsEarned())
+            .bind("bestStreak", stats.bestStreak())
+            .bind("currentStreak", stats.currentStreak())
+            .execute();
+
+        int delta = stats.starsEarned() - previousStars;
+        if (delta == 0) {
+            Integer cached = starTotals.get(userId);
+            if (cached != null) {
+                return cached;
+            }
+            // Query outside the map so other users in the same bin don't wait on the database
+            int stored = queryTotalStars(handle, userId);
+            Integer raced = starTotals.putIfAbsent(userId, stored);
+            return raced != null ? raced : stored;
+        }
+
+        int total = handle.createQuery("""
+            INSERT INTO user_totals (user_id, total_stars) VALUES (:userId, :delta)
+            ON CONFLICT(user_id) DO UPDATE SET total_stars = total_stars + :delta
+            RETURNING total_stars
+            """)
+            .bind("userId", userId)
+            .bind("delta", delta)
+            .mapTo(Integer.class)
+            .one();
+        // Updated while still holding the writer, so cache updates are applied in commit order
+        starTotals.put(userId, total);
+        return total;
     }
 
     @Override
     public int getTotalStars(int userId) {
-        return jdbi.withHandle(handle ->
-            handle.createQuery("SELECT COALESCE(SUM(stars_earned), 0) FROM daily_stats WHERE user_id = :userId")
+        Integer cached = starTotals.get(userId);
+        if (cached != null) {
+            return cached;
+        }
+        // Load outside the map so a concurrent write can't wait on us; a write that lands first wins
+        int total = readJdbi.withHandle(handle -> queryTotalStars(handle, userId));
+        Integer raced = starTotals.putIfAbsent(userId, total);
+        return raced != null ? raced : total;
+    }
+
+    /**
+     * Total stars without the given days, read in one statement so it is consistent with them
+     * (used by the write-behind layer to swap in queued days).
+     */
+    int getTotalStarsExcluding(int userId, Collection<LocalDate> days) {
+        if (days.isEmpty()) {
+            return readJdbi.withHandle(handle -> queryTotalStars(handle, userId));
+        }
+        List<String> dayStrs = days.stream().map(day -> day.format(DateTimeFormatter.ISO_LOCAL_DATE)).toList();
+        return readJdbi.withHandle(handle ->
+            handle.createQuery("""
+                SELECT COALESCE((SELECT total_stars FROM user_totals WHERE user_id = :userId), 0)
+                     - COALESCE((SELECT SUM(stars_earned) FROM daily_stats
+                                 WHERE user_id = :userId AND day IN (<days>)), 0)
+                """)
                 .bind("userId", userId)
+                .bindList("days", dayStrs)
                 .mapTo(Integer.class)
                 .one()
         );
     }
 
+    private int queryTotalStars(Handle handle, int userId) {
+        return handle.createQuery("SELECT total_stars FROM user_totals WHERE user_id = :userId")
+            .bind("userId", userId)
+            .mapTo(Integer.class)
+            .findFirst()
+            .orElse(0);
+    }
+
+    /**
+     * Run a write that touches daily stats, dropping the cached total if the transaction fails.
+     */
+    private <T> T withTotalsGuard(int userId, Supplier<T> write) {
+        try {
+            return write.get();
+        } catch (RuntimeException e) {
+            starTotals.remove(userId);
+            throw e;
+        }
+    }
+
+    private void withTotalsGuard(int userId, Runnable write) {
+        withTotalsGuard(userId, () -> {
+            write.run();
+            return null;
+        });
+    }
+
     // --- Problem history ---
 
     @Override
     public void recordAttempt(int userId, Operation operation, int operand1, int operand2, boolean correct, Instant timestamp) {
-        jdbi.useHandle(handle ->
+        jdbi.useHandle(handle -> insertAttempt(handle, userId, operation, operand1, operand2, correct, timestamp));
+    }
+
+    private void insertAttempt(Handle handle, int userId, Operation operation, int operand1, int operand2,
+                               boolean correct, Instant timestamp) {
+        handle.createUpdate("""
+            INSERT INTO attempts (user_id, ts, fact_key, correct)
+            VALUES (:userId, :ts, :factKey, :correct)
+            """)
+            .bind("userId", userId)
+            .bind("ts", timestamp.getEpochSecond())
+            .bind("factKey", FactKey.of(operation, operand1, operand2))
+            .bind("correct", correct ? 1 : 0)
+            .execute();
+    }
+
+    // --- Answer commit ---
+
+    @Override
+    public int commitAnswer(int userId, ProblemStats stats, DifficultyManager difficulty,
+                            DailyStats dailyStats, boolean correct, Instant timestamp) {
+        int dirty = difficulty.dirtyMask();
+        int totalStars = withTotalsGuard(userId, () -> jdbi.inTransaction(handle -> {
+            upsertProblemStats(handle, userId, stats);
+            upsertDifficulty(handle, userId, difficulty, dirty);
+            insertAttempt(handle, userId, stats.operation(), stats.operand1(), stats.operand2(),
+                    correct, timestamp);
+            return upsertDailyStats(handle, userId, dailyStats);
+        }));
+        difficulty.markSaved(dirty);
+        return totalStars;
+    }
+
+    // --- Quiz state tokens ---
+
+    @Override
+    public long advanceQuizStateSequence(int userId, long expected) {
+        if (expected >= 0) {
+            int updated = jdbi.withHandle(handle ->
+                handle.createUpdate("""
+                    UPDATE quiz_state_sequence SET sequence = sequence + 1
+                    WHERE user_id = :userId AND sequence = :expected
+                    """)
+                    .bind("userId", userId)
+                    .bind("expected", expected)
+                    .execute()
+            );
+            return updated == 1 ? expected + 1 : -1;
+        }
+        // The upsert takes the write lock first, so the read sees exactly our increment
+        return jdbi.inTransaction(handle -> {
             handle.createUpdate("""
-                INSERT INTO attempts (user_id, ts, operation, operand1, operand2, correct)
-                VALUES (:userId, :ts, :operation, :operand1, :operand2, :correct)
+                INSERT INTO quiz_state_sequence (user_id, sequence) VALUES (:userId, 1)
+                ON CONFLICT (user_id) DO UPDATE SET sequence = sequence + 1
                 """)
                 .bind("userId", userId)
-                .bind("ts", timestamp.getEpochSecond())
-                .bind("operation", operation.name())
-                .bind("operand1", operand1)
-                .bind("operand2", operand2)
-                .bind("correct", correct ? 1 : 0)
-                .execute()
-        );
+                .execute();
+            return handle.createQuery("SELECT sequence FROM quiz_state_sequence WHERE user_id = :userId")
+                .bind("userId", userId)
+                .mapTo(Long.class)
+                .one();
+        });
+    }
+
+    // --- Batched writes ---
+
+    /**
+     * Apply a batch of queued writes in one transaction (used by the write-behind layer).
+     */
+    void applyWrites(Collection<PendingWrite> writes) {
+        try {
+            applyWritesInTransaction(writes);
+        } catch (RuntimeException e) {
+            starTotals.clear();
+            throw e;
+        }
+    }
+
+    private void applyWritesInTransaction(Collection<PendingWrite> writes) {
+        jdbi.useTransaction(handle -> {
+            for (PendingWrite write : writes) {
+                switch (write) {
+                    case PendingWrite.ProblemStatsWrite w -> upsertProblemStats(handle, w.userId(), w.stats());
+                    case PendingWrite.ProgressWrite w -> upsertProgress(handle, w.userId(), w.progress());
+                    case PendingWrite.DailyStatsWrite w -> upsertDailyStats(handle, w.userId(), w.stats());
+                    case PendingWrite.AttemptWrite w -> insertAttempt(handle, w.userId(), w.operation(),
+                            w.operand1(), w.operand2(), w.correct(), w.timestamp());
+                }
+            }
+        });
+    }
+
+    // --- Schedule rebuild ---
+
+    /**
+     * Replace a user's problem stats and operation progress wholesale in one transaction
+     * (used by {@link ScheduleRebuilder}).
+     */
+    void replaceSchedule(int userId, Collection<ProblemStats> stats, DifficultyManager difficulty) {
+        int allOperations = (1 << Operation.values().length) - 1;
+        jdbi.useTransaction(handle -> {
+            handle.createUpdate("DELETE FROM problem_stats WHERE user_id = :userId")
+                .bind("userId", userId)
+                .execute();
+            for (ProblemStats s : stats) {
+                upsertProblemStats(handle, userId, s);
+            }
+            upsertDifficulty(handle, userId, difficulty, allOperations);
+        });
+        difficulty.markSaved(allOperations);
     }
 }
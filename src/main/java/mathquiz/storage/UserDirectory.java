@@ -0,0 +1,124 @@
+package mathquiz.storage;
+
+import mathquiz.domain.User;
+
+import java.time.Clock;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * In-process cache of the user list in front of a {@link Repository}.
+ *
+ * <p>Holds an id lookup map and the name-sorted list for the player page, both reloaded
+ * lazily after {@link #create(String)}. Ids that turn out not to exist are remembered, so a
+ * bogus remembered-user cookie costs at most one query per expiry period.
+ *
+ * <p>When several instances share the database, users created elsewhere show up once the
+ * cached list and unknown ids expire (after 30 seconds by default).
+ */
+public class UserDirectory {
+
+    /** Bound on remembered unknown ids; the set is cleared when it fills up */
+    private static final int MAX_UNKNOWN_IDS = 1024;
+    private static final long DEFAULT_TTL_SECONDS = 30;
+
+    private final Repository repo;
+    private final Clock clock;
+    private final Duration ttl;
+    // Unknown id -> when to ask the repository again
+    private final Map<Integer, Instant> unknownIds = new ConcurrentHashMap<>();
+    private volatile Snapshot snapshot;
+
+    private record Snapshot(List<User> byName, Map<Integer, User> byId, Instant expires) {
+        static Snapshot of(List<User> users, Instant expires) {
+            Map<Integer, User> byId = new HashMap<>();
+            for (User user : users) {
+                byId.put(user.id(), user);
+            }
+            return new Snapshot(List.copyOf(users), Map.copyOf(byId), expires);
+        }
+    }
+
+    public UserDirectory(Repository repo) {
+        this(repo, Clock.systemUTC(), Duration.ofSeconds(DEFAULT_TTL_SECONDS));
+    }
+
+    /**
+     * @param ttl how long the user list and unknown ids are trusted before asking the repository again
+     */
+    UserDirectory(Repository repo, Clock clock, Duration ttl) {
+        this.repo = repo;
+        this.clock = clock;
+        this.ttl = ttl;
+    }
+
+    /**
+     * Get all users, ordered by name.
+     */
+    public List<User> all() {
+        return snapshot().byName();
+    }
+
+    /**
+     * Get user by ID.
+     */
+    public Optional<User> find(int userId) {
+        User user = snapshot().byId().get(userId);
+        if (user != null) {
+            return Optional.of(user);
+        }
+        Instant now = clock.instant();
+        Instant retryAt = unknownIds.get(userId);
+        if (retryAt != null && now.isBefore(retryAt)) {
+            return Optional.empty();
+        }
+
+        // Not in the snapshot - it may have been created by another instance sharing the database
+        Optional<User> fetched = repo.getUser(userId);
+        if (fetched.isPresent()) {
+            invalidate();
+        } else {
+            if (unknownIds.size() >= MAX_UNKNOWN_IDS) {
+                unknownIds.clear();
+            }
+            unknownIds.put(userId, now.plus(ttl));
+        }
+        return fetched;
+    }
+
+    /**
+     * Create a new user and refresh the directory.
+     */
+    public User create(String name) {
+        User user = repo.createUser(name);
+        invalidate();
+        return user;
+    }
+
+    /**
+     * Drop cached state so the next lookup reloads from the repository.
+     */
+    public synchronized void invalidate() {
+        snapshot = null;
+        unknownIds.clear();
+    }
+
+    private Snapshot snapshot() {
+        Snapshot current = snapshot;
+        if (current != null && clock.instant().isBefore(current.expires())) {
+            return current;
+        }
+        synchronized (this) {
+            Instant now = clock.instant();
+            if (snapshot == null || !now.isBefore(snapshot.expires())) {
+                snapshot = Snapshot.of(repo.getUsers(), now.plus(ttl));
+            }
+            return snapshot;
+        }
+    }
+}
@@ -0,0 +1,584 @@
+package mathquiz.storage;
+
+import mathquiz.domain.*;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.time.LocalDate;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Write-behind layer in front of {@link SqliteRepository}.
+ *
+ * <p>Mutations are put on a bounded queue and committed by a single writer thread in groups:
+ * a group is committed once the durability window has passed since its first write, or
+ * earlier when it holds {@code maxBatch} writes. Writes to the same row are merged while
+ * queued, so a burst of answers to one fact becomes a single upsert.
+ *
+ * <p>Reads see queued writes. Answers that haven't been committed yet are lost if the
+ * process dies, so at most one durability window of progress is at risk;
+ * {@link #close()} flushes everything and should run on shutdown.
+ *
+ * <p>A failed commit is retried with backoff until it succeeds; the batch stays queued and
+ * visible to reads meanwhile. Once a batch has failed three times,
+ * new writes and flushes are rejected with {@link IllegalStateException} until it goes through.
+ */
+public class WriteBehindRepository implements Repository, AutoCloseable {
+    private static final Logger log = LoggerFactory.getLogger(WriteBehindRepository.class);
+
+    private static final int MAX_COMMIT_ATTEMPTS = 3;
+    private static final long MAX_BACKOFF_MILLIS = 5000;
+
+    private final SqliteRepository delegate;
+    private final long windowNanos;
+    private final int maxBatch;
+    private final int capacity;
+
+    private final ReentrantLock lock = new ReentrantLock();
+    private final Condition notEmpty = lock.newCondition();
+    private final Condition notFull = lock.newCondition();
+    private final Condition committed = lock.newCondition();
+
+    // Guarded by lock
+    private LinkedHashMap<Object, PendingWrite> pending = new LinkedHashMap<>();
+    private Map<Object, PendingWrite> inFlight = Map.of();
+    private long firstPendingNanos;
+    private long enqueuedCount;
+    private long committedCount;
+    private int flushWaiters;
+    private boolean closed;
+    private RuntimeException commitFailure;
+    private long attemptSequence;
+
+    // Per-user totals kept current as daily stats are queued; each entry is locked on its own
+    private final ConcurrentHashMap<Integer, StarTotal> totalStars = new ConcurrentHashMap<>();
+
+    private final Thread writer;
+
+    /**
+     * @param delegate repository that performs the actual writes
+     * @param window   durability window - longest time a write may wait before commit
+     * @param maxBatch number of queued writes that triggers a commit before the window ends
+     * @param capacity maximum number of queued writes; writers block when it is reached
+     */
+    public WriteBehindRepository(SqliteRepository delegate, Duration window, int maxBatch, int capacity) {
+        if (maxBatch < 1 || capacity < maxBatch) {
+            throw new IllegalArgumentException("Require 1 <= maxBatch <= capacity");
+        }
+        this.delegate = delegate;
+        this.windowNanos = window.toNanos();
+        this.maxBatch = maxBatch;
+        this.capacity = capacity;
+        this.writer = new Thread(this::runWriter, "write-behind");
+        this.writer.setDaemon(true);
+        this.writer.start();
+    }
+
+    /**
+     * Create with default batch size and queue capacity.
+     */
+    public WriteBehindRepository(SqliteRepository delegate, Duration window) {
+        this(delegate, window, 256, 4096);
+    }
+
+    // --- User management (not queued) ---
+
+    @Override
+    public List<User> getUsers() {
+        return delegate.getUsers();
+    }
+
+    @Override
+    public User createUser(String name) {
+        return delegate.createUser(name);
+    }
+
+    @Override
+    public Optional<User> getUser(int userId) {
+        return delegate.getUser(userId);
+    }
+
+    // --- Problem stats ---
+
+    @Override
+    public Optional<ProblemStats> getProblemStats(int userId, Operation operation, int operand1, int operand2) {
+        PendingWrite queued = findQueued(new PendingWrite.StatsKey(userId, operation, operand1, operand2));
+        if (queued instanceof PendingWrite.ProblemStatsWrite w) {
+            return Optional.of(w.stats());
+        }
+        return delegate.getProblemStats(userId, operation, operand1, operand2);
+    }
+
+    @Override
+    public List<ProblemStats> getAllProblemStats(int userId) {
+        Map<PendingWrite.StatsKey, ProblemStats> merged = new LinkedHashMap<>();
+        List<ProblemStats> queued = queuedStats(userId);
+        for (ProblemStats stats : delegate.getAllProblemStats(userId)) {
+            merged.put(keyOf(userId, stats), stats);
+        }
+        for (ProblemStats stats : queued) {
+            merged.put(keyOf(userId, stats), stats);
+        }
+        return new ArrayList<>(merged.values());
+    }
+
+    @Override
+    public List<ProblemStats> getDueProblems(int userId, Instant now, int limit) {
+        List<ProblemStats> queued = queuedStats(userId);
+        if (queued.isEmpty()) {
+            return delegate.getDueProblems(userId, now, limit);
+        }
+
+        // Queued writes may move stored rows out of the due set, so fetch enough to still fill the limit
+        Map<PendingWrite.StatsKey, ProblemStats> merged = new HashMap<>();
+        for (ProblemStats stats : delegate.getDueProblems(userId, now, limit + queued.size())) {
+            merged.put(keyOf(userId, stats), stats);
+        }
+        for (ProblemStats stats : queued) {
+            merged.put(keyOf(userId, stats), stats);
+        }
+
+        return merged.values().stream()
+            .filter(stats -> stats.isDue(now))
+            .sorted(Comparator.comparing(ProblemStats::nextReview, Comparator.nullsFirst(Comparator.naturalOrder())))
+            .limit(limit)
+            .toList();
+    }
+
+    @Override
+    public void saveProblemStats(int userId, ProblemStats stats) {
+        enqueue(List.of(new PendingWrite.ProblemStatsWrite(userId, stats)));
+    }
+
+    // --- Difficulty progression ---
+
+    @Override
+    public DifficultyManager getDifficulty(int userId) {
+        Map<Operation, OperationProgress> queued = new EnumMap<>(Operation.class);
+        for (Operation op : Operation.values()) {
+            if (findQueued(new PendingWrite.ProgressKey(userId, op)) instanceof PendingWrite.ProgressWrite w) {
+                queued.put(op, PendingWrite.copyOf(w.progress()));
+            }
+        }
+
+        DifficultyManager stored = delegate.getDifficulty(userId);
+        if (queued.isEmpty()) {
+            return stored;
+        }
+
+        Map<Operation, OperationProgress> progress = new EnumMap<>(Operation.class);
+        for (Operation op : Operation.values()) {
+            progress.put(op, queued.getOrDefault(op, stored.getProgress(op)));
+        }
+        return new DifficultyManager(progress);
+    }
+
+    @Override
+    public void saveDifficulty(int userId, DifficultyManager difficulty) {
+        int dirty = difficulty.dirtyMask();
+        if (dirty == 0) {
+            return;
+        }
+        enqueue(progressWrites(userId, difficulty, dirty));
+        // Once queued they count as written
+        difficulty.markSaved(dirty);
+    }
+
+    // --- Daily stats ---
+
+    @Override
+    public Optional<DailyStats> getDailyStats(int userId, LocalDate day) {
+        if (findQueued(new PendingWrite.DayKey(userId, day)) instanceof PendingWrite.DailyStatsWrite w) {
+            return Optional.of(PendingWrite.copyOf(w.stats()));
+        }
+        return delegate.getDailyStats(userId, day);
+    }
+
+    @Override
+    public void saveDailyStats(int userId, DailyStats stats) {
+        enqueueDailyStats(userId, stats, List.of(new PendingWrite.DailyStatsWrite(userId, stats)));
+    }
+
+    @Override
+    public int getTotalStars(int userId) {
+        StarTotal total = starTotal(userId);
+        synchronized (total) {
+            return loadTotal(userId, total);
+        }
+    }
+
+    private StarTotal starTotal(int userId) {
+        return totalStars.computeIfAbsent(userId, id -> new StarTotal());
+    }
+
+    /**
+     * Queue writes that include a user's daily stats and keep that user's total in step.
+     * Only the user's own entry is locked, so a full queue or a slow read stalls nobody else.
+     */
+    private void enqueueDailyStats(int userId, DailyStats stats, List<PendingWrite> writes) {
+        StarTotal total = starTotal(userId);
+        synchronized (total) {
+            int delta = 0;
+            if (total.value != null) {
+                int previous = getDailyStats(userId, stats.date()).map(DailyStats::starsEarned).orElse(0);
+                delta = stats.starsEarned() - previous;
+            }
+            enqueue(writes);
+            if (total.value != null) {
+                total.value += delta;
+            }
+        }
+    }
+
+    /**
+     * Caller holds the lock on total. The first read takes the stored total with the user's queued
+     * days swapped in, so it needn't wait for the queue to commit. Queued days are read in one
+     * statement and replace whatever is stored for them, so it doesn't matter whether they commit
+     * meanwhile; new days can't be queued for the user while we hold its lock.
+     */
+    private int loadTotal(int userId, StarTotal total) {
+        if (total.value == null) {
+            Map<LocalDate, Integer> queued = queuedStars(userId);
+            int sum = delegate.getTotalStarsExcluding(userId, queued.keySet());
+            for (int stars : queued.values()) {
+                sum += stars;
+            }
+            total.value = sum;
+        }
+        return total.value;
+    }
+
+    /**
+     * A user's star total, or null until first read.
+     */
+    private static final class StarTotal {
+        Integer value;
+    }
+
+    // --- Problem history ---
+
+    @Override
+    public void recordAttempt(int userId, Operation operation, int operand1, int operand2, boolean correct, Instant timestamp) {
+        enqueue(List.of(attemptWrite(userId, operation, operand1, operand2, correct, timestamp)));
+    }
+
+    // --- Answer commit ---
+
+    @Override
+    public int commitAnswer(int userId, ProblemStats stats, DifficultyManager difficulty,
+                            DailyStats dailyStats, boolean correct, Instant timestamp) {
+        int dirty = difficulty.dirtyMask();
+        List<PendingWrite> writes = new ArrayList<>(progressWrites(userId, difficulty, dirty));
+        writes.add(new PendingWrite.ProblemStatsWrite(userId, stats));
+        writes.add(new PendingWrite.DailyStatsWrite(userId, dailyStats));
+        writes.add(attemptWrite(userId, stats.operation(), stats.operand1(), stats.operand2(), correct, timestamp));
+
+        StarTotal total = starTotal(userId);
+        synchronized (total) {
+            // Enqueued together, so they are committed in the same group
+            enqueueDailyStats(userId, dailyStats, writes);
+            difficulty.markSaved(dirty);
+            return loadTotal(userId, total);
+        }
+    }
+
+    // --- Quiz state tokens (not queued) ---
+
+    @Override
+    public long advanceQuizStateSequence(int userId, long expected) {
+        return delegate.advanceQuizStateSequence(userId, expected);
+    }
+
+    // --- Queue management ---
+
+    /**
+     * Number of writes currently queued and not yet committed.
+     */
+    public int pendingWrites() {
+        lock.lock();
+        try {
+            return pending.size() + inFlight.size();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Block until every write queued before this call has been committed.
+     * @throws IllegalStateException if commits keep failing
+     */
+    public void flush() {
+        lock.lock();
+        try {
+            long target = enqueuedCount;
+            flushWaiters++;
+            notEmpty.signal();
+            try {
+                while (committedCount < target && commitFailure == null) {
+                    committed.awaitUninterruptibly();
+                }
+                if (committedCount < target) {
+                    checkCommitting();
+                }
+            } finally {
+                flushWaiters--;
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Flush all queued writes and stop the writer thread.
+     */
+    @Override
+    public void close() {
+        lock.lock();
+        try {
+            if (closed) {
+                return;
+            }
+            closed = true;
+            notEmpty.signal();
+            notFull.signalAll();
+        } finally {
+            lock.unlock();
+        }
+
+        try {
+            writer.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        log.info("Write-behind queue flushed and closed");
+    }
+
+    /**
+     * Snapshot the operations in the dirty mask. The caller marks them saved once they are queued.
+     */
+    private List<PendingWrite> progressWrites(int userId, DifficultyManager difficulty, int dirty) {
+        List<PendingWrite> writes = new ArrayList<>();
+        for (Operation op : Operation.values()) {
+            if ((dirty & (1 << op.ordinal())) != 0) {
+                writes.add(new PendingWrite.ProgressWrite(userId, difficulty.getProgress(op)));
+            }
+        }
+        return writes;
+    }
+
+    private PendingWrite attemptWrite(int userId, Operation operation, int operand1, int operand2,
+                                      boolean correct, Instant timestamp) {
+        lock.lock();
+        try {
+            return new PendingWrite.AttemptWrite(attemptSequence++, userId, operation, operand1, operand2,
+                    correct, timestamp);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private void enqueue(List<PendingWrite> writes) {
+        lock.lock();
+        try {
+            while (!closed && pending.size() >= capacity) {
+                notFull.awaitUninterruptibly();
+            }
+            if (closed) {
+                throw new IllegalStateException("Write-behind queue is closed");
+            }
+            checkCommitting();
+
+            boolean wasEmpty = pending.isEmpty();
+            for (PendingWrite write : writes) {
+                pending.put(write.key(), write);
+            }
+            enqueuedCount++;
+
+            if (wasEmpty) {
+                firstPendingNanos = System.nanoTime();
+                notEmpty.signal();
+            } else if (pending.size() >= maxBatch) {
+                notEmpty.signal();
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    // Caller holds lock
+    private void checkCommitting() {
+        if (commitFailure != null) {
+            throw new IllegalStateException("Write-behind commits are failing", commitFailure);
+        }
+    }
+
+    private PendingWrite findQueued(Object key) {
+        lock.lock();
+        try {
+            PendingWrite write = pending.get(key);
+            return write != null ? write : inFlight.get(key);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private List<ProblemStats> queuedStats(int userId) {
+        lock.lock();
+        try {
+            // Pending writes are newer than in-flight ones, so they go last and win when merged
+            List<ProblemStats> result = new ArrayList<>();
+            for (PendingWrite write : inFlight.values()) {
+                if (write instanceof PendingWrite.ProblemStatsWrite w && w.userId() == userId) {
+                    result.add(w.stats());
+                }
+            }
+            for (PendingWrite write : pending.values()) {
+                if (write instanceof PendingWrite.ProblemStatsWrite w && w.userId() == userId) {
+                    result.add(w.stats());
+                }
+            }
+            return result;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Stars of the user's queued days, by day.
+     */
+    private Map<LocalDate, Integer> queuedStars(int userId) {
+        lock.lock();
+        try {
+            // Pending writes are newer than in-flight ones, so they go last and win
+            Map<LocalDate, Integer> result = new HashMap<>();
+            for (Map<Object, PendingWrite> writes : List.of(inFlight, pending)) {
+                for (PendingWrite write : writes.values()) {
+                    if (write instanceof PendingWrite.DailyStatsWrite w && w.userId() == userId) {
+                        result.put(w.stats().date(), w.stats().starsEarned());
+                    }
+                }
+            }
+            return result;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private static PendingWrite.StatsKey keyOf(int userId, ProblemStats stats) {
+        return new PendingWrite.StatsKey(userId, stats.operation(), stats.operand1(), stats.operand2());
+    }
+
+    // --- Writer thread ---
+
+    private void runWriter() {
+        while (true) {
+            long batchEnd;
+            lock.lock();
+            try {
+                while (pending.isEmpty() && !closed) {
+                    notEmpty.awaitUninterruptibly();
+                }
+                if (pending.isEmpty()) {
+                    return; // closed and drained
+                }
+
+                // Group commit: wait out the window unless the batch is full or someone is waiting
+                long remaining = firstPendingNanos + windowNanos - System.nanoTime();
+                while (remaining > 0 && pending.size() < maxBatch && flushWaiters == 0 && !closed) {
+                    try {
+                        remaining = notEmpty.awaitNanos(remaining);
+                    } catch (InterruptedException e) {
+                        remaining = 0;
+                    }
+                }
+
+                inFlight = pending;
+                pending = new LinkedHashMap<>();
+                batchEnd = enqueuedCount;
+                notFull.signalAll();
+            } finally {
+                lock.unlock();
+            }
+
+            commitInFlight();
+
+            lock.lock();
+            try {
+                inFlight = Map.of();
+                committedCount = batchEnd;
+                committed.signalAll();
+            } finally {
+                lock.unlock();
+            }
+        }
+    }
+
+    private void commitInFlight() {
+        long backoffMillis = 100;
+        for (int attempt = 1; ; attempt++) {
+            try {
+                delegate.applyWrites(inFlight.values());
+                log.debug("Write-behind committed {} writes", inFlight.size());
+                setCommitFailure(null);
+                return;
+            } catch (RuntimeException e) {
+                if (attempt < MAX_COMMIT_ATTEMPTS) {
+                    log.warn("Write-behind commit failed (attempt {}): {}", attempt, e.getMessage());
+                } else if (isClosed()) {
+                    // Nothing left to retry for on shutdown; reload totals rather than report lost stars
+                    log.error("Giving up on {} queued writes at shutdown after {} failed commits",
+                            inFlight.size(), attempt, e);
+                    evictTotals(inFlight.values());
+                    return;
+                } else {
+                    if (attempt == MAX_COMMIT_ATTEMPTS) {
+                        log.error("Write-behind commit failed {} times, rejecting writes until it succeeds",
+                                attempt, e);
+                    }
+                    setCommitFailure(e);
+                }
+                try {
+                    TimeUnit.MILLISECONDS.sleep(backoffMillis);
+                } catch (InterruptedException ie) {
+                    // Shutdown is signalled through close(); keep the batch and retry
+                }
+                backoffMillis = Math.min(backoffMillis * 2, MAX_BACKOFF_MILLIS);
+            }
+        }
+    }
+
+    private void setCommitFailure(RuntimeException failure) {
+        lock.lock();
+        try {
+            if (commitFailure != null || failure != null) {
+                commitFailure = failure;
+                committed.signalAll(); // Wake flushes so they can fail fast
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private boolean isClosed() {
+        lock.lock();
+        try {
+            return closed;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private void evictTotals(Collection<PendingWrite> writes) {
+        for (PendingWrite write : writes) {
+            if (write instanceof PendingWrite.DailyStatsWrite w) {
+                totalStars.remove(w.userId());
+            }
+        }
+    }
+}
@@ -0,0 +1,246 @@
+package mathquiz.tts;
+
+import java.nio.ByteBuffer;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Optional;
+
+/**
+ * Byte-budgeted in-memory tier for hot audio, kept off-heap in direct buffers.
+ *
+ * <p>Eviction is W-TinyLFU: new entries land in a small LRU window (1% of the budget); entries
+ * pushed out of the window only get into the main area if they have been asked for more often
+ * than the entry they would displace, as estimated by a count-min sketch of recent requests.
+ * The main area is a segmented LRU: entries hit again while on probation move to the protected
+ * segment (80% of the main area). A burst of one-off requests therefore can't flush the
+ * feedback phrases and low-range problems that make up most traffic.
+ *
+ * <p>Thread-safe; all operations take the cache's lock, none of them touch the filesystem.
+ * Buffers are freed by the garbage collector once evicted and no longer being served.
+ */
+public final class AudioMemoryCache {
+
+    private static final double WINDOW_SHARE = 0.01;
+    private static final double PROTECTED_SHARE = 0.8;
+    /** Rough WAV size, used only to size the frequency sketch */
+    private static final int TYPICAL_ENTRY_BYTES = 64 * 1024;
+
+    /**
+     * @param hits requests served from memory
+     * @param misses requests that had to go to disk
+     * @param residentBytes audio bytes held
+     * @param entries audio clips held
+     */
+    public record Stats(long hits, long misses, long residentBytes, int entries) {
+        public double hitRatio() {
+            long requests = hits + misses;
+            return requests == 0 ? 0 : (double) hits / requests;
+        }
+    }
+
+    private final long maxBytes;
+    private final long windowMaxBytes;
+    private final long protectedMaxBytes;
+    private final FrequencySketch sketch;
+
+    // Access-ordered, least recently used first
+    private final LinkedHashMap<String, ByteBuffer> window = new LinkedHashMap<>(16, 0.75f, true);
+    private final LinkedHashMap<String, ByteBuffer> probation = new LinkedHashMap<>(16, 0.75f, true);
+    private final LinkedHashMap<String, ByteBuffer> protectedSegment = new LinkedHashMap<>(16, 0.75f, true);
+    private long windowBytes;
+    private long probationBytes;
+    private long protectedBytes;
+    private long hits;
+    private long misses;
+
+    public AudioMemoryCache(long maxBytes) {
+        if (maxBytes <= 0) {
+            throw new IllegalArgumentException("Memory budget must be positive: " + maxBytes);
+        }
+        this.maxBytes = maxBytes;
+        this.windowMaxBytes = (long) (maxBytes * WINDOW_SHARE);
+        this.protectedMaxBytes = (long) ((maxBytes - windowMaxBytes) * PROTECTED_SHARE);
+        this.sketch = new FrequencySketch((int) Math.min(1 << 20, Math.max(64, maxBytes / TYPICAL_ENTRY_BYTES)));
+    }
+
+    /**
+     * Get the audio for a hash, counting the request towards its frequency.
+     * @return a read-only view of the audio, positioned at its start
+     */
+    public synchronized Optional<ByteBuffer> get(String hash) {
+        sketch.increment(hash);
+
+        ByteBuffer audio = window.get(hash);
+        if (audio == null) {
+            audio = protectedSegment.get(hash);
+        }
+        if (audio == null) {
+            audio = probation.remove(hash);
+            if (audio != null) {
+                probationBytes -= audio.capacity();
+                promote(hash, audio);
+            }
+        }
+
+        if (audio == null) {
+            misses++;
+            return Optional.empty();
+        }
+        hits++;
+        return Optional.of(audio.asReadOnlyBuffer());
+    }
+
+    /**
+     * Offer audio just read from disk; its remaining bytes are copied off-heap, leaving its position
+     * unchanged. Clips larger than the main area are not kept, and the clip may be dropped at once
+     * if it is requested less than what it would displace.
+     */
+    public synchronized void put(String hash, ByteBuffer audio) {
+        if (audio.remaining() > maxBytes - windowMaxBytes || contains(hash)) {
+            return;
+        }
+        ByteBuffer buffer = ByteBuffer.allocateDirect(audio.remaining()).put(audio.duplicate()).flip();
+        window.put(hash, buffer);
+        windowBytes += buffer.capacity();
+
+        while (windowBytes > windowMaxBytes && !window.isEmpty()) {
+            Map.Entry<String, ByteBuffer> candidate = removeEldest(window);
+            windowBytes -= candidate.getValue().capacity();
+            admit(candidate.getKey(), candidate.getValue());
+        }
+    }
+
+    public synchronized Stats stats() {
+        return new Stats(hits, misses, windowBytes + probationBytes + protectedBytes,
+                window.size() + probation.size() + protectedSegment.size());
+    }
+
+    synchronized boolean contains(String hash) {
+        return window.containsKey(hash) || probation.containsKey(hash) || protectedSegment.containsKey(hash);
+    }
+
+    /**
+     * Move a window leaver into probation if there is room, or if it is requested more often than
+     * each victim it would displace; otherwise drop it. Victims are only evicted once the candidate
+     * is known to be admitted.
+     */
+    private void admit(String hash, ByteBuffer audio) {
+        long excess = probationBytes + protectedBytes + audio.capacity() - (maxBytes - windowMaxBytes);
+        int candidateFrequency = sketch.frequency(hash);
+        int probationVictims = 0;
+        int protectedVictims = 0;
+        for (Map.Entry<String, ByteBuffer> victim : probation.entrySet()) {
+            if (excess <= 0) {
+                break;
+            }
+            if (sketch.frequency(victim.getKey()) >= candidateFrequency) {
+                return;
+            }
+            excess -= victim.getValue().capacity();
+            probationVictims++;
+        }
+        for (Map.Entry<String, ByteBuffer> victim : protectedSegment.entrySet()) {
+            if (excess <= 0) {
+                break;
+            }
+            if (sketch.frequency(victim.getKey()) >= candidateFrequency) {
+                return;
+            }
+            excess -= victim.getValue().capacity();
+            protectedVictims++;
+        }
+
+        for (int i = 0; i < probationVictims; i++) {
+            probationBytes -= removeEldest(probation).getValue().capacity();
+        }
+        for (int i = 0; i < protectedVictims; i++) {
+            protectedBytes -= removeEldest(protectedSegment).getValue().capacity();
+        }
+        probation.put(hash, audio);
+        probationBytes += audio.capacity();
+    }
+
+    /**
+     * Move a probation hit to protected, demoting protected's least recent entries to probation
+     * to stay within its share.
+     */
+    private void promote(String hash, ByteBuffer audio) {
+        protectedSegment.put(hash, audio);
+        protectedBytes += audio.capacity();
+        while (protectedBytes > protectedMaxBytes && protectedSegment.size() > 1) {
+            Map.Entry<String, ByteBuffer> demoted = removeEldest(protectedSegment);
+            protectedBytes -= demoted.getValue().capacity();
+            probation.put(demoted.getKey(), demoted.getValue());
+            probationBytes += demoted.getValue().capacity();
+        }
+    }
+
+    private static Map.Entry<String, ByteBuffer> removeEldest(LinkedHashMap<String, ByteBuffer> segment) {
+        Iterator<Map.Entry<String, ByteBuffer>> entries = segment.entrySet().iterator();
+        Map.Entry<String, ByteBuffer> eldest = entries.next();
+        entries.remove();
+        return Map.entry(eldest.getKey(), eldest.getValue());
+    }
+
+    /**
+     * Count-min sketch of request frequencies with 4-bit saturating counters in 4 rows.
+     * All counters are halved once the sample reaches ten times the expected number of
+     * entries, so the estimates follow what is popular now rather than all time.
+     */
+    static final class FrequencySketch {
+        private static final int ROWS = 4;
+        private static final int MAX_COUNT = 15;
+        private static final int[] SEEDS = {0x9E3779B9, 0x85EBCA6B, 0xC2B2AE35, 0x27D4EB2F};
+
+        private final byte[][] counters;
+        private final int mask;
+        private final int sampleSize;
+        private int additions;
+
+        FrequencySketch(int expectedEntries) {
+            int width = Integer.highestOneBit(Math.max(16, expectedEntries) * 2 - 1);
+            this.counters = new byte[ROWS][width];
+            this.mask = width - 1;
+            this.sampleSize = 10 * expectedEntries;
+        }
+
+        void increment(String key) {
+            int hash = key.hashCode();
+            boolean added = false;
+            for (int row = 0; row < ROWS; row++) {
+                int index = index(hash, row);
+                if (counters[row][index] < MAX_COUNT) {
+                    counters[row][index]++;
+                    added = true;
+                }
+            }
+            if (added && ++additions >= sampleSize) {
+                age();
+            }
+        }
+
+        int frequency(String key) {
+            int hash = key.hashCode();
+            int min = MAX_COUNT;
+            for (int row = 0; row < ROWS; row++) {
+                min = Math.min(min, counters[row][index(hash, row)]);
+            }
+            return min;
+        }
+
+        private int index(int hash, int row) {
+            int h = hash * SEEDS[row];
+            return (h ^ (h >>> 16)) & mask;
+        }
+
+        private void age() {
+            for (byte[] row : counters) {
+                for (int i = 0; i < row.length; i++) {
+                    row[i] >>= 1;
+                }
+            }
+            additions /= 2;
+        }
+    }
+}
@@ -4,26 +4,40 @@ import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import java.io.IOException;
-import java.io.InputStream;
 import java.net.URI;
 import java.net.http.HttpClient;
 import java.net.http.HttpRequest;
 import java.net.http.HttpResponse;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
 import java.nio.charset.StandardCharsets;
 import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
 import java.nio.file.Path;
 import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
 import java.security.MessageDigest;
 import java.security.NoSuchAlgorithmException;
 import java.time.Duration;
 import java.util.HexFormat;
+import java.util.Map;
 import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Function;
 
 /**
  * Content-addressed TTS audio cache using Neurokõne API.
  * 
  * <p>Audio files are stored as {hash}.wav where hash = sha256(speaker|text).
  * This allows serving audio without database lookups.
+ *
+ * <p>Since the hash doesn't depend on the audio, pages can reference audio before it exists:
+ * {@link #requestAudio} returns the hash at once and synthesizes in the background, and
+ * {@link #whenAvailable} lets the audio endpoint wait for that synthesis to finish.
  */
 public class TtsCacheService {
     private static final Logger log = LoggerFactory.getLogger(TtsCacheService.class);
@@ -35,8 +49,25 @@ public class TtsCacheService {
     private final Path cacheDir;
     private final String speaker;
     private final HttpClient httpClient;
+    private final Function<String, Optional<byte[]>> fetcher;
+    /** Hot audio tier in front of the disk cache, or null if disabled */
+    private final AudioMemoryCache memory;
     private final boolean enabled;
     
+    /** Background syntheses by hash; an entry is removed once its file is written or it failed */
+    private final Map<String, CompletableFuture<Boolean>> inFlight = new ConcurrentHashMap<>();
+    private final Executor executor = Executors.newThreadPerTaskExecutor(
+            Thread.ofVirtual().name("tts-", 0).factory());
+    private final AtomicLong fetches = new AtomicLong();
+    private final AtomicLong coalesced = new AtomicLong();
+    
+    /**
+     * Synthesis counters since startup.
+     * @param fetches upstream fetches started
+     * @param coalesced cache misses that joined a fetch already in flight instead of starting one
+     */
+    public record Stats(long fetches, long coalesced) {}
+    
     /**
      * Create TTS cache service.
      * 
@@ -44,11 +75,34 @@ public class TtsCacheService {
      * @param speaker Neurokõne speaker name (e.g., "liivika", "mari", "peeter")
      */
     public TtsCacheService(Path cacheDir, String speaker) {
+        this(cacheDir, speaker, 0);
+    }
+    
+    /**
+     * Create TTS cache service that also keeps hot audio in memory.
+     * 
+     * @param memoryBytes budget for audio held in memory, 0 to always read from disk
+     */
+    public TtsCacheService(Path cacheDir, String speaker, long memoryBytes) {
+        this(cacheDir, speaker, memoryBytes, null);
+    }
+    
+    /**
+     * Create TTS cache service that gets audio from the given fetcher instead of the API (for testing).
+     * The fetcher returns the audio for a text, or empty on failure.
+     */
+    TtsCacheService(Path cacheDir, String speaker, Function<String, Optional<byte[]>> fetcher) {
+        this(cacheDir, speaker, 0, fetcher);
+    }
+    
+    TtsCacheService(Path cacheDir, String speaker, long memoryBytes, Function<String, Optional<byte[]>> fetcher) {
         this.cacheDir = cacheDir;
         this.speaker = speaker != null ? speaker : DEFAULT_SPEAKER;
-        this.httpClient = HttpClient.newBuilder()
-                .connectTimeout(TIMEOUT)
-                .build();
+        this.httpClient = fetcher == null
+                ? HttpClient.newBuilder().connectTimeout(TIMEOUT).build()
+                : null;
+        this.fetcher = fetcher != null ? fetcher : this::fetchFromApi;
+        this.memory = memoryBytes > 0 ? new AudioMemoryCache(memoryBytes) : null;
         this.enabled = true;
         
         // Ensure cache directory exists
@@ -77,6 +131,8 @@ public class TtsCacheService {
         this.cacheDir = cacheDir;
         this.speaker = speaker;
         this.httpClient = null;
+        this.fetcher = text -> Optional.empty();
+        this.memory = null;
         this.enabled = enabled;
     }
     
@@ -131,28 +187,121 @@ public class TtsCacheService {
             return Optional.of(hash);
         }
         
-        // Fetch from API
-        log.info("TTS cache miss, fetching: {} -> {}", text.substring(0, Math.min(30, text.length())), hash);
+        // Fetch from API, or wait for the fetch another request already started
+        return synthesis(text, hash).join() ? Optional.of(hash) : Optional.empty();
+    }
+    
+    /**
+     * Get the audio hash for text without waiting for synthesis.
+     * If the audio isn't cached, it is synthesized in the background (once per hash, however
+     * often it is requested meanwhile); use {@link #whenAvailable} to wait for it.
+     * 
+     * @return hash the audio will be served under, empty if TTS is disabled
+     */
+    public Optional<String> requestAudio(String text) {
+        if (!enabled) {
+            return Optional.empty();
+        }
+        
+        String hash = computeHash(text);
+        if (Files.exists(getCachePath(hash))) {
+            log.debug("TTS cache hit for hash: {}", hash);
+            return Optional.of(hash);
+        }
+        
+        synthesis(text, hash);
+        return Optional.of(hash);
+    }
+    
+    /**
+     * Completes with true once audio for the hash is cached: at once if it already is, after its
+     * background synthesis if one is running. Completes with false if there is no audio and none
+     * on the way, or synthesis failed. Each call returns a new future, safe to cancel or time out.
+     */
+    public CompletableFuture<Boolean> whenAvailable(String hash) {
+        if (!enabled) {
+            return CompletableFuture.completedFuture(false);
+        }
+        CompletableFuture<Boolean> pending = inFlight.get(hash);
+        if (pending != null) {
+            return pending.thenApply(ok -> Files.exists(getCachePath(hash)));
+        }
+        // Synthesis writes the file before leaving the in-flight map, so this can't miss it
+        return CompletableFuture.completedFuture(Files.exists(getCachePath(hash)));
+    }
+    
+    /**
+     * Synthesis of the hash's audio: the one in flight, or a new one in the background.
+     * Concurrent misses for the same text share one upstream call and one disk write.
+     */
+    private CompletableFuture<Boolean> synthesis(String text, String hash) {
+        CompletableFuture<Boolean> created = new CompletableFuture<>();
+        CompletableFuture<Boolean> existing = inFlight.putIfAbsent(hash, created);
+        if (existing != null) {
+            coalesced.incrementAndGet();
+            log.debug("TTS fetch already in flight for hash: {}", hash);
+            return existing;
+        }
+        if (Files.exists(getCachePath(hash))) {
+            // Another fetch finished between the caller's cache check and here
+            inFlight.remove(hash, created);
+            created.complete(true);
+            return created;
+        }
         
-        Optional<byte[]> audioData = fetchFromApi(text);
+        fetches.incrementAndGet();
+        log.info("TTS cache miss, fetching: {} -> {}", text.substring(0, Math.min(30, text.length())), hash);
+        executor.execute(() -> {
+            try {
+                created.complete(fetchAndStore(text, hash));
+            } catch (RuntimeException e) {
+                log.warn("TTS synthesis failed for {}: {}", hash, e.getMessage());
+                created.complete(false);
+            } finally {
+                inFlight.remove(hash, created);
+            }
+        });
+        return created;
+    }
+    
+    /**
+     * Synthesis counters since startup.
+     */
+    public Stats stats() {
+        return new Stats(fetches.get(), coalesced.get());
+    }
+    
+    /**
+     * Hit ratio and size of the in-memory audio tier, if there is one.
+     */
+    public Optional<AudioMemoryCache.Stats> memoryStats() {
+        return Optional.ofNullable(memory).map(AudioMemoryCache::stats);
+    }
+    
+    /**
+     * Fetch audio and write it atomically to the cache.
+     * @return true if the audio is now cached
+     */
+    private boolean fetchAndStore(String text, String hash) {
+        Optional<byte[]> audioData = fetcher.apply(text);
         if (audioData.isEmpty()) {
-            return Optional.empty();
+            return false;
         }
         
-        // Write atomically to cache
+        Path cachePath = getCachePath(hash);
         try {
             Path tempFile = Files.createTempFile(cacheDir, "tts-", ".wav.tmp");
             try {
                 Files.write(tempFile, audioData.get());
                 Files.move(tempFile, cachePath, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
                 log.debug("TTS cached: {}", hash);
-                return Optional.of(hash);
+                return true;
             } finally {
                 Files.deleteIfExists(tempFile);
             }
         } catch (IOException e) {
             log.error("Failed to cache TTS audio: {}", e.getMessage());
-            return Optional.empty();
+            return false;
         }
     }
     
@@ -202,25 +351,35 @@ public class TtsCacheService {
     }
     
     /**
-     * Stream a cached audio file.
+     * Load cached audio, from memory if it is hot there, otherwise memory-mapped from disk
+     * (offering it to the memory tier on the way). Either way the bytes aren't copied to the heap.
      * 
-     * @return input stream if file exists, empty otherwise
+     * @return read-only audio, positioned at its start; empty if it isn't cached
      */
-    public Optional<InputStream> streamAudio(String hash) {
+    public Optional<ByteBuffer> loadAudio(String hash) {
         if (!enabled) {
             return Optional.empty();
         }
-        
-        Path cachePath = getCachePath(hash);
-        if (!Files.exists(cachePath)) {
-            return Optional.empty();
+        if (memory != null) {
+            Optional<ByteBuffer> hot = memory.get(hash);
+            if (hot.isPresent()) {
+                return hot;
+            }
         }
         
-        try {
-            return Optional.of(Files.newInputStream(cachePath));
+        ByteBuffer audio;
+        // The mapping stays valid after the channel is closed, and cache files are never rewritten in place
+        try (FileChannel channel = FileChannel.open(getCachePath(hash), StandardOpenOption.READ)) {
+            audio = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+        } catch (NoSuchFileException e) {
+            return Optional.empty();
         } catch (IOException e) {
-            log.warn("Failed to open cached audio: {}", e.getMessage());
+            log.warn("Failed to read cached audio: {}", e.getMessage());
             return Optional.empty();
         }
+        if (memory != null) {
+            memory.put(hash, audio);
+        }
+        return Optional.of(audio);
     }
 }
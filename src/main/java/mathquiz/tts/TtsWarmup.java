@@ -0,0 +1,213 @@
+package mathquiz.tts;
+
+import mathquiz.domain.DifficultyManager;
+import mathquiz.domain.FactKey;
+import mathquiz.domain.Operation;
+import mathquiz.domain.OperationProgress;
+import mathquiz.domain.ProblemSpace;
+import mathquiz.domain.Progression;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.ArrayList;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Synthesizes every utterance the quiz can speak ahead of time, so learners rarely wait for TTS.
+ *
+ * <p>The catalog is every problem of every operation up to its maximum range, each with its
+ * question and both feedback phrases, ordered along the unlock path (see {@link #catalog()}):
+ * the order learners meet them in. Entries already cached are skipped, so a warm-up started
+ * after a restart picks up where the last one stopped. At most {@code concurrency} fetches run
+ * at once and they start no faster than {@code perSecond}. Fetches go through
+ * {@link TtsCacheService#getAudioHash}, so they coalesce with live traffic for the same text.
+ */
+public class TtsWarmup implements AutoCloseable {
+    private static final Logger log = LoggerFactory.getLogger(TtsWarmup.class);
+
+    public enum State { PENDING, RUNNING, DONE, STOPPED }
+
+    /**
+     * Warm-up progress over the catalog.
+     * @param alreadyCached entries found in the cache, skipped
+     * @param synthesized entries fetched and cached by this warm-up
+     * @param failed entries whose fetch failed; retried by the next warm-up
+     */
+    public record Progress(State state, int total, int alreadyCached, int synthesized, int failed) {
+        public int remaining() {
+            return total - alreadyCached - synthesized - failed;
+        }
+    }
+
+    private final TtsCacheService tts;
+    private final List<String> catalog;
+    private final int concurrency;
+    private final long intervalNanos;
+
+    private final AtomicInteger alreadyCached = new AtomicInteger();
+    private final AtomicInteger synthesized = new AtomicInteger();
+    private final AtomicInteger failed = new AtomicInteger();
+    private volatile State state = State.PENDING;
+    private volatile Thread runner;
+
+    public TtsWarmup(TtsCacheService tts, int concurrency, double perSecond) {
+        this(tts, catalog(), concurrency, perSecond);
+    }
+
+    TtsWarmup(TtsCacheService tts, List<String> catalog, int concurrency, double perSecond) {
+        if (concurrency < 1 || perSecond <= 0) {
+            throw new IllegalArgumentException("Concurrency and rate must be positive");
+        }
+        this.tts = tts;
+        this.catalog = List.copyOf(catalog);
+        this.concurrency = concurrency;
+        this.intervalNanos = (long) (TimeUnit.SECONDS.toNanos(1) / perSecond);
+    }
+
+    /**
+     * Every utterance the quiz can speak, in the order learners reach them, without duplicates.
+     *
+     * <p>Follows the progression path of a {@link DifficultyManager}: unlocked operations take
+     * turns expanding their range one step at a time, and each step adds the problems new at
+     * that range. Operations that only ever unlock by hand come last, in declaration order.
+     */
+    static List<String> catalog() {
+        DifficultyManager path = new DifficultyManager();
+        Set<Integer> keys = new LinkedHashSet<>();
+        for (Operation op : path.getUnlockedOperations()) {
+            addProblems(keys, path, op);
+        }
+
+        while (true) {
+            boolean expanded = false;
+            for (Operation op : path.getUnlockedOperations()) {
+                OperationProgress progress = path.getProgress(op);
+                if (progress.maxNumber() >= progress.getMaxRange()) {
+                    continue;
+                }
+                Progression progression = Progression.NONE;
+                while (!progression.rangeExpanded()) {
+                    progression = path.recordAttempt(op, true);
+                }
+                addProblems(keys, path, op);
+                if (progression.newlyUnlocked() != null) {
+                    addProblems(keys, path, progression.newlyUnlocked());
+                }
+                expanded = true;
+            }
+            if (!expanded) {
+                Operation locked = firstLocked(path);
+                if (locked == null) {
+                    break;
+                }
+                path.unlockOperation(locked);
+                addProblems(keys, path, locked);
+            }
+        }
+
+        Set<String> utterances = new LinkedHashSet<>();
+        for (int key : keys) {
+            Operation op = FactKey.operation(key);
+            int a = FactKey.operand1(key);
+            int b = FactKey.operand2(key);
+            int answer = FactKey.answer(key);
+            utterances.add(EstonianSpeechFormatter.formatProblem(a, op, b));
+            utterances.add(EstonianSpeechFormatter.formatCorrect(a, op, b, answer));
+            utterances.add(EstonianSpeechFormatter.formatIncorrect(a, op, b, answer));
+        }
+        return new ArrayList<>(utterances);
+    }
+
+    private static void addProblems(Set<Integer> keys, DifficultyManager path, Operation op) {
+        ProblemSpace space = ProblemSpace.of(op, path.getRange(op)[1]);
+        for (int i = 0; i < space.size(); i++) {
+            keys.add(space.keyAt(i));
+        }
+    }
+
+    private static Operation firstLocked(DifficultyManager path) {
+        for (Operation op : Operation.values()) {
+            if (!path.isUnlocked(op)) {
+                return op;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Start warming up in the background.
+     */
+    public void start() {
+        runner = Thread.ofVirtual().name("tts-warmup").start(this::run);
+    }
+
+    /**
+     * Walk the catalog, synthesizing what isn't cached; returns when done or interrupted.
+     */
+    void run() {
+        state = State.RUNNING;
+        log.info("TTS warm-up started over {} utterances", catalog.size());
+        Semaphore permits = new Semaphore(concurrency);
+        long nextStart = System.nanoTime();
+        try (var executor = Executors.newVirtualThreadPerTaskExecutor()) {
+            for (String text : catalog) {
+                if (tts.isCached(text)) {
+                    alreadyCached.incrementAndGet();
+                    continue;
+                }
+
+                permits.acquire();
+                long wait = nextStart - System.nanoTime();
+                if (wait > 0) {
+                    TimeUnit.NANOSECONDS.sleep(wait);
+                }
+                nextStart = Math.max(nextStart, System.nanoTime()) + intervalNanos;
+
+                executor.execute(() -> {
+                    try {
+                        if (tts.getAudioHash(text).isPresent()) {
+                            synthesized.incrementAndGet();
+                        } else {
+                            failed.incrementAndGet();
+                        }
+                    } finally {
+                        permits.release();
+                    }
+                });
+            }
+        } catch (InterruptedException e) {
+            state = State.STOPPED;
+            log.info("TTS warm-up stopped: {}", progress());
+            Thread.currentThread().interrupt();
+            return;
+        }
+        state = State.DONE;
+        log.info("TTS warm-up done: {}", progress());
+    }
+
+    public Progress progress() {
+        return new Progress(state, catalog.size(), alreadyCached.get(), synthesized.get(), failed.get());
+    }
+
+    /**
+     * Stop the warm-up; fetches already started finish first.
+     */
+    @Override
+    public void close() {
+        Thread thread = runner;
+        if (thread != null) {
+            thread.interrupt();
+            try {
+                thread.join();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
+}
@@ -0,0 +1,132 @@
+package mathquiz.web;
+
+import jakarta.servlet.http.HttpServletRequest;
+import org.eclipse.jetty.server.session.DefaultSessionCache;
+import org.eclipse.jetty.server.session.Session;
+import org.eclipse.jetty.server.session.SessionData;
+import org.eclipse.jetty.server.session.SessionHandler;
+import org.eclipse.jetty.util.thread.AutoLock;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.function.Function;
+
+/**
+ * Session cache that keeps at most a fixed number of sessions in memory.
+ *
+ * <p>Going over the limit saves the least recently accessed sessions that are not in use to
+ * the session store and drops them from memory, down to 90% of the limit so the scan is paid
+ * once per batch rather than per new session. Dropped sessions are loaded back from the
+ * store on their next request. Sessions in use by a request are never dropped, so the limit
+ * can be exceeded briefly under load.
+ */
+public class BoundedSessionCache extends DefaultSessionCache {
+    private static final Logger log = LoggerFactory.getLogger(BoundedSessionCache.class);
+
+    private final ConcurrentMap<String, Session> sessions;
+    private final int maxResident;
+
+    public BoundedSessionCache(SessionHandler handler, int maxResident) {
+        this(handler, new ConcurrentHashMap<>(), maxResident);
+    }
+
+    private BoundedSessionCache(SessionHandler handler, ConcurrentMap<String, Session> sessions, int maxResident) {
+        super(handler, sessions);
+        if (maxResident < 1) {
+            throw new IllegalArgumentException("maxResident must be positive: " + maxResident);
+        }
+        this.sessions = sessions;
+        this.maxResident = maxResident;
+    }
+
+    @Override
+    public Session newSession(SessionData data) {
+        return new CachedSession(getSessionHandler(), data);
+    }
+
+    @Override
+    public Session newSession(HttpServletRequest request, SessionData data) {
+        return new CachedSession(getSessionHandler(), request, data);
+    }
+
+    @Override
+    public Session doPutIfAbsent(String id, Session session) {
+        Session existing = super.doPutIfAbsent(id, session);
+        if (existing == null) {
+            evictOverflow(id);
+        }
+        return existing;
+    }
+
+    @Override
+    protected Session doComputeIfAbsent(String id, Function<String, Session> mappingFunction) {
+        Session session = super.doComputeIfAbsent(id, mappingFunction);
+        evictOverflow(id);
+        return session;
+    }
+
+    /**
+     * Drop least recently accessed idle sessions if over the limit, never the one just added.
+     */
+    private void evictOverflow(String keepId) {
+        if (sessions.size() <= maxResident) {
+            return;
+        }
+        int target = Math.max(1, maxResident - maxResident / 10);
+        List<CachedSession> candidates = new ArrayList<>();
+        for (Session session : sessions.values()) {
+            if (session instanceof CachedSession cached) {
+                candidates.add(cached);
+            }
+        }
+        candidates.sort(Comparator.comparingLong(s -> s.data().getAccessed()));
+
+        int evicted = 0;
+        for (CachedSession session : candidates) {
+            if (sessions.size() <= target) {
+                break;
+            }
+            if (!session.getId().equals(keepId) && evict(session)) {
+                evicted++;
+            }
+        }
+        log.debug("Dropped {} sessions from memory, {} resident", evicted, sessions.size());
+    }
+
+    private boolean evict(CachedSession session) {
+        try (AutoLock lock = session.lock()) {
+            if (session.getRequests() > 0 || !session.isResident() || !session.isValid()) {
+                return false;
+            }
+            getSessionDataStore().store(session.getId(), session.data());
+            doDelete(session.getId());
+            session.setResident(false);
+            return true;
+        } catch (Exception e) {
+            log.warn("Failed to save session {} before dropping it from memory", session.getId(), e);
+            return false;
+        }
+    }
+
+    /**
+     * Session whose data the cache can read to order and save it.
+     */
+    private static final class CachedSession extends Session {
+        CachedSession(SessionHandler handler, SessionData data) {
+            super(handler, data);
+        }
+
+        CachedSession(SessionHandler handler, HttpServletRequest request, SessionData data) {
+            super(handler, request, data);
+        }
+
+        SessionData data() {
+            return getSessionData();
+        }
+    }
+}
@@ -3,12 +3,14 @@ package mathquiz.web;
 import io.javalin.Javalin;
 import io.javalin.http.Context;
 import mathquiz.storage.Repository;
+import mathquiz.storage.UserDirectory;
 import mathquiz.tts.TtsCacheService;
+import mathquiz.tts.TtsWarmup;
+import mathquiz.web.handlers.AdminHandler;
 import mathquiz.web.handlers.AudioHandler;
 import mathquiz.web.handlers.PlayerHandler;
 import mathquiz.web.handlers.QuizHandler;
-
-import java.time.Clock;
+import mathquiz.web.handlers.QuizStateStore;
 
 /**
  * Configures all web routes.
@@ -18,11 +20,23 @@ public class Routes {
     private final PlayerHandler playerHandler;
     private final QuizHandler quizHandler;
     private final AudioHandler audioHandler;
+    /** Null if admin routes are disabled */
+    private final AdminHandler adminHandler;
+    
+    public Routes(Repository repo, QuizStateStore quizState, TtsCacheService ttsService) {
+        this(repo, quizState, ttsService, null, null);
+    }
     
-    public Routes(Repository repo, Clock clock, TtsCacheService ttsService) {
-        this.playerHandler = new PlayerHandler(repo);
-        this.quizHandler = new QuizHandler(repo, clock, ttsService);
+    /**
+     * @param ttsWarmup  the TTS warm-up whose progress the admin status reports, or null
+     * @param adminToken bearer token required by admin routes, or null to not serve them at all
+     */
+    public Routes(Repository repo, QuizStateStore quizState, TtsCacheService ttsService, TtsWarmup ttsWarmup,
+                  String adminToken) {
+        this.playerHandler = new PlayerHandler(new UserDirectory(repo));
+        this.quizHandler = new QuizHandler(quizState, ttsService);
         this.audioHandler = new AudioHandler(ttsService);
+        this.adminHandler = adminToken != null ? new AdminHandler(ttsService, ttsWarmup, adminToken) : null;
     }
     
     public void configure(Javalin app) {
@@ -47,6 +61,12 @@ public class Routes {
         
         // Audio routes
         app.get("/audio/{filename}", audioHandler::serveAudio);
+        
+        // Admin status, only with an admin token configured
+        if (adminHandler != null) {
+            app.before("/admin/*", adminHandler::requireToken);
+            app.get("/admin/tts", adminHandler::ttsStatus);
+        }
     }
     
     private void health(Context ctx) {
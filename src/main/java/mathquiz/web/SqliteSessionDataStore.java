@@ -0,0 +1,244 @@
+package mathquiz.web;
+
+import org.eclipse.jetty.server.session.AbstractSessionDataStore;
+import org.eclipse.jetty.server.session.SessionData;
+import org.jdbi.v3.core.Jdbi;
+import org.jdbi.v3.core.generic.GenericType;
+
+import java.io.*;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Jetty session store backed by the SQLite sessions table, so sessions survive restarts and
+ * need not stay in memory (see {@link BoundedSessionCache}).
+ *
+ * <p>Attributes are written in a small tagged binary format instead of Java serialization:
+ * the app only keeps ids and names in the session, which take a few bytes each. Values of
+ * other types still round-trip through Java serialization.
+ */
+public class SqliteSessionDataStore extends AbstractSessionDataStore {
+
+    /** Save unchanged sessions at most this often; a changed session is always saved */
+    public static final int DEFAULT_SAVE_PERIOD_SEC = 60;
+
+    private static final int TAG_NULL = 0;
+    private static final int TAG_INT = 1;
+    private static final int TAG_LONG = 2;
+    private static final int TAG_STRING = 3;
+    private static final int TAG_BOOLEAN = 4;
+    private static final int TAG_SERIALIZED = 5;
+
+    private final Jdbi jdbi;
+
+    public SqliteSessionDataStore(Jdbi jdbi) {
+        this.jdbi = jdbi;
+        setSavePeriodSec(DEFAULT_SAVE_PERIOD_SEC);
+    }
+
+    @Override
+    public boolean isPassivating() {
+        return true;
+    }
+
+    @Override
+    public boolean doExists(String id) {
+        long now = System.currentTimeMillis();
+        return jdbi.withHandle(handle ->
+            handle.createQuery("SELECT expiry FROM sessions WHERE id = :id")
+                .bind("id", id)
+                .mapTo(Long.class)
+                .findOne()
+                .map(expiry -> expiry <= 0 || expiry > now)
+                .orElse(false)
+        );
+    }
+
+    @Override
+    public void doStore(String id, SessionData data, long lastSaveTime) throws IOException {
+        byte[] attributes = encodeAttributes(data.getAllAttributes());
+        jdbi.useHandle(handle ->
+            handle.createUpdate("""
+                INSERT INTO sessions (id, created, accessed, last_accessed, max_inactive_ms,
+                                      expiry, cookie_set, last_node, attributes)
+                VALUES (:id, :created, :accessed, :lastAccessed, :maxInactiveMs,
+                        :expiry, :cookieSet, :lastNode, :attributes)
+                ON CONFLICT(id) DO UPDATE SET
+                    accessed = excluded.accessed,
+                    last_accessed = excluded.last_accessed,
+                    max_inactive_ms = excluded.max_inactive_ms,
+                    expiry = excluded.expiry,
+                    cookie_set = excluded.cookie_set,
+                    last_node = excluded.last_node,
+                    attributes = excluded.attributes
+                """)
+                .bind("id", id)
+                .bind("created", data.getCreated())
+                .bind("accessed", data.getAccessed())
+                .bind("lastAccessed", data.getLastAccessed())
+                .bind("maxInactiveMs", data.getMaxInactiveMs())
+                .bind("expiry", data.getExpiry())
+                .bind("cookieSet", data.getCookieSet())
+                .bind("lastNode", data.getLastNode())
+                .bind("attributes", attributes)
+                .execute()
+        );
+    }
+
+    @Override
+    public SessionData doLoad(String id) {
+        return jdbi.withHandle(handle ->
+            handle.createQuery("SELECT * FROM sessions WHERE id = :id")
+                .bind("id", id)
+                .map((rs, ctx) -> {
+                    SessionData data = newSessionData(id, rs.getLong("created"), rs.getLong("accessed"),
+                            rs.getLong("last_accessed"), rs.getLong("max_inactive_ms"));
+                    data.setExpiry(rs.getLong("expiry"));
+                    data.setCookieSet(rs.getLong("cookie_set"));
+                    data.setLastNode(rs.getString("last_node"));
+                    try {
+                        data.putAllAttributes(decodeAttributes(rs.getBytes("attributes")));
+                    } catch (IOException e) {
+                        throw new UncheckedIOException("Unreadable attributes for session " + id, e);
+                    }
+                    return data;
+                })
+                .findOne()
+                .orElse(null)
+        );
+    }
+
+    @Override
+    public boolean delete(String id) {
+        return jdbi.withHandle(handle ->
+            handle.createUpdate("DELETE FROM sessions WHERE id = :id")
+                .bind("id", id)
+                .execute()
+        ) > 0;
+    }
+
+    @Override
+    public Set<String> doCheckExpired(Set<String> candidates, long time) {
+        if (candidates.isEmpty()) {
+            return Set.of();
+        }
+        Map<String, Long> expiries = jdbi.withHandle(handle ->
+            handle.createQuery("SELECT id, expiry FROM sessions WHERE id IN (<ids>)")
+                .bindList("ids", List.copyOf(candidates))
+                .setMapKeyColumn("id")
+                .setMapValueColumn("expiry")
+                .collectInto(new GenericType<Map<String, Long>>() {})
+        );
+        // Candidates that are gone from the store have been expired or invalidated elsewhere
+        Set<String> expired = new HashSet<>();
+        for (String id : candidates) {
+            Long expiry = expiries.get(id);
+            if (expiry == null || (expiry > 0 && expiry <= time)) {
+                expired.add(id);
+            }
+        }
+        return expired;
+    }
+
+    @Override
+    public Set<String> doGetExpired(long time) {
+        return new HashSet<>(jdbi.withHandle(handle ->
+            handle.createQuery("SELECT id FROM sessions WHERE expiry > 0 AND expiry <= :time")
+                .bind("time", time)
+                .mapTo(String.class)
+                .list()
+        ));
+    }
+
+    @Override
+    public void doCleanOrphans(long time) {
+        jdbi.useHandle(handle ->
+            handle.createUpdate("DELETE FROM sessions WHERE expiry > 0 AND expiry <= :time")
+                .bind("time", time)
+                .execute()
+        );
+    }
+
+    // --- Attribute encoding ---
+
+    /**
+     * Encode attributes as a count followed by (name, tag, value) entries.
+     */
+    static byte[] encodeAttributes(Map<String, Object> attributes) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream(64);
+        try (DataOutputStream out = new DataOutputStream(bytes)) {
+            out.writeShort(attributes.size());
+            for (Map.Entry<String, Object> entry : attributes.entrySet()) {
+                out.writeUTF(entry.getKey());
+                writeValue(out, entry.getValue());
+            }
+        }
+        return bytes.toByteArray();
+    }
+
+    static Map<String, Object> decodeAttributes(byte[] encoded) throws IOException {
+        try (DataInputStream in = new DataInputStream(new ByteArrayInputStream(encoded))) {
+            int count = in.readUnsignedShort();
+            Map<String, Object> attributes = new HashMap<>(count * 2);
+            for (int i = 0; i < count; i++) {
+                String name = in.readUTF();
+                attributes.put(name, readValue(in));
+            }
+            return attributes;
+        }
+    }
+
+    private static void writeValue(DataOutputStream out, Object value) throws IOException {
+        switch (value) {
+            case null -> out.writeByte(TAG_NULL);
+            case Integer i -> {
+                out.writeByte(TAG_INT);
+                out.writeInt(i);
+            }
+            case Long l -> {
+                out.writeByte(TAG_LONG);
+                out.writeLong(l);
+            }
+            case String s -> {
+                out.writeByte(TAG_STRING);
+                out.writeUTF(s);
+            }
+            case Boolean b -> {
+                out.writeByte(TAG_BOOLEAN);
+                out.writeBoolean(b);
+            }
+            default -> {
+                ByteArrayOutputStream serialized = new ByteArrayOutputStream();
+                try (ObjectOutputStream oos = new ObjectOutputStream(serialized)) {
+                    oos.writeObject(value);
+                }
+                out.writeByte(TAG_SERIALIZED);
+                out.writeInt(serialized.size());
+                serialized.writeTo(out);
+            }
+        }
+    }
+
+    private static Object readValue(DataInputStream in) throws IOException {
+        int tag = in.readUnsignedByte();
+        return switch (tag) {
+            case TAG_NULL -> null;
+            case TAG_INT -> in.readInt();
+            case TAG_LONG -> in.readLong();
+            case TAG_STRING -> in.readUTF();
+            case TAG_BOOLEAN -> in.readBoolean();
+            case TAG_SERIALIZED -> {
+                byte[] serialized = in.readNBytes(in.readInt());
+                try (ObjectInputStream ois = new ObjectInputStream(new ByteArrayInputStream(serialized))) {
+                    yield ois.readObject();
+                } catch (ClassNotFoundException e) {
+                    throw new IOException("Unknown attribute class", e);
+                }
+            }
+            default -> throw new IOException("Unknown attribute tag " + tag);
+        };
+    }
+}
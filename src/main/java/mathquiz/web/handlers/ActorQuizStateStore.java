@@ -0,0 +1,30 @@
+package mathquiz.web.handlers;
+
+import io.javalin.http.Context;
+import mathquiz.service.QuizActorRegistry;
+import mathquiz.service.QuizService;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.function.Function;
+
+/**
+ * Quiz state kept in this process, one actor per user (the default, single-node mode).
+ */
+public class ActorQuizStateStore implements QuizStateStore {
+
+    private final QuizActorRegistry actors;
+
+    public ActorQuizStateStore(QuizActorRegistry actors) {
+        this.actors = actors;
+    }
+
+    @Override
+    public <T> CompletableFuture<T> ask(Context ctx, int userId, Function<QuizService, T> command) {
+        return actors.ask(userId, command);
+    }
+
+    @Override
+    public void close() {
+        actors.close();
+    }
+}
@@ -0,0 +1,86 @@
+package mathquiz.web.handlers;
+
+import io.javalin.http.Context;
+import io.javalin.http.UnauthorizedResponse;
+import mathquiz.tts.AudioMemoryCache;
+import mathquiz.tts.TtsCacheService;
+import mathquiz.tts.TtsWarmup;
+
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.util.Locale;
+import java.util.Optional;
+
+/**
+ * Read-only operational status, for operators holding the admin token.
+ */
+public class AdminHandler {
+
+    private static final String BEARER = "Bearer ";
+
+    private final TtsCacheService ttsService;
+    private final TtsWarmup warmup;
+    private final byte[] token;
+
+    /**
+     * @param warmup the TTS warm-up, or null if none is running
+     * @param token  the token requests must present as {@code Authorization: Bearer <token>}
+     */
+    public AdminHandler(TtsCacheService ttsService, TtsWarmup warmup, String token) {
+        this.ttsService = ttsService;
+        this.warmup = warmup;
+        this.token = token.getBytes(StandardCharsets.UTF_8);
+    }
+
+    /**
+     * Before-handler for admin routes: reject with 401 unless the request carries the admin token.
+     */
+    public void requireToken(Context ctx) {
+        String header = ctx.header("Authorization");
+        boolean authorized = header != null && header.startsWith(BEARER)
+                && MessageDigest.isEqual(token, header.substring(BEARER.length()).getBytes(StandardCharsets.UTF_8));
+        if (!authorized) {
+            throw new UnauthorizedResponse();
+        }
+    }
+
+    /**
+     * GET /admin/tts - TTS fetch counters, memory tier and warm-up progress as JSON.
+     */
+    public void ttsStatus(Context ctx) {
+        TtsCacheService.Stats stats = ttsService.stats();
+        StringBuilder json = new StringBuilder()
+                .append("{\"fetches\":").append(stats.fetches())
+                .append(",\"coalesced\":").append(stats.coalesced())
+                .append(",\"memory\":");
+        Optional<AudioMemoryCache.Stats> memoryStats = ttsService.memoryStats();
+        if (memoryStats.isEmpty()) {
+            json.append("null");
+        } else {
+            AudioMemoryCache.Stats memory = memoryStats.get();
+            json.append("{\"hits\":").append(memory.hits())
+                .append(",\"misses\":").append(memory.misses())
+                .append(",\"hitRatio\":").append(String.format(Locale.ROOT, "%.4f", memory.hitRatio()))
+                .append(",\"residentBytes\":").append(memory.residentBytes())
+                .append(",\"entries\":").append(memory.entries())
+                .append('}');
+        }
+        json.append(",\"warmup\":");
+        if (warmup == null) {
+            json.append("null");
+        } else {
+            TtsWarmup.Progress progress = warmup.progress();
+            json.append("{\"state\":\"").append(progress.state().name().toLowerCase()).append('"')
+                .append(",\"total\":").append(progress.total())
+                .append(",\"alreadyCached\":").append(progress.alreadyCached())
+                .append(",\"synthesized\":").append(progress.synthesized())
+                .append(",\"failed\":").append(progress.failed())
+                .append(",\"remaining\":").append(progress.remaining())
+                .append('}');
+        }
+        json.append('}');
+
+        ctx.contentType("application/json");
+        ctx.result(json.toString());
+    }
+}
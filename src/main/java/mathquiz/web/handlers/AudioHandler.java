@@ -2,14 +2,26 @@ package mathquiz.web.handlers;
 
 import io.javalin.http.Context;
 import mathquiz.tts.TtsCacheService;
+import org.eclipse.jetty.server.HttpOutput;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
-import java.io.InputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.time.Duration;
 import java.util.Optional;
+import java.util.concurrent.TimeUnit;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
 
 /**
  * Handles audio file serving from TTS cache.
+ *
+ * <p>Audio is written straight from the memory tier's off-heap buffers or the memory-mapped cache
+ * file. The hash names the content, so it doubles as a strong ETag for conditional requests, and
+ * single byte ranges are honoured for players that fetch audio piecewise (e.g. mobile Safari).
  */
 public class AudioHandler {
     private static final Logger log = LoggerFactory.getLogger(AudioHandler.class);
@@ -17,6 +29,11 @@ public class AudioHandler {
     // Cache for 1 year (audio content is immutable for a given hash)
     private static final String CACHE_CONTROL = "public, max-age=31536000, immutable";
     
+    // How long to wait for audio that is still being synthesized (a bit over the API timeout)
+    private static final Duration SYNTHESIS_WAIT = Duration.ofSeconds(15);
+    
+    private static final Pattern SINGLE_RANGE = Pattern.compile("bytes=(\\d*)-(\\d*)");
+    
     private final TtsCacheService ttsService;
     
     public AudioHandler(TtsCacheService ttsService) {
@@ -25,6 +42,8 @@ public class AudioHandler {
     
     /**
      * GET /audio/{hash}.wav - Serve cached audio file.
+     * Pages reference audio before it is synthesized, so a request for audio that is still
+     * being synthesized waits for it instead of failing.
      */
     public void serveAudio(Context ctx) {
         String filename = ctx.pathParam("filename");
@@ -43,16 +62,119 @@ public class AudioHandler {
             return;
         }
         
-        Optional<InputStream> audioStream = ttsService.streamAudio(hash);
+        // The client already has this audio; content for a hash never changes
+        String etag = "\"" + hash + "\"";
+        if (matchesEtag(ctx.header("If-None-Match"), etag)) {
+            ctx.header("ETag", etag);
+            ctx.header("Cache-Control", CACHE_CONTROL);
+            ctx.status(304);
+            return;
+        }
+        
+        // Hot audio comes from memory, the rest from the disk cache
+        Optional<ByteBuffer> audio = ttsService.loadAudio(hash);
+        if (audio.isPresent()) {
+            sendAudio(ctx, hash, audio);
+            return;
+        }
         
-        if (audioStream.isEmpty()) {
+        ctx.future(() -> ttsService.whenAvailable(hash)
+                .completeOnTimeout(false, SYNTHESIS_WAIT.toMillis(), TimeUnit.MILLISECONDS)
+                .thenAccept(available -> sendAudio(ctx, hash, ttsService.loadAudio(hash))));
+    }
+    
+    private void sendAudio(Context ctx, String hash, Optional<ByteBuffer> audio) {
+        if (audio.isEmpty()) {
             log.warn("Audio not found for hash: {}", hash);
             ctx.status(404).result("Audio not found");
             return;
         }
         
+        ByteBuffer body = audio.get();
+        int length = body.remaining();
+        String etag = "\"" + hash + "\"";
         ctx.contentType("audio/wav");
         ctx.header("Cache-Control", CACHE_CONTROL);
-        ctx.result(audioStream.get());
+        ctx.header("ETag", etag);
+        ctx.header("Accept-Ranges", "bytes");
+        
+        // A range only applies if the client's copy is this audio (If-Range); otherwise send it all
+        String range = ctx.header("Range");
+        String ifRange = ctx.header("If-Range");
+        if (range != null && (ifRange == null || ifRange.equals(etag))) {
+            Matcher matcher = SINGLE_RANGE.matcher(range.trim());
+            // Malformed and multi-range requests get the whole file, which the spec allows
+            if (matcher.matches() && !(matcher.group(1).isEmpty() && matcher.group(2).isEmpty())) {
+                long start;
+                long end;
+                if (matcher.group(1).isEmpty()) {
+                    // Suffix range: the last N bytes
+                    long suffix = parseLength(matcher.group(2));
+                    start = Math.max(0, length - suffix);
+                    end = length - 1;
+                } else {
+                    start = parseLength(matcher.group(1));
+                    end = matcher.group(2).isEmpty() ? length - 1 : Math.min(parseLength(matcher.group(2)), length - 1);
+                }
+                
+                if (start >= length || start > end) {
+                    ctx.header("Content-Range", "bytes */" + length);
+                    ctx.status(416);
+                    return;
+                }
+                ctx.status(206);
+                ctx.header("Content-Range", "bytes " + start + "-" + end + "/" + length);
+                body = body.slice(body.position() + (int) start, (int) (end - start + 1));
+            }
+        }
+        
+        write(ctx, hash, body);
+    }
+    
+    /**
+     * Write the buffer as the whole response body. Jetty writes direct and mapped buffers to the
+     * socket without copying them through the heap. A player that goes away mid-download is not
+     * an error; the rest of the body is dropped.
+     */
+    private static void write(Context ctx, String hash, ByteBuffer body) {
+        ctx.res().setContentLengthLong(body.remaining());
+        try {
+            OutputStream out = ctx.res().getOutputStream();
+            if (out instanceof HttpOutput jettyOut) {
+                jettyOut.write(body);
+            } else {
+                Channels.newChannel(out).write(body);
+            }
+        } catch (IOException e) {
+            log.debug("Client went away while sending audio {}: {}", hash, e.toString());
+        }
+    }
+    
+    private static boolean matchesEtag(String ifNoneMatch, String etag) {
+        if (ifNoneMatch == null) {
+            return false;
+        }
+        for (String candidate : ifNoneMatch.split(",")) {
+            String tag = candidate.trim();
+            // Weak comparison, as If-None-Match calls for
+            if (tag.startsWith("W/")) {
+                tag = tag.substring(2);
+            }
+            if (tag.equals("*") || tag.equals(etag)) {
+                return true;
+            }
+        }
+        return false;
+    }
+    
+    /**
+     * Parse a range bound, saturating on values too large to matter.
+     */
+    private static long parseLength(String digits) {
+        try {
+            return Long.parseLong(digits);
+        } catch (NumberFormatException e) {
+            return Long.MAX_VALUE;
+        }
     }
 }
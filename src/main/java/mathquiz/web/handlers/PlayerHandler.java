@@ -2,7 +2,7 @@ package mathquiz.web.handlers;
 
 import io.javalin.http.Context;
 import mathquiz.domain.User;
-import mathquiz.storage.Repository;
+import mathquiz.storage.UserDirectory;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -20,17 +20,17 @@ public class PlayerHandler {
     public static final String COOKIE_USER_ID = "rememberedUserId";
     private static final int COOKIE_MAX_AGE_SECONDS = 30 * 24 * 60 * 60; // 30 days
     
-    private final Repository repo;
+    private final UserDirectory users;
     
-    public PlayerHandler(Repository repo) {
-        this.repo = repo;
+    public PlayerHandler(UserDirectory users) {
+        this.users = users;
     }
     
     /**
      * GET /players - Show player list and create form.
      */
     public void listPlayers(Context ctx) {
-        List<User> players = repo.getUsers();
+        List<User> players = users.all();
         ctx.render("players.jte", Map.of("players", players));
     }
     
@@ -51,7 +51,7 @@ public class PlayerHandler {
         }
         
         try {
-            User user = repo.createUser(name);
+            User user = users.create(name);
             log.info("Created player: {} (id={})", user.name(), user.id());
         } catch (Exception e) {
             log.warn("Failed to create player '{}': {}", name, e.getMessage());
@@ -66,7 +66,7 @@ public class PlayerHandler {
     public void selectPlayer(Context ctx) {
         int userId = ctx.pathParamAsClass("id", Integer.class).get();
         
-        repo.getUser(userId).ifPresentOrElse(
+        users.find(userId).ifPresentOrElse(
             user -> {
                 ctx.sessionAttribute(SESSION_USER_ID, user.id());
                 ctx.sessionAttribute(SESSION_USER_NAME, user.name());
@@ -118,7 +118,7 @@ public class PlayerHandler {
         
         try {
             int userId = Integer.parseInt(cookieValue);
-            repo.getUser(userId).ifPresent(user -> {
+            users.find(userId).ifPresent(user -> {
                 ctx.sessionAttribute(SESSION_USER_ID, user.id());
                 ctx.sessionAttribute(SESSION_USER_NAME, user.name());
                 log.info("Session restored from cookie for: {} (id={})", user.name(), user.id());
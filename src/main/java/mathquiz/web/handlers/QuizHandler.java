@@ -1,38 +1,59 @@
 package mathquiz.web.handlers;
 
 import io.javalin.http.Context;
+import mathquiz.domain.FactKey;
 import mathquiz.domain.Problem;
 import mathquiz.service.AnswerResult;
-import mathquiz.service.QuizService;
-import mathquiz.storage.Repository;
 import mathquiz.tts.EstonianSpeechFormatter;
 import mathquiz.tts.TtsCacheService;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
-import java.time.Clock;
 import java.util.HashMap;
 import java.util.Map;
 import java.util.Optional;
 
 /**
  * Handles the quiz flow - problems and answers.
+ *
+ * <p>All quiz state is reached through a {@link QuizStateStore}, per user: several tabs and
+ * devices share one current problem. With the default in-process store, concurrent requests
+ * (double submits, several tabs and devices) are applied one at a time. Session data is read
+ * on the request thread; rendering and speech happen once the command has completed.
  */
 public class QuizHandler {
     private static final Logger log = LoggerFactory.getLogger(QuizHandler.class);
-    
-    private static final String SESSION_QUIZ_SERVICE = "quizService";
-    
-    private final Repository repo;
-    private final Clock clock;
+
+    /** Form field carrying the {@link FactKey} of the problem being answered */
+    private static final String FORM_PROBLEM_KEY = "problem";
+
+    private final QuizStateStore quizState;
     private final TtsCacheService ttsService;
-    
-    public QuizHandler(Repository repo, Clock clock, TtsCacheService ttsService) {
-        this.repo = repo;
-        this.clock = clock;
+
+    public QuizHandler(QuizStateStore quizState, TtsCacheService ttsService) {
+        this.quizState = quizState;
         this.ttsService = ttsService;
     }
-    
+
+    /**
+     * Header counters, read together in one command.
+     */
+    private record Snapshot(int streak, int todayStars, int totalStars) {}
+
+    /**
+     * What happened to a submitted answer: either it was applied to {@code problem}, or the
+     * submission no longer matched the current problem (key {@link FactKey#NONE} if none).
+     */
+    private record Submission(int currentKey, Problem problem, AnswerResult result, int todayStars) {
+        static Submission stale(int currentKey) {
+            return new Submission(currentKey, null, null, 0);
+        }
+
+        boolean applied() {
+            return result != null;
+        }
+    }
+
     /**
      * GET /quiz - Show quiz shell page.
      */
@@ -41,18 +62,25 @@ public class QuizHandler {
             ctx.redirect("/players");
             return;
         }
-        
-        QuizService service = getOrCreateService(ctx);
-        
-        Map<String, Object> model = new HashMap<>();
-        model.put("playerName", PlayerHandler.getUserName(ctx));
-        model.put("streak", service.sessionStats().currentStreak());
-        model.put("todayStars", service.dailyStats().starsEarned());
-        model.put("totalStars", service.getTotalStars());
-        
-        ctx.render("quiz.jte", model);
+
+        String playerName = PlayerHandler.getUserName(ctx);
+        int userId = PlayerHandler.getUserId(ctx);
+
+        ctx.future(() -> quizState.ask(ctx, userId, service -> new Snapshot(
+                service.sessionStats().currentStreak(),
+                service.dailyStats().starsEarned(),
+                service.getTotalStars()
+        )).thenAccept(snapshot -> {
+            Map<String, Object> model = new HashMap<>();
+            model.put("playerName", playerName);
+            model.put("streak", snapshot.streak());
+            model.put("todayStars", snapshot.todayStars());
+            model.put("totalStars", snapshot.totalStars());
+
+            ctx.render("quiz.jte", model);
+        }));
     }
-    
+
     /**
      * GET /quiz/problem - Get the next problem (HTMX fragment).
      */
@@ -61,26 +89,15 @@ public class QuizHandler {
             ctx.redirect("/players");
             return;
         }
-        
-        QuizService service = getOrCreateService(ctx);
-        Problem problem = service.getNextProblem(null);
-        
-        log.debug("Generated problem: {} for user {}", problem, PlayerHandler.getUserId(ctx));
-        
-        // Generate audio for the problem
-        String speechText = EstonianSpeechFormatter.formatProblem(
-                problem.operand1(), problem.operation(), problem.operand2());
-        Optional<String> audioHash = ttsService.getAudioHash(speechText);
-        
-        Map<String, Object> model = new HashMap<>();
-        model.put("operand1", problem.operand1());
-        model.put("operand2", problem.operand2());
-        model.put("operation", problem.operation());
-        model.put("audioHash", audioHash.orElse(null));
-        
-        ctx.render("fragments/problem.jte", model);
+
+        int userId = PlayerHandler.getUserId(ctx);
+
+        ctx.future(() -> quizState.ask(ctx, userId, service -> service.nextProblemKey(null)).thenAccept(key -> {
+            log.debug("Generated problem: {} for user {}", FactKey.toProblem(key), userId);
+            renderProblem(ctx, key, true);
+        }));
     }
-    
+
     /**
      * POST /quiz/answer - Submit an answer (HTMX fragment).
      */
@@ -89,9 +106,9 @@ public class QuizHandler {
             ctx.redirect("/players");
             return;
         }
-        
-        QuizService service = getOrCreateService(ctx);
-        
+
+        int userId = PlayerHandler.getUserId(ctx);
+
         // Parse answer
         String answerStr = ctx.formParam("answer");
         if (answerStr == null || answerStr.isBlank()) {
@@ -99,35 +116,45 @@ public class QuizHandler {
             ctx.redirect("/quiz/problem");
             return;
         }
-        
+
         int answer;
         try {
             answer = Integer.parseInt(answerStr.trim());
         } catch (NumberFormatException e) {
             // Re-show current problem
-            Problem current = service.currentProblem();
-            if (current != null) {
-                Map<String, Object> model = new HashMap<>();
-                model.put("operand1", current.operand1());
-                model.put("operand2", current.operand2());
-                model.put("operation", current.operation());
-                ctx.render("fragments/problem.jte", model);
-            } else {
-                ctx.redirect("/quiz/problem");
-            }
+            ctx.future(() -> quizState.ask(ctx, userId, service -> service.currentProblemKey())
+                    .thenAccept(key -> showCurrent(ctx, key)));
             return;
         }
-        
-        // Capture the problem before submitting (it gets cleared)
-        Problem problem = service.currentProblem();
-        
-        // Submit and get result
-        AnswerResult result = service.submitAnswer(answer);
-        
-        log.info("Answer submitted: {} -> {} for user {}", 
-                answerStr, result.correct() ? "correct" : "incorrect", 
-                PlayerHandler.getUserId(ctx));
-        
+
+        int postedKey = parseProblemKey(ctx.formParam(FORM_PROBLEM_KEY));
+
+        ctx.future(() -> quizState.ask(ctx, userId, service -> {
+            // Check and submit in one command so nothing can slip in between
+            int currentKey = service.currentProblemKey();
+            if (currentKey == FactKey.NONE || (postedKey != FactKey.NONE && postedKey != currentKey)) {
+                return Submission.stale(currentKey);
+            }
+            Problem problem = service.currentProblem();
+            AnswerResult result = service.submitAnswer(answer);
+            return new Submission(currentKey, problem, result, service.dailyStats().starsEarned());
+        }).thenAccept(submission -> {
+            if (!submission.applied()) {
+                log.debug("Stale answer for problem {} from user {}", postedKey, userId);
+                showCurrent(ctx, submission.currentKey());
+                return;
+            }
+            renderFeedback(ctx, answerStr, userId, submission);
+        }));
+    }
+
+    private void renderFeedback(Context ctx, String answerStr, int userId, Submission submission) {
+        Problem problem = submission.problem();
+        AnswerResult result = submission.result();
+
+        log.info("Answer submitted: {} -> {} for user {}",
+                answerStr, result.correct() ? "correct" : "incorrect", userId);
+
         // Generate feedback audio
         String feedbackText;
         if (result.correct()) {
@@ -137,47 +164,63 @@ public class QuizHandler {
             feedbackText = EstonianSpeechFormatter.formatIncorrect(
                     problem.operand1(), problem.operation(), problem.operand2(), result.correctAnswer());
         }
-        Optional<String> audioHash = ttsService.getAudioHash(feedbackText);
-        
+        // Synthesized in the background; the audio endpoint waits for it if the browser is early
+        Optional<String> audioHash = ttsService.requestAudio(feedbackText);
+
         // Render feedback
         Map<String, Object> model = new HashMap<>();
         model.put("correct", result.correct());
         model.put("correctAnswer", result.correctAnswer());
         model.put("streak", result.streak());
-        model.put("todayStars", service.dailyStats().starsEarned());
-        model.put("totalStars", service.getTotalStars());
+        model.put("todayStars", submission.todayStars());
+        model.put("totalStars", result.totalStars());
         model.put("rangeExpanded", result.rangeExpanded());
         model.put("newOperationUnlocked", result.newOperationUnlocked());
         model.put("newStars", result.newStars());
         model.put("audioHash", audioHash.orElse(null));
-        
+
         ctx.render("fragments/feedback.jte", model);
     }
-    
+
     /**
-     * Get or create QuizService for the current session.
+     * Re-show the current problem without audio, or fetch a new one if there is none.
      */
-    private QuizService getOrCreateService(Context ctx) {
-        QuizService service = ctx.sessionAttribute(SESSION_QUIZ_SERVICE);
-        Integer currentUserId = PlayerHandler.getUserId(ctx);
-        
-        // If service exists and is for the same user, return it
-        // Otherwise create a new one
-        if (service != null) {
-            // Check if it's the same user (QuizService is tied to userId)
-            // We can't easily check, so we'll recreate on each session for safety
-            // Actually, let's store the userId with the service
-            Integer serviceUserId = ctx.sessionAttribute("quizServiceUserId");
-            if (currentUserId.equals(serviceUserId)) {
-                return service;
-            }
+    private void showCurrent(Context ctx, int key) {
+        if (key == FactKey.NONE) {
+            ctx.redirect("/quiz/problem");
+        } else {
+            renderProblem(ctx, key, false);
+        }
+    }
+
+    private void renderProblem(Context ctx, int key, boolean withAudio) {
+        Problem problem = FactKey.toProblem(key);
+
+        Map<String, Object> model = new HashMap<>();
+        model.put("operand1", problem.operand1());
+        model.put("operand2", problem.operand2());
+        model.put("operation", problem.operation());
+        model.put("problemKey", key);
+        if (withAudio) {
+            String speechText = EstonianSpeechFormatter.formatProblem(
+                    problem.operand1(), problem.operation(), problem.operand2());
+            model.put("audioHash", ttsService.requestAudio(speechText).orElse(null));
+        }
+
+        ctx.render("fragments/problem.jte", model);
+    }
+
+    /**
+     * Parse the posted problem key; missing or malformed keys don't pin the answer to a problem.
+     */
+    private static int parseProblemKey(String value) {
+        if (value == null || value.isBlank()) {
+            return FactKey.NONE;
+        }
+        try {
+            return Integer.parseInt(value.trim());
+        } catch (NumberFormatException e) {
+            return FactKey.NONE;
         }
-        
-        // Create new service
-        service = new QuizService(repo, currentUserId, clock);
-        ctx.sessionAttribute(SESSION_QUIZ_SERVICE, service);
-        ctx.sessionAttribute("quizServiceUserId", currentUserId);
-        
-        return service;
     }
 }
@@ -0,0 +1,112 @@
+package mathquiz.web.handlers;
+
+import javax.crypto.Mac;
+import javax.crypto.spec.SecretKeySpec;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.security.GeneralSecurityException;
+import java.security.MessageDigest;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.Arrays;
+import java.util.Base64;
+import java.util.Optional;
+
+/**
+ * Signs and verifies {@link QuizStateToken}s with HMAC-SHA256.
+ *
+ * <p>A token is {@code base64url(payload) "." base64url(mac)}, where the payload is a version
+ * byte, the three state ints, the sequence and the issue time in epoch seconds (29 bytes), and
+ * the MAC is truncated to 128 bits. About 60 characters in all. Tokens older than the maximum
+ * age are rejected, so an old token can't bring back a problem from days ago; the sequence
+ * is checked against the database by {@link SignedQuizStateStore}, so it can't be replayed
+ * either.
+ */
+public class QuizStateSigner {
+
+    private static final String ALGORITHM = "HmacSHA256";
+    private static final byte VERSION = 2;
+    private static final int PAYLOAD_BYTES = 1 + 4 + 4 + 4 + 8 + 8;
+    private static final int MAC_BYTES = 16;
+    private static final int MIN_SECRET_BYTES = 16;
+
+    public static final Duration DEFAULT_MAX_AGE = Duration.ofHours(12);
+
+    private static final Base64.Encoder ENCODER = Base64.getUrlEncoder().withoutPadding();
+    private static final Base64.Decoder DECODER = Base64.getUrlDecoder();
+
+    private final SecretKeySpec key;
+    private final Duration maxAge;
+
+    public QuizStateSigner(String secret) {
+        this(secret, DEFAULT_MAX_AGE);
+    }
+
+    public QuizStateSigner(String secret, Duration maxAge) {
+        byte[] bytes = secret.getBytes(StandardCharsets.UTF_8);
+        if (bytes.length < MIN_SECRET_BYTES) {
+            throw new IllegalArgumentException("Quiz state secret must be at least " + MIN_SECRET_BYTES + " bytes");
+        }
+        this.key = new SecretKeySpec(bytes, ALGORITHM);
+        this.maxAge = maxAge;
+    }
+
+    /**
+     * Encode and sign a token.
+     */
+    public String sign(QuizStateToken token) {
+        byte[] payload = ByteBuffer.allocate(PAYLOAD_BYTES)
+                .put(VERSION)
+                .putInt(token.userId())
+                .putInt(token.problemKey())
+                .putInt(token.streak())
+                .putLong(token.sequence())
+                .putLong(token.issuedAt().getEpochSecond())
+                .array();
+        return ENCODER.encodeToString(payload) + "." + ENCODER.encodeToString(mac(payload));
+    }
+
+    /**
+     * Decode a token if it is well-formed, correctly signed and not older than the maximum age.
+     */
+    public Optional<QuizStateToken> verify(String value, Instant now) {
+        if (value == null) {
+            return Optional.empty();
+        }
+        int dot = value.indexOf('.');
+        if (dot < 0) {
+            return Optional.empty();
+        }
+
+        byte[] payload;
+        byte[] mac;
+        try {
+            payload = DECODER.decode(value.substring(0, dot));
+            mac = DECODER.decode(value.substring(dot + 1));
+        } catch (IllegalArgumentException e) {
+            return Optional.empty();
+        }
+        if (payload.length != PAYLOAD_BYTES || payload[0] != VERSION
+                || !MessageDigest.isEqual(mac, mac(payload))) {
+            return Optional.empty();
+        }
+
+        ByteBuffer buffer = ByteBuffer.wrap(payload, 1, PAYLOAD_BYTES - 1);
+        QuizStateToken token = new QuizStateToken(buffer.getInt(), buffer.getInt(), buffer.getInt(),
+                buffer.getLong(), Instant.ofEpochSecond(buffer.getLong()));
+        if (token.issuedAt().isBefore(now.minus(maxAge))) {
+            return Optional.empty();
+        }
+        return Optional.of(token);
+    }
+
+    private byte[] mac(byte[] payload) {
+        try {
+            Mac mac = Mac.getInstance(ALGORITHM);
+            mac.init(key);
+            return Arrays.copyOf(mac.doFinal(payload), MAC_BYTES);
+        } catch (GeneralSecurityException e) {
+            throw new IllegalStateException("HMAC-SHA256 not available", e);
+        }
+    }
+}
@@ -0,0 +1,33 @@
+package mathquiz.web.handlers;
+
+import io.javalin.http.Context;
+import mathquiz.service.QuizService;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.function.Function;
+
+/**
+ * Where {@link QuizHandler} finds a user's quiz state: in process memory
+ * ({@link ActorQuizStateStore}) or rebuilt per request from a signed client token
+ * ({@link SignedQuizStateStore}).
+ *
+ * <p>Either way the state belongs to the user, not to a browser session: all tabs and devices
+ * of a player share one current problem and streak, so the player works through a single
+ * sequence. Fetching a problem in one tab replaces the one showing in another, and answering
+ * the replaced problem re-shows the current one instead of counting (see
+ * {@link QuizHandler#submitAnswer}).
+ */
+public interface QuizStateStore extends AutoCloseable {
+
+    /**
+     * Run a command against the user's quiz state for this request.
+     * Must be called on the request thread, before the response is committed.
+     */
+    <T> CompletableFuture<T> ask(Context ctx, int userId, Function<QuizService, T> command);
+
+    /**
+     * Flush and release any state held in memory.
+     */
+    @Override
+    default void close() {}
+}
@@ -0,0 +1,17 @@
+package mathquiz.web.handlers;
+
+import mathquiz.domain.FactKey;
+
+import java.time.Instant;
+
+/**
+ * Per-session quiz state carried by the client in stateless mode.
+ *
+ * @param userId the user the state belongs to
+ * @param problemKey the current problem as a {@link FactKey}, or {@link FactKey#NONE}
+ * @param streak the current answer streak
+ * @param sequence the user's quiz state sequence the token was issued under; only a token
+ *                 carrying the current sequence is accepted
+ * @param issuedAt when the token was signed, truncated to seconds
+ */
+public record QuizStateToken(int userId, int problemKey, int streak, long sequence, Instant issuedAt) {}
@@ -0,0 +1,73 @@
+package mathquiz.web.handlers;
+
+import io.javalin.http.Context;
+import io.javalin.http.Cookie;
+import io.javalin.http.SameSite;
+import mathquiz.service.QuizService;
+import mathquiz.storage.Repository;
+
+import java.time.Clock;
+import java.time.Instant;
+import java.time.temporal.ChronoUnit;
+import java.util.concurrent.CompletableFuture;
+import java.util.function.Function;
+
+/**
+ * Stateless quiz state for running several app nodes against one database.
+ *
+ * <p>Nothing is kept between requests: each request rebuilds the user's {@link QuizService}
+ * from the repository, restores the current problem and streak from a signed cookie, runs the
+ * command and sends back a freshly signed cookie. Any node sharing the secret can serve any
+ * request. The service loads only what the command touches (see
+ * {@link QuizService#forRequest}), so an answer costs a few row reads; only sampling a new
+ * problem loads all of the user's stats.
+ *
+ * <p>Each token is single-use: it carries the user's quiz state sequence, and a request only
+ * resumes from it by advancing that sequence in the database. A replayed cookie, or the loser
+ * of two concurrent requests with the same token, starts without a current problem or streak,
+ * so an answer can't be counted twice. The sequence is per user, so a token is also superseded
+ * when another device of the same player starts over. This costs one small write per request.
+ */
+public class SignedQuizStateStore implements QuizStateStore {
+
+    static final String COOKIE_QUIZ_STATE = "quizState";
+
+    private final Repository repo;
+    private final Clock clock;
+    private final QuizStateSigner signer;
+
+    public SignedQuizStateStore(Repository repo, Clock clock, QuizStateSigner signer) {
+        this.repo = repo;
+        this.clock = clock;
+        this.signer = signer;
+    }
+
+    @Override
+    public <T> CompletableFuture<T> ask(Context ctx, int userId, Function<QuizService, T> command) {
+        try {
+            Instant now = clock.instant();
+            QuizService service = QuizService.forRequest(repo, userId, clock);
+            // A token for another user (e.g. after switching players) is ignored
+            QuizStateToken token = signer.verify(ctx.cookie(COOKIE_QUIZ_STATE), now)
+                    .filter(t -> t.userId() == userId)
+                    .orElse(null);
+            long sequence = token != null ? repo.advanceQuizStateSequence(userId, token.sequence()) : -1;
+            if (sequence >= 0) {
+                service.resume(token.problemKey(), token.streak());
+            } else {
+                // No usable token, or a stale one: start over, superseding any token still out there
+                sequence = repo.advanceQuizStateSequence(userId, -1);
+            }
+
+            T result = command.apply(service);
+
+            QuizStateToken next = new QuizStateToken(userId, service.currentProblemKey(),
+                    service.sessionStats().currentStreak(), sequence, now.truncatedTo(ChronoUnit.SECONDS));
+            ctx.cookie(new Cookie(COOKIE_QUIZ_STATE, signer.sign(next), "/", -1, false, 0, true,
+                    null, null, SameSite.STRICT));
+            return CompletableFuture.completedFuture(result);
+        } catch (RuntimeException e) {
+            return CompletableFuture.failedFuture(e);
+        }
+    }
+}
@@ -0,0 +1,9 @@
+-- Materialized per-user totals, maintained in the same transaction as daily_stats writes
+CREATE TABLE user_totals (
+    user_id INTEGER PRIMARY KEY,
+    total_stars INTEGER NOT NULL
+);
+
+-- Backfill from existing daily stats
+INSERT INTO user_totals (user_id, total_stars)
+SELECT user_id, SUM(stars_earned) FROM daily_stats GROUP BY user_id;
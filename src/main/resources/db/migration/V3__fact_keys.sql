@@ -0,0 +1,52 @@
+-- Replace (operation TEXT, operand1, operand2) with a single packed integer fact key.
+-- Encoding matches mathquiz.domain.FactKey:
+--   (operation code << 28) | (first << 14) | operand2, where first is the quotient for division.
+
+-- Spaced repetition stats, clustered on (user_id, fact_key)
+CREATE TABLE problem_stats_v3 (
+    user_id INTEGER NOT NULL,
+    fact_key INTEGER NOT NULL,
+    ease_factor REAL NOT NULL,
+    interval_days REAL NOT NULL,
+    next_review_ts INTEGER,
+    repetitions INTEGER NOT NULL,
+    total_attempts INTEGER NOT NULL,
+    total_correct INTEGER NOT NULL,
+    PRIMARY KEY (user_id, fact_key)
+) WITHOUT ROWID;
+
+INSERT INTO problem_stats_v3 (user_id, fact_key, ease_factor, interval_days, next_review_ts,
+                              repetitions, total_attempts, total_correct)
+SELECT user_id,
+       (CASE operation WHEN 'ADDITION' THEN 0 WHEN 'SUBTRACTION' THEN 1
+                       WHEN 'MULTIPLICATION' THEN 2 WHEN 'DIVISION' THEN 3 END << 28)
+       | (CASE WHEN operation = 'DIVISION' THEN operand1 / operand2 ELSE operand1 END << 14)
+       | operand2,
+       ease_factor, interval_days, next_review_ts, repetitions, total_attempts, total_correct
+FROM problem_stats;
+
+DROP TABLE problem_stats;
+ALTER TABLE problem_stats_v3 RENAME TO problem_stats;
+CREATE INDEX idx_problem_stats_due ON problem_stats(user_id, next_review_ts);
+
+-- Attempt history
+CREATE TABLE attempts_v3 (
+    id INTEGER PRIMARY KEY,
+    user_id INTEGER NOT NULL,
+    ts INTEGER NOT NULL,
+    fact_key INTEGER NOT NULL,
+    correct INTEGER NOT NULL
+);
+
+INSERT INTO attempts_v3 (id, user_id, ts, fact_key, correct)
+SELECT id, user_id, ts,
+       (CASE operation WHEN 'ADDITION' THEN 0 WHEN 'SUBTRACTION' THEN 1
+                       WHEN 'MULTIPLICATION' THEN 2 WHEN 'DIVISION' THEN 3 END << 28)
+       | (CASE WHEN operation = 'DIVISION' THEN operand1 / operand2 ELSE operand1 END << 14)
+       | operand2,
+       correct
+FROM attempts;
+
+DROP TABLE attempts;
+ALTER TABLE attempts_v3 RENAME TO attempts;
+CREATE INDEX idx_attempts_user_ts ON attempts(user_id, ts);
@@ -0,0 +1,16 @@
+-- HTTP sessions, persisted so they survive restarts and can be dropped from memory.
+-- Attributes are stored in the compact encoding of mathquiz.web.SqliteSessionDataStore.
+-- Times are epoch milliseconds; expiry 0 means the session never expires.
+CREATE TABLE sessions (
+    id TEXT PRIMARY KEY,
+    created INTEGER NOT NULL,
+    accessed INTEGER NOT NULL,
+    last_accessed INTEGER NOT NULL,
+    max_inactive_ms INTEGER NOT NULL,
+    expiry INTEGER NOT NULL,
+    cookie_set INTEGER NOT NULL,
+    last_node TEXT,
+    attributes BLOB NOT NULL
+) WITHOUT ROWID;
+
+CREATE INDEX idx_sessions_expiry ON sessions(expiry);
@@ -0,0 +1,7 @@
+-- Per-user sequence of signed quiz state tokens (stateless mode).
+-- Each token carries the sequence it was issued under and is redeemed by advancing it,
+-- so only the latest token is ever accepted.
+CREATE TABLE quiz_state_sequence (
+    user_id INTEGER PRIMARY KEY,
+    sequence INTEGER NOT NULL
+);
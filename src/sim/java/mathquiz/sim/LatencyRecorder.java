@@ -0,0 +1,48 @@
+package mathquiz.sim;
+
+import java.util.Arrays;
+
+/**
+ * Collects call latencies in nanoseconds and reports percentiles.
+ * Not thread-safe - keep one per learner and {@link #merge} at the end.
+ */
+final class LatencyRecorder {
+
+    private long[] samples = new long[256];
+    private int count;
+
+    void record(long nanos) {
+        if (count == samples.length) {
+            samples = Arrays.copyOf(samples, count * 2);
+        }
+        samples[count++] = nanos;
+    }
+
+    void merge(LatencyRecorder other) {
+        for (int i = 0; i < other.count; i++) {
+            record(other.samples[i]);
+        }
+    }
+
+    int count() {
+        return count;
+    }
+
+    /**
+     * Latency at the given percentile (0-100), in microseconds.
+     */
+    double percentileMicros(double percentile) {
+        if (count == 0) {
+            return 0.0;
+        }
+        long[] sorted = Arrays.copyOf(samples, count);
+        Arrays.sort(sorted);
+        int index = (int) Math.ceil(percentile / 100.0 * count) - 1;
+        return sorted[Math.max(0, Math.min(count - 1, index))] / 1000.0;
+    }
+
+    String summary() {
+        return String.format("n=%d p50=%.1fus p90=%.1fus p99=%.1fus max=%.1fus",
+                count, percentileMicros(50), percentileMicros(90), percentileMicros(99), percentileMicros(100));
+    }
+}
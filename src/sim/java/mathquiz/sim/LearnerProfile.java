@@ -0,0 +1,33 @@
+package mathquiz.sim;
+
+import java.util.Random;
+
+/**
+ * Skill and forgetting parameters of a virtual learner.
+ *
+ * @param baseSkill        chance of knowing an unseen fact with a small answer (0-1)
+ * @param difficultyPenalty drop in that chance per unit of the answer's size
+ * @param stabilityDays    how long a freshly learned fact stays remembered, before any review
+ * @param growth           factor stability grows by after each correct answer
+ */
+record LearnerProfile(double baseSkill, double difficultyPenalty, double stabilityDays, double growth) {
+
+    /** Default center of the learner population */
+    static final LearnerProfile TYPICAL = new LearnerProfile(0.75, 0.02, 0.5, 1.8);
+
+    /**
+     * Draw a learner around this profile, each parameter within ±30%.
+     */
+    LearnerProfile sample(Random random) {
+        return new LearnerProfile(
+            Math.min(0.98, baseSkill * spread(random)),
+            difficultyPenalty * spread(random),
+            stabilityDays * spread(random),
+            1.0 + (growth - 1.0) * spread(random)
+        );
+    }
+
+    private static double spread(Random random) {
+        return 0.7 + 0.6 * random.nextDouble();
+    }
+}
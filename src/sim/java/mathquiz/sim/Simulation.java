@@ -0,0 +1,245 @@
+package mathquiz.sim;
+
+import mathquiz.domain.DifficultyManager;
+import mathquiz.domain.Operation;
+import mathquiz.domain.Problem;
+import mathquiz.service.AnswerResult;
+import mathquiz.service.QuizService;
+import mathquiz.storage.DatabaseSetup;
+import mathquiz.storage.Repository;
+import mathquiz.storage.SqliteRepository;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.time.Instant;
+import java.time.ZoneId;
+import java.util.ArrayList;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * Drives {@link QuizService} with a population of {@link VirtualLearner}s and reports
+ * throughput, per-call latency and learning outcomes.
+ *
+ * <p>Each learner gets its own user, seed and {@link SimClock}: sessions of answers a few
+ * seconds apart, a day between sessions, and a fresh QuizService per session as when a
+ * player comes back. Outcomes depend only on the seed, so runs are repeatable; timings
+ * are whatever the machine gives.
+ *
+ * <p>Configured through environment variables, like the app:
+ * SIM_LEARNERS (1000), SIM_SESSIONS (10), SIM_ANSWERS (30 per session), SIM_THREADS (4),
+ * SIM_SEED (42) and SIM_DB ({@code memory}, {@code file} or {@code both}, the default).
+ * The learner population is centered on SIM_SKILL, SIM_DIFFICULTY_PENALTY, SIM_STABILITY_DAYS
+ * and SIM_GROWTH (see {@link LearnerProfile} for meanings and defaults).
+ */
+public final class Simulation {
+
+    private static final Instant START = Instant.parse("2024-09-02T15:00:00Z");
+    private static final ZoneId ZONE = ZoneId.of("Europe/Tallinn");
+
+    record Config(int learners, int sessions, int answersPerSession, int threads, long seed,
+                  LearnerProfile population) {
+        static Config fromEnv() {
+            LearnerProfile typical = LearnerProfile.TYPICAL;
+            return new Config(
+                intEnv("SIM_LEARNERS", 1000),
+                intEnv("SIM_SESSIONS", 10),
+                intEnv("SIM_ANSWERS", 30),
+                intEnv("SIM_THREADS", 4),
+                intEnv("SIM_SEED", 42),
+                new LearnerProfile(
+                    doubleEnv("SIM_SKILL", typical.baseSkill()),
+                    doubleEnv("SIM_DIFFICULTY_PENALTY", typical.difficultyPenalty()),
+                    doubleEnv("SIM_STABILITY_DAYS", typical.stabilityDays()),
+                    doubleEnv("SIM_GROWTH", typical.growth())
+                )
+            );
+        }
+
+        private static int intEnv(String name, int defaultValue) {
+            return Integer.parseInt(System.getenv().getOrDefault(name, String.valueOf(defaultValue)));
+        }
+
+        private static double doubleEnv(String name, double defaultValue) {
+            return Double.parseDouble(System.getenv().getOrDefault(name, String.valueOf(defaultValue)));
+        }
+    }
+
+    /**
+     * What one learner did and ended up with.
+     */
+    private record LearnerOutcome(
+        int firstSessionCorrect,
+        int lastSessionCorrect,
+        int unlockedOperations,
+        Map<Operation, Integer> maxNumbers,
+        int totalStars,
+        LatencyRecorder nextProblem,
+        LatencyRecorder submitAnswer
+    ) {}
+
+    private Simulation() {}
+
+    public static void main(String[] args) throws Exception {
+        Config config = Config.fromEnv();
+        String mode = System.getenv().getOrDefault("SIM_DB", "both");
+
+        System.out.printf("Simulating %d learners x %d sessions x %d answers on %d threads (seed %d)%n",
+                config.learners(), config.sessions(), config.answersPerSession(), config.threads(), config.seed());
+        System.out.printf("Learner population around %s%n", config.population());
+
+        if (mode.equals("memory") || mode.equals("both")) {
+            try (var db = DatabaseSetup.setupInMemory()) {
+                run("in-memory", config, db);
+            }
+        }
+        if (mode.equals("file") || mode.equals("both")) {
+            Path dir = Files.createTempDirectory("mathquiz-sim");
+            try (var db = DatabaseSetup.setup(dir.resolve("quiz.db"))) {
+                run("file", config, db);
+            } finally {
+                deleteRecursively(dir);
+            }
+        }
+    }
+
+    private static void run(String label, Config config, DatabaseSetup.SetupResult db) throws Exception {
+        Repository repo = new SqliteRepository(db.jdbi(), db.readJdbi());
+        List<Integer> userIds = new ArrayList<>();
+        for (int i = 0; i < config.learners(); i++) {
+            userIds.add(repo.createUser("sim-" + i).id());
+        }
+
+        ExecutorService executor = Executors.newFixedThreadPool(config.threads());
+        List<LearnerOutcome> outcomes = new ArrayList<>();
+        long start = System.nanoTime();
+        try {
+            List<Future<LearnerOutcome>> futures = new ArrayList<>();
+            for (int i = 0; i < userIds.size(); i++) {
+                int userId = userIds.get(i);
+                long seed = config.seed() * 1_000_003L + i;
+                futures.add(executor.submit(() -> simulateLearner(repo, userId, seed, config)));
+            }
+            for (Future<LearnerOutcome> future : futures) {
+                outcomes.add(future.get());
+            }
+        } catch (ExecutionException e) {
+            throw new IllegalStateException("Learner failed", e.getCause());
+        } finally {
+            executor.shutdown();
+        }
+        double seconds = (System.nanoTime() - start) / 1e9;
+
+        report(label, config, outcomes, seconds);
+    }
+
+    private static LearnerOutcome simulateLearner(Repository repo, int userId, long seed, Config config) {
+        Random random = new Random(seed);
+        VirtualLearner learner = new VirtualLearner(config.population().sample(random), random);
+        SimClock clock = new SimClock(START.plusSeconds(random.nextInt(3600)), ZONE);
+        LatencyRecorder nextProblem = new LatencyRecorder();
+        LatencyRecorder submitAnswer = new LatencyRecorder();
+
+        int firstSessionCorrect = 0;
+        int lastSessionCorrect = 0;
+        QuizService service = null;
+        for (int session = 0; session < config.sessions(); session++) {
+            service = new QuizService(repo, userId, clock, new Random(random.nextLong()));
+            int correct = 0;
+            for (int i = 0; i < config.answersPerSession(); i++) {
+                long t0 = System.nanoTime();
+                Problem problem = service.getNextProblem(null);
+                long t1 = System.nanoTime();
+                int answer = learner.answer(problem, clock.instant().getEpochSecond());
+                long t2 = System.nanoTime();
+                AnswerResult result = service.submitAnswer(answer);
+                long t3 = System.nanoTime();
+
+                nextProblem.record(t1 - t0);
+                submitAnswer.record(t3 - t2);
+                if (result.correct()) {
+                    correct++;
+                }
+                clock.advance(Duration.ofSeconds(4 + random.nextInt(12)));
+            }
+            if (session == 0) {
+                firstSessionCorrect = correct;
+            }
+            lastSessionCorrect = correct;
+            // Come back around the same time the next day
+            clock.advance(Duration.ofHours(20).plusMinutes(random.nextInt(8 * 60)));
+        }
+
+        Map<Operation, Integer> maxNumbers = new EnumMap<>(Operation.class);
+        int unlocked = 0;
+        int totalStars = 0;
+        if (service != null) {
+            DifficultyManager difficulty = service.difficulty();
+            for (Operation op : Operation.values()) {
+                maxNumbers.put(op, difficulty.getProgress(op).maxNumber());
+            }
+            unlocked = difficulty.unlockedCount();
+            totalStars = service.getTotalStars();
+        }
+        return new LearnerOutcome(firstSessionCorrect, lastSessionCorrect, unlocked, maxNumbers,
+                totalStars, nextProblem, submitAnswer);
+    }
+
+    private static void report(String label, Config config, List<LearnerOutcome> outcomes, double seconds) {
+        LatencyRecorder nextProblem = new LatencyRecorder();
+        LatencyRecorder submitAnswer = new LatencyRecorder();
+        double firstAccuracy = 0;
+        double lastAccuracy = 0;
+        double unlocked = 0;
+        double stars = 0;
+        Map<Operation, Double> maxNumbers = new EnumMap<>(Operation.class);
+        for (LearnerOutcome outcome : outcomes) {
+            nextProblem.merge(outcome.nextProblem());
+            submitAnswer.merge(outcome.submitAnswer());
+            firstAccuracy += outcome.firstSessionCorrect();
+            lastAccuracy += outcome.lastSessionCorrect();
+            unlocked += outcome.unlockedOperations();
+            stars += outcome.totalStars();
+            outcome.maxNumbers().forEach((op, max) -> maxNumbers.merge(op, (double) max, Double::sum));
+        }
+        int n = Math.max(1, outcomes.size());
+        double perSession = Math.max(1, config.answersPerSession());
+        long answers = submitAnswer.count();
+
+        System.out.printf("%n== %s database ==%n", label);
+        System.out.printf("answers:          %d in %.2f s (%.0f answers/s)%n", answers, seconds, answers / seconds);
+        System.out.printf("getNextProblem:   %s%n", nextProblem.summary());
+        System.out.printf("submitAnswer:     %s%n", submitAnswer.summary());
+        System.out.printf("accuracy:         first session %.1f%%, last session %.1f%%%n",
+                100 * firstAccuracy / n / perSession, 100 * lastAccuracy / n / perSession);
+        System.out.printf("unlocked ops:     %.2f avg, stars %.1f avg%n", unlocked / n, stars / n);
+        StringBuilder ranges = new StringBuilder();
+        for (Operation op : Operation.values()) {
+            ranges.append(String.format(" %s=%.1f", op.name().toLowerCase(), maxNumbers.getOrDefault(op, 0.0) / n));
+        }
+        System.out.printf("avg max number:  %s%n", ranges);
+    }
+
+    private static void deleteRecursively(Path dir) {
+        try (var paths = Files.walk(dir)) {
+            paths.sorted((a, b) -> b.getNameCount() - a.getNameCount()).forEach(path -> {
+                try {
+                    Files.deleteIfExists(path);
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+            });
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+}
@@ -0,0 +1,68 @@
+package mathquiz.sim;
+
+import mathquiz.domain.FactKey;
+import mathquiz.domain.Problem;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Random;
+
+/**
+ * Simulated learner with per-fact memory that decays on an exponential forgetting curve.
+ *
+ * <p>An unseen fact is known with a prior that falls as the answer gets larger. Once seen,
+ * the chance of answering correctly is the better of that prior and the current retention
+ * {@code exp(-elapsed / stability)}. Correct answers grow the fact's stability by the
+ * profile's growth factor; mistakes halve it.
+ */
+final class VirtualLearner {
+
+    private static final double MIN_PRIOR = 0.05;
+    private static final double MIN_STABILITY_DAYS = 0.01;
+
+    private final LearnerProfile profile;
+    private final Random random;
+    private final Map<Integer, Memory> memories = new HashMap<>();
+
+    private static final class Memory {
+        double stabilityDays;
+        long lastSeenSeconds;
+    }
+
+    VirtualLearner(LearnerProfile profile, Random random) {
+        this.profile = profile;
+        this.random = random;
+    }
+
+    /**
+     * Answer a problem at the given time, updating memory of the fact.
+     */
+    int answer(Problem problem, long nowSeconds) {
+        int key = FactKey.of(problem);
+        boolean correct = random.nextDouble() < chanceCorrect(problem, key, nowSeconds);
+
+        Memory memory = memories.computeIfAbsent(key, k -> {
+            Memory m = new Memory();
+            m.stabilityDays = profile.stabilityDays();
+            return m;
+        });
+        if (correct) {
+            memory.stabilityDays *= profile.growth();
+        } else {
+            memory.stabilityDays = Math.max(MIN_STABILITY_DAYS, memory.stabilityDays / 2);
+        }
+        memory.lastSeenSeconds = nowSeconds;
+
+        return correct ? problem.answer() : problem.answer() + 1 + random.nextInt(3);
+    }
+
+    private double chanceCorrect(Problem problem, int key, long nowSeconds) {
+        double prior = Math.max(MIN_PRIOR, profile.baseSkill() - profile.difficultyPenalty() * problem.answer());
+        Memory memory = memories.get(key);
+        if (memory == null) {
+            return prior;
+        }
+        double elapsedDays = (nowSeconds - memory.lastSeenSeconds) / 86_400.0;
+        return Math.max(prior, Math.exp(-elapsedDays / memory.stabilityDays));
+    }
+}
@@ -2,6 +2,8 @@ package mathquiz.domain;
 
 import org.junit.jupiter.api.Test;
 
+import java.util.EnumMap;
+
 import static mathquiz.domain.OperationProgress.*;
 import static org.assertj.core.api.Assertions.assertThat;
 
@@ -72,9 +74,11 @@ class DifficultyManagerTest {
         }
 
         // This should trigger expansion
-        boolean result = dm.recordAttempt(Operation.ADDITION, true);
+        Progression result = dm.recordAttempt(Operation.ADDITION, true);
         
-        assertThat(result).isTrue();
+        assertThat(result.progressed()).isTrue();
+        assertThat(result.rangeExpanded()).isTrue();
+        assertThat(result.newlyUnlocked()).isNull();
         assertThat(prog.maxNumber()).isGreaterThan(originalMax);
     }
 
@@ -96,7 +100,9 @@ class DifficultyManagerTest {
         }
 
         // This should trigger expansion and unlock subtraction
-        dm.recordAttempt(Operation.ADDITION, true);
+        Progression result = dm.recordAttempt(Operation.ADDITION, true);
+
+        assertThat(result).isEqualTo(Progression.unlocked(Operation.SUBTRACTION));
 
         assertThat(addProgress.maxNumber()).isGreaterThanOrEqualTo(RANGE_TO_UNLOCK_NEXT_OP);
         assertThat(dm.isUnlocked(Operation.SUBTRACTION)).isTrue();
@@ -115,4 +121,82 @@ class DifficultyManagerTest {
         // Range should not have expanded
         assertThat(prog.maxNumber()).isEqualTo(5);
     }
+
+    @Test
+    void newManagerOnlyHasAdditionDirty() {
+        var dm = new DifficultyManager();
+
+        assertThat(dm.dirtyMask()).isEqualTo(1 << Operation.ADDITION.ordinal());
+    }
+
+    @Test
+    void loadedManagerStartsClean() {
+        var progress = new EnumMap<Operation, OperationProgress>(Operation.class);
+        for (Operation op : Operation.values()) {
+            progress.put(op, new OperationProgress(op, 5, op == Operation.ADDITION, false, 3, 2));
+        }
+
+        var dm = new DifficultyManager(progress);
+
+        assertThat(dm.isDirty()).isFalse();
+    }
+
+    @Test
+    void recordAttemptMarksOnlyThatOperationDirty() {
+        var dm = new DifficultyManager();
+        dm.markSaved(dm.dirtyMask());
+
+        dm.recordAttempt(Operation.ADDITION, true);
+
+        assertThat(dm.dirtyMask()).isEqualTo(1 << Operation.ADDITION.ordinal());
+    }
+
+    @Test
+    void markSavedClearsOnlyGivenOperations() {
+        var dm = new DifficultyManager();
+        dm.unlockOperation(Operation.DIVISION);
+        int additionBit = 1 << Operation.ADDITION.ordinal();
+        int divisionBit = 1 << Operation.DIVISION.ordinal();
+
+        dm.markSaved(additionBit);
+
+        assertThat(dm.dirtyMask()).isEqualTo(divisionBit);
+    }
+
+    @Test
+    void attemptWithoutExpansionReportsNoProgression() {
+        var dm = new DifficultyManager();
+
+        assertThat(dm.recordAttempt(Operation.ADDITION, true)).isSameAs(Progression.NONE);
+        assertThat(Progression.NONE.progressed()).isFalse();
+    }
+
+    @Test
+    void unlockedOperationsAreSharedPerMask() {
+        var dm = new DifficultyManager();
+        var before = dm.getUnlockedOperations();
+
+        assertThat(dm.getUnlockedOperations()).isSameAs(before);
+        assertThat(dm.unlockedMask()).isEqualTo(1 << Operation.ADDITION.ordinal());
+
+        dm.unlockOperation(Operation.DIVISION);
+
+        assertThat(dm.getUnlockedOperations()).containsExactly(Operation.ADDITION, Operation.DIVISION);
+        assertThat(dm.unlockedCount()).isEqualTo(2);
+        assertThat(dm.isUnlocked(Operation.DIVISION)).isTrue();
+    }
+
+    @Test
+    void loadedManagerDerivesUnlockedMask() {
+        var progress = new EnumMap<Operation, OperationProgress>(Operation.class);
+        for (Operation op : Operation.values()) {
+            progress.put(op, new OperationProgress(op, 5, op != Operation.SUBTRACTION, false, 0, 0));
+        }
+
+        var dm = new DifficultyManager(progress);
+
+        assertThat(dm.getUnlockedOperations())
+            .containsExactly(Operation.ADDITION, Operation.MULTIPLICATION, Operation.DIVISION);
+        assertThat(dm.isUnlocked(Operation.SUBTRACTION)).isFalse();
+    }
 }
@@ -0,0 +1,69 @@
+package mathquiz.domain;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.HashSet;
+import java.util.Set;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+class FactKeyTest {
+
+    @Test
+    void roundTripsEveryPoolProblem() {
+        Set<Integer> keys = new HashSet<>();
+        int count = 0;
+        for (Operation op : Operation.values()) {
+            for (Problem p : ProblemPool.forOperation(op, 20).all()) {
+                int key = FactKey.of(p);
+                assertThat(FactKey.operation(key)).isEqualTo(op);
+                assertThat(FactKey.operand1(key)).isEqualTo(p.operand1());
+                assertThat(FactKey.operand2(key)).isEqualTo(p.operand2());
+                keys.add(key);
+                count++;
+            }
+        }
+        assertThat(keys).hasSize(count);
+    }
+
+    @Test
+    void divisionStoresQuotient() {
+        int key = FactKey.of(Operation.DIVISION, 42, 6);
+        assertThat((key >>> 14) & FactKey.MAX_OPERAND).isEqualTo(7);
+        assertThat(FactKey.operand1(key)).isEqualTo(42);
+    }
+
+    @Test
+    void keysArePositive() {
+        int key = FactKey.of(Operation.DIVISION, FactKey.MAX_OPERAND * FactKey.MAX_OPERAND, FactKey.MAX_OPERAND);
+        assertThat(key).isPositive();
+    }
+
+    @Test
+    void rejectsInexactDivision() {
+        assertThatThrownBy(() -> FactKey.of(Operation.DIVISION, 7, 2))
+            .isInstanceOf(IllegalArgumentException.class);
+    }
+
+    @Test
+    void rejectsOperandsOutOfRange() {
+        assertThatThrownBy(() -> FactKey.of(Operation.ADDITION, FactKey.MAX_OPERAND + 1, 1))
+            .isInstanceOf(IllegalArgumentException.class);
+        assertThatThrownBy(() -> FactKey.of(Operation.ADDITION, 1, -1))
+            .isInstanceOf(IllegalArgumentException.class);
+    }
+
+    @Test
+    void answerAndCheckMatchProblem() {
+        for (Operation op : Operation.values()) {
+            for (Problem p : ProblemPool.forOperation(op, 12).all()) {
+                int key = FactKey.of(p);
+                assertThat(FactKey.answer(key)).isEqualTo(p.answer());
+                assertThat(FactKey.check(key, p.answer())).isTrue();
+                assertThat(FactKey.check(key, p.answer() + 1)).isFalse();
+                assertThat(FactKey.toProblem(key)).isEqualTo(p);
+            }
+        }
+    }
+}
@@ -0,0 +1,125 @@
+package mathquiz.domain;
+
+import org.junit.jupiter.api.Test;
+
+import java.time.Instant;
+import java.util.List;
+import java.util.Random;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+class FactSamplerTest {
+
+    private static final Instant NOW = Instant.parse("2024-06-15T10:00:00Z");
+
+    private static ProblemStats stats(Operation op, int a, int b, double ease, int attempts, int correct) {
+        return new ProblemStats(op, a, b, ease, 1.0, NOW, 1, attempts, correct);
+    }
+
+    @Test
+    void weightFavoursWeakFacts() {
+        int strong = FactSampler.weight(stats(Operation.ADDITION, 1, 1, ProblemStats.DEFAULT_EASE, 10, 10));
+        int weak = FactSampler.weight(stats(Operation.ADDITION, 1, 1, SpacedRepetition.MIN_EASE, 10, 0));
+
+        assertThat(strong).isEqualTo(1);
+        assertThat(weak).isEqualTo(13);
+        assertThat(FactSampler.weight(null)).isEqualTo(FactSampler.UNSEEN_WEIGHT);
+    }
+
+    @Test
+    void unseenSpaceIsUniform() {
+        var space = ProblemSpace.of(Operation.MULTIPLICATION, 3);
+        var sampler = new FactSampler(space, new ReviewQueue());
+        int[] counts = new int[space.size()];
+        var random = new Random(42);
+
+        for (int i = 0; i < 9000; i++) {
+            counts[space.indexOf(sampler.sampleKey(random))]++;
+        }
+
+        assertThat(sampler.totalWeight()).isEqualTo(9L * FactSampler.UNSEEN_WEIGHT);
+        for (int count : counts) {
+            assertThat(count).isBetween(850, 1150);
+        }
+    }
+
+    @Test
+    void weakFactComesUpMoreOften() {
+        var space = ProblemSpace.of(Operation.ADDITION, 5);
+        var reviews = new ReviewQueue(List.of(
+            stats(Operation.ADDITION, 2, 2, SpacedRepetition.MIN_EASE, 10, 0),
+            stats(Operation.ADDITION, 1, 1, ProblemStats.DEFAULT_EASE, 10, 10)
+        ));
+        var sampler = new FactSampler(space, reviews);
+        int weakKey = FactKey.of(Operation.ADDITION, 2, 2);
+        int strongKey = FactKey.of(Operation.ADDITION, 1, 1);
+        var random = new Random(7);
+        int weak = 0;
+        int strong = 0;
+
+        for (int i = 0; i < 10_000; i++) {
+            int key = sampler.sampleKey(random);
+            if (key == weakKey) {
+                weak++;
+            } else if (key == strongKey) {
+                strong++;
+            }
+        }
+
+        // Weights: 13 for 2+2, 1 for 1+1, 4 for each of the other 8 facts (total 46)
+        assertThat(sampler.totalWeight()).isEqualTo(46);
+        assertThat(weak).isBetween(2500, 3150);
+        assertThat(strong).isBetween(120, 320);
+    }
+
+    @Test
+    void updateChangesWeightInPlace() {
+        var space = ProblemSpace.of(Operation.SUBTRACTION, 6);
+        var sampler = new FactSampler(space, new ReviewQueue());
+        long before = sampler.totalWeight();
+        int index = space.indexOf(FactKey.of(Operation.SUBTRACTION, 5, 3));
+
+        sampler.update(stats(Operation.SUBTRACTION, 5, 3, SpacedRepetition.MIN_EASE, 4, 0));
+
+        assertThat(sampler.weightAt(index)).isEqualTo(13);
+        assertThat(sampler.totalWeight()).isEqualTo(before - FactSampler.UNSEEN_WEIGHT + 13);
+    }
+
+    @Test
+    void updateOutsideSpaceIsIgnored() {
+        var sampler = new FactSampler(ProblemSpace.of(Operation.ADDITION, 5), new ReviewQueue());
+        long before = sampler.totalWeight();
+
+        sampler.update(stats(Operation.ADDITION, 9, 9, SpacedRepetition.MIN_EASE, 4, 0));
+        sampler.update(stats(Operation.DIVISION, 4, 2, SpacedRepetition.MIN_EASE, 4, 0));
+
+        assertThat(sampler.totalWeight()).isEqualTo(before);
+    }
+
+    @Test
+    void sampleMatchesPrefixSums() {
+        // Every key in the space must be reachable, and nothing outside it
+        var space = ProblemSpace.of(Operation.DIVISION, 5);
+        var sampler = new FactSampler(space, new ReviewQueue());
+        var random = new Random(3);
+        boolean[] seen = new boolean[space.size()];
+
+        for (int i = 0; i < 5000; i++) {
+            int index = space.indexOf(sampler.sampleKey(random));
+            assertThat(index).isBetween(0, space.size() - 1);
+            seen[index] = true;
+        }
+        for (boolean s : seen) {
+            assertThat(s).isTrue();
+        }
+    }
+
+    @Test
+    void emptySpaceCannotBeSampled() {
+        var sampler = new FactSampler(ProblemSpace.of(Operation.ADDITION, 1), new ReviewQueue());
+
+        assertThatThrownBy(() -> sampler.sampleKey(new Random()))
+            .isInstanceOf(IllegalStateException.class);
+    }
+}
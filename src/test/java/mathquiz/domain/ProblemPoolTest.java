@@ -5,6 +5,7 @@ import org.junit.jupiter.api.Test;
 import java.util.Random;
 
 import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
 
 class ProblemPoolTest {
 
@@ -105,4 +106,41 @@ class ProblemPoolTest {
         assertThat(ProblemPool.forOperation(Operation.DIVISION, 5).operation())
             .isEqualTo(Operation.DIVISION);
     }
+
+    @Test
+    void poolsAreSharedPerOperationAndRange() {
+        var pool = ProblemPool.forOperation(Operation.MULTIPLICATION, 7);
+
+        assertThat(ProblemPool.forOperation(Operation.MULTIPLICATION, 7)).isSameAs(pool);
+        assertThat(ProblemPool.forMultiplication(7)).isSameAs(pool);
+        assertThat(ProblemPool.forOperation(Operation.MULTIPLICATION, 8)).isNotSameAs(pool);
+        assertThat(ProblemPool.forOperation(Operation.DIVISION, 7)).isNotSameAs(pool);
+    }
+
+    @Test
+    void sharedPoolIsUnmodifiable() {
+        var pool = ProblemPool.forAddition(5);
+
+        assertThatThrownBy(() -> pool.all().clear())
+            .isInstanceOf(UnsupportedOperationException.class);
+    }
+
+    @Test
+    void pickRandomDoesNotNeedLargeRangeMaterialized() {
+        var pool = ProblemPool.forMultiplication(1000);
+
+        assertThat(pool.size()).isEqualTo(1_000_000);
+        assertThat(pool.pickRandom(new Random(1)).operand1()).isBetween(1, 1000);
+        assertThat(pool.space()).isEqualTo(new ProblemSpace.Multiplication(1000));
+    }
+
+    @Test
+    void pickRandomKeyMatchesPickRandom() {
+        var pool = ProblemPool.forSubtraction(12);
+
+        int key = pool.pickRandomKey(new Random(7));
+
+        assertThat(FactKey.toProblem(key)).isEqualTo(pool.pickRandom(new Random(7)));
+        assertThat(pool.all()).contains(FactKey.toProblem(key));
+    }
 }
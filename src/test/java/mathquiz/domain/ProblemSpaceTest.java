@@ -0,0 +1,118 @@
+package mathquiz.domain;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+class ProblemSpaceTest {
+
+    /** Straightforward enumeration the spaces must agree with, in order */
+    private static List<Problem> enumerate(Operation op, int n) {
+        List<Problem> problems = new ArrayList<>();
+        switch (op) {
+            case ADDITION -> {
+                for (int a = 1; a <= n - 1; a++) {
+                    for (int b = 1; b <= n - a; b++) {
+                        problems.add(new Problem(a, b, op));
+                    }
+                }
+            }
+            case SUBTRACTION -> {
+                for (int a = 2; a <= n; a++) {
+                    for (int b = 1; b < a; b++) {
+                        problems.add(new Problem(a, b, op));
+                    }
+                }
+            }
+            case MULTIPLICATION -> {
+                for (int a = 1; a <= n; a++) {
+                    for (int b = 1; b <= n; b++) {
+                        problems.add(new Problem(a, b, op));
+                    }
+                }
+            }
+            case DIVISION -> {
+                for (int d = 1; d <= n; d++) {
+                    for (int q = 1; q <= n; q++) {
+                        problems.add(new Problem(d * q, d, op));
+                    }
+                }
+            }
+        }
+        return problems;
+    }
+
+    @Test
+    void unrankingMatchesEnumeration() {
+        for (Operation op : Operation.values()) {
+            for (int n = 0; n <= 40; n++) {
+                var space = ProblemSpace.of(op, n);
+                var expected = enumerate(op, n);
+
+                assertThat(space.size()).as("%s %d", op, n).isEqualTo(expected.size());
+                for (int i = 0; i < expected.size(); i++) {
+                    assertThat(space.problemAt(i)).isEqualTo(expected.get(i));
+                }
+            }
+        }
+    }
+
+    @Test
+    void largeRangesHaveClosedFormSize() {
+        assertThat(ProblemSpace.of(Operation.ADDITION, 1000).size()).isEqualTo(999 * 1000 / 2);
+        assertThat(ProblemSpace.of(Operation.SUBTRACTION, 1000).size()).isEqualTo(999 * 1000 / 2);
+        assertThat(ProblemSpace.of(Operation.MULTIPLICATION, 1000).size()).isEqualTo(1_000_000);
+        assertThat(ProblemSpace.of(Operation.DIVISION, 1000).size()).isEqualTo(1_000_000);
+    }
+
+    @Test
+    void randomIndexesInLargeRangeStayInBounds() {
+        var space = ProblemSpace.of(Operation.ADDITION, 1000);
+        var random = new Random(42);
+
+        for (int i = 0; i < 10_000; i++) {
+            var p = space.problemAt(random.nextInt(space.size()));
+            assertThat(p.operand1()).isGreaterThanOrEqualTo(1);
+            assertThat(p.operand2()).isGreaterThanOrEqualTo(1);
+            assertThat(p.answer()).isLessThanOrEqualTo(1000);
+        }
+        assertThat(space.problemAt(0)).isEqualTo(new Problem(1, 1, Operation.ADDITION));
+        assertThat(space.problemAt(space.size() - 1)).isEqualTo(new Problem(999, 1, Operation.ADDITION));
+    }
+
+    @Test
+    void rejectsIndexOutOfRange() {
+        var space = ProblemSpace.of(Operation.MULTIPLICATION, 3);
+
+        assertThatThrownBy(() -> space.problemAt(9)).isInstanceOf(IndexOutOfBoundsException.class);
+        assertThatThrownBy(() -> space.problemAt(-1)).isInstanceOf(IndexOutOfBoundsException.class);
+    }
+
+    @Test
+    void indexOfInvertsKeyAt() {
+        for (Operation op : Operation.values()) {
+            for (int n = 0; n <= 25; n++) {
+                var space = ProblemSpace.of(op, n);
+                for (int i = 0; i < space.size(); i++) {
+                    assertThat(space.indexOf(space.keyAt(i))).isEqualTo(i);
+                }
+            }
+        }
+    }
+
+    @Test
+    void indexOfRejectsProblemsOutsideSpace() {
+        var addition = ProblemSpace.of(Operation.ADDITION, 10);
+        assertThat(addition.indexOf(FactKey.of(Operation.ADDITION, 6, 5))).isEqualTo(-1);
+        assertThat(addition.indexOf(FactKey.of(Operation.SUBTRACTION, 6, 5))).isEqualTo(-1);
+        assertThat(ProblemSpace.of(Operation.SUBTRACTION, 10).indexOf(FactKey.of(Operation.SUBTRACTION, 5, 5)))
+            .isEqualTo(-1);
+        assertThat(ProblemSpace.of(Operation.DIVISION, 5).indexOf(FactKey.of(Operation.DIVISION, 30, 5)))
+            .isEqualTo(-1);
+    }
+}
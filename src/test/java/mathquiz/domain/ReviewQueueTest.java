@@ -0,0 +1,163 @@
+package mathquiz.domain;
+
+import org.junit.jupiter.api.Test;
+
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.EnumSet;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class ReviewQueueTest {
+
+    private static final Instant NOW = Instant.parse("2024-06-15T10:00:00Z");
+    private static final Set<Operation> ALL = EnumSet.allOf(Operation.class);
+
+    private static ProblemStats stats(Operation op, int a, int b, Instant nextReview) {
+        return new ProblemStats(op, a, b, 2.5, 1.0, nextReview, 1, 1, 1);
+    }
+
+    @Test
+    void emptyQueueHasNothingDue() {
+        var queue = new ReviewQueue();
+
+        assertThat(queue.nextDue(NOW, ALL)).isEmpty();
+        assertThat(queue.size()).isZero();
+    }
+
+    @Test
+    void returnsMostOverdueFirst() {
+        var queue = new ReviewQueue(List.of(
+            stats(Operation.ADDITION, 1, 1, NOW.minusSeconds(60)),
+            stats(Operation.ADDITION, 2, 2, NOW.minusSeconds(3600)),
+            stats(Operation.ADDITION, 3, 3, NOW.plusSeconds(60))
+        ));
+
+        assertThat(queue.nextDue(NOW, ALL)).get()
+            .extracting(ProblemStats::operand1).isEqualTo(2);
+    }
+
+    @Test
+    void neverReviewedComesFirst() {
+        var queue = new ReviewQueue(List.of(
+            stats(Operation.ADDITION, 1, 1, NOW.minusSeconds(3600)),
+            ProblemStats.newStats(Operation.ADDITION, 4, 4)
+        ));
+
+        assertThat(queue.nextDue(NOW, ALL)).get()
+            .extracting(ProblemStats::operand1).isEqualTo(4);
+    }
+
+    @Test
+    void notDueProblemsAreSkipped() {
+        var queue = new ReviewQueue(List.of(stats(Operation.ADDITION, 1, 1, NOW.plusSeconds(60))));
+
+        assertThat(queue.nextDue(NOW, ALL)).isEmpty();
+        assertThat(queue.nextDue(NOW.plusSeconds(60), ALL)).isPresent();
+    }
+
+    @Test
+    void onlyConsidersRequestedOperations() {
+        var queue = new ReviewQueue(List.of(
+            stats(Operation.MULTIPLICATION, 2, 3, NOW.minusSeconds(3600)),
+            stats(Operation.ADDITION, 1, 1, NOW.minusSeconds(60))
+        ));
+
+        assertThat(queue.nextDue(NOW, List.of(Operation.ADDITION))).get()
+            .extracting(ProblemStats::operation).isEqualTo(Operation.ADDITION);
+        assertThat(queue.nextDue(NOW, List.of(Operation.DIVISION))).isEmpty();
+    }
+
+    @Test
+    void updateReplacesExistingStats() {
+        var queue = new ReviewQueue(List.of(
+            stats(Operation.ADDITION, 1, 1, NOW.minusSeconds(3600)),
+            stats(Operation.ADDITION, 2, 2, NOW.minusSeconds(60))
+        ));
+
+        // Answering 1+1 pushes it into the future
+        queue.update(stats(Operation.ADDITION, 1, 1, NOW.plusSeconds(3600)));
+
+        assertThat(queue.size()).isEqualTo(2);
+        assertThat(queue.get(Operation.ADDITION, 1, 1)).get()
+            .extracting(ProblemStats::nextReview).isEqualTo(NOW.plusSeconds(3600));
+        assertThat(queue.nextDue(NOW, ALL)).get()
+            .extracting(ProblemStats::operand1).isEqualTo(2);
+    }
+
+    @Test
+    void getUnknownProblemReturnsEmpty() {
+        var queue = new ReviewQueue();
+
+        assertThat(queue.get(Operation.ADDITION, 1, 2)).isEmpty();
+    }
+
+    @Test
+    void matchesSortedOrderUnderRandomUpdates() {
+        var random = new Random(42);
+        var queue = new ReviewQueue();
+        List<ProblemStats> latest = new ArrayList<>();
+
+        for (int i = 0; i < 500; i++) {
+            int a = 1 + random.nextInt(10);
+            int b = 1 + random.nextInt(10);
+            var s = stats(Operation.ADDITION, a, b, NOW.plusSeconds(random.nextInt(2000) - 1000));
+            queue.update(s);
+            latest.removeIf(x -> x.operand1() == a && x.operand2() == b);
+            latest.add(s);
+
+            var expected = latest.stream()
+                .filter(x -> x.isDue(NOW))
+                .map(ProblemStats::nextReview)
+                .min(Instant::compareTo);
+            assertThat(queue.nextDue(NOW, ALL).map(ProblemStats::nextReview)).isEqualTo(expected);
+        }
+        assertThat(queue.size()).isEqualTo(latest.size());
+    }
+
+    @Test
+    void nextDueKeyIdentifiesProblem() {
+        var queue = new ReviewQueue(List.of(stats(Operation.DIVISION, 42, 6, NOW.minusSeconds(60))));
+
+        int key = queue.nextDueKey(NOW, ALL);
+
+        assertThat(key).isEqualTo(FactKey.of(Operation.DIVISION, 42, 6));
+        assertThat(queue.get(key)).isPresent();
+        assertThat(queue.nextDueKey(NOW.minusSeconds(120), ALL)).isEqualTo(FactKey.NONE);
+    }
+
+    @Test
+    void ordersBySubSecondReviewTimes() {
+        var queue = new ReviewQueue(List.of(
+            stats(Operation.ADDITION, 1, 1, NOW.plusMillis(700)),
+            stats(Operation.ADDITION, 2, 2, NOW.plusMillis(300))
+        ));
+
+        assertThat(queue.nextDue(NOW.plusMillis(500), ALL)).get()
+            .extracting(ProblemStats::operand1).isEqualTo(2);
+        assertThat(queue.nextDue(NOW.plusMillis(200), ALL)).isEmpty();
+    }
+
+    @Test
+    void getFindsLatestStatsAfterIndexGrows() {
+        var queue = new ReviewQueue();
+        for (int a = 0; a <= 20; a++) {
+            for (int b = 0; b <= 20; b++) {
+                queue.update(stats(Operation.ADDITION, a, b, NOW.plusSeconds(a * 21L + b)));
+            }
+        }
+        queue.update(stats(Operation.ADDITION, 7, 9, NOW.minusSeconds(60)));
+
+        assertThat(queue.size()).isEqualTo(21 * 21);
+        assertThat(queue.get(Operation.ADDITION, 20, 20)).get()
+            .extracting(ProblemStats::nextReview).isEqualTo(NOW.plusSeconds(440));
+        assertThat(queue.get(Operation.ADDITION, 7, 9)).get()
+            .extracting(ProblemStats::nextReview).isEqualTo(NOW.minusSeconds(60));
+        assertThat(queue.get(Operation.ADDITION, 21, 0)).isEmpty();
+        assertThat(queue.nextDue(NOW, ALL)).get()
+            .extracting(ProblemStats::operand1).isEqualTo(7);
+    }
+}
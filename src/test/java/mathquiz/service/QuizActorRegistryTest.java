@@ -0,0 +1,184 @@
+package mathquiz.service;
+
+import mathquiz.domain.DifficultyManager;
+import mathquiz.domain.FactKey;
+import mathquiz.domain.Operation;
+import mathquiz.storage.DatabaseSetup;
+import mathquiz.storage.SqliteRepository;
+import org.junit.jupiter.api.*;
+
+import java.time.Clock;
+import java.time.Duration;
+import java.time.Instant;
+import java.time.ZoneId;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+
+import static org.assertj.core.api.Assertions.*;
+
+/**
+ * Tests for QuizActorRegistry.
+ */
+class QuizActorRegistryTest {
+
+    private DatabaseSetup.SetupResult setup;
+    private SqliteRepository repo;
+    private Clock clock;
+    private QuizActorRegistry registry;
+
+    @BeforeEach
+    void setUp() {
+        setup = DatabaseSetup.setupInMemory();
+        repo = new SqliteRepository(setup.jdbi());
+        clock = Clock.fixed(Instant.parse("2024-06-15T10:00:00Z"), ZoneId.of("UTC"));
+    }
+
+    @AfterEach
+    void tearDown() {
+        if (registry != null) {
+            registry.close();
+        }
+        setup.close();
+    }
+
+    private <T> T await(CompletableFuture<T> future) throws Exception {
+        return future.get(5, TimeUnit.SECONDS);
+    }
+
+    @Test
+    void sessionsOfOneUserShareState() throws Exception {
+        registry = new QuizActorRegistry(repo, clock);
+        int userId = repo.createUser("TestUser").id();
+
+        // One tab picks a problem, another sees the same current problem
+        int key = await(registry.ask(userId, service -> service.nextProblemKey(null)));
+        int seen = await(registry.ask(userId, QuizService::currentProblemKey));
+
+        assertThat(seen).isEqualTo(key);
+        assertThat(registry.size()).isEqualTo(1);
+    }
+
+    @Test
+    void idleActorsAreEvictedAndFlushed() throws Exception {
+        registry = new QuizActorRegistry(repo, clock, 100, Duration.ZERO);
+        int userId = repo.createUser("TestUser").id();
+
+        // Progress changed in memory but not yet saved
+        await(registry.ask(userId, service -> service.difficulty().recordAttempt(Operation.ADDITION, true)));
+
+        assertThat(registry.evictIdle()).isEqualTo(1);
+        assertThat(registry.isLive(userId)).isFalse();
+        assertThat(repo.getDifficulty(userId).getProgress(Operation.ADDITION).problemsAtCurrentRange()).isEqualTo(1);
+
+        // Next request loads fresh state
+        int key = await(registry.ask(userId, service -> service.nextProblemKey(null)));
+        assertThat(key).isNotEqualTo(FactKey.NONE);
+        assertThat(registry.isLive(userId)).isTrue();
+    }
+
+    @Test
+    void busyActorsAreNotEvicted() throws Exception {
+        registry = new QuizActorRegistry(repo, clock, 100, Duration.ZERO);
+        int userId = repo.createUser("TestUser").id();
+        CountDownLatch started = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+
+        CompletableFuture<Boolean> busy = registry.ask(userId, service -> {
+            started.countDown();
+            try {
+                return release.await(5, TimeUnit.SECONDS);
+            } catch (InterruptedException e) {
+                throw new IllegalStateException(e);
+            }
+        });
+        started.await(5, TimeUnit.SECONDS);
+
+        assertThat(registry.evictIdle()).isZero();
+        assertThat(registry.isLive(userId)).isTrue();
+
+        release.countDown();
+        assertThat(await(busy)).isTrue();
+    }
+
+    @Test
+    void goingOverLimitEvictsLeastRecentlyUsed() throws Exception {
+        registry = new QuizActorRegistry(repo, clock, 2, Duration.ofHours(1));
+        int first = repo.createUser("First").id();
+        int second = repo.createUser("Second").id();
+        int third = repo.createUser("Third").id();
+
+        await(registry.ask(first, QuizService::currentProblemKey));
+        await(registry.ask(second, QuizService::currentProblemKey));
+        await(registry.ask(first, QuizService::currentProblemKey));
+        await(registry.ask(third, QuizService::currentProblemKey));
+
+        assertThat(registry.size()).isEqualTo(2);
+        assertThat(registry.isLive(first)).isTrue();
+        assertThat(registry.isLive(second)).isFalse();
+        assertThat(registry.isLive(third)).isTrue();
+    }
+
+    @Test
+    void slowLoadDoesNotHoldUpOtherUsers() throws Exception {
+        CountDownLatch release = new CountDownLatch(1);
+        int[] slowUser = new int[1];
+        var slowRepo = new SqliteRepository(setup.jdbi()) {
+            @Override
+            public DifficultyManager getDifficulty(int userId) {
+                if (userId == slowUser[0]) {
+                    try {
+                        release.await(5, TimeUnit.SECONDS);
+                    } catch (InterruptedException e) {
+                        throw new IllegalStateException(e);
+                    }
+                }
+                return super.getDifficulty(userId);
+            }
+        };
+        registry = new QuizActorRegistry(slowRepo, clock);
+        slowUser[0] = repo.createUser("Slow").id();
+        int other = repo.createUser("Other").id();
+
+        CompletableFuture<Integer> slow = registry.ask(slowUser[0], QuizService::currentProblemKey);
+        assertThat(await(registry.ask(other, QuizService::currentProblemKey))).isEqualTo(FactKey.NONE);
+        assertThat(slow).isNotDone();
+
+        release.countDown();
+        assertThat(await(slow)).isEqualTo(FactKey.NONE);
+    }
+
+    @Test
+    void failedLoadIsRetriedOnNextRequest() throws Exception {
+        boolean[] fail = {true};
+        var flakyRepo = new SqliteRepository(setup.jdbi()) {
+            @Override
+            public DifficultyManager getDifficulty(int userId) {
+                if (fail[0]) {
+                    fail[0] = false;
+                    throw new IllegalStateException("database unavailable");
+                }
+                return super.getDifficulty(userId);
+            }
+        };
+        registry = new QuizActorRegistry(flakyRepo, clock);
+        int userId = repo.createUser("TestUser").id();
+
+        assertThatThrownBy(() -> await(registry.ask(userId, QuizService::currentProblemKey)))
+            .isInstanceOf(ExecutionException.class);
+
+        Assertions.assertTimeoutPreemptively(Duration.ofSeconds(5), () -> {
+            while (registry.isLive(userId)) {
+                Thread.sleep(10);
+            }
+        });
+        assertThat(await(registry.ask(userId, QuizService::currentProblemKey))).isEqualTo(FactKey.NONE);
+    }
+
+    @Test
+    void rejectsNonPositiveLimit() {
+        assertThatThrownBy(() -> new QuizActorRegistry(repo, clock, 0, Duration.ofMinutes(1)))
+            .isInstanceOf(IllegalArgumentException.class);
+    }
+}
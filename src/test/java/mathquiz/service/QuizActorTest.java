@@ -0,0 +1,124 @@
+package mathquiz.service;
+
+import mathquiz.domain.FactKey;
+import mathquiz.storage.DatabaseSetup;
+import mathquiz.storage.SqliteRepository;
+import org.junit.jupiter.api.*;
+
+import java.time.Clock;
+import java.time.Instant;
+import java.time.ZoneId;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.assertj.core.api.Assertions.*;
+
+/**
+ * Tests for QuizActor.
+ */
+class QuizActorTest {
+
+    private DatabaseSetup.SetupResult setup;
+    private SqliteRepository repo;
+    private Clock clock;
+    private int userId;
+    private ExecutorService executor;
+
+    @BeforeEach
+    void setUp() {
+        setup = DatabaseSetup.setupInMemory();
+        repo = new SqliteRepository(setup.jdbi());
+        clock = Clock.fixed(Instant.parse("2024-06-15T10:00:00Z"), ZoneId.of("UTC"));
+        userId = repo.createUser("TestUser").id();
+        executor = Executors.newFixedThreadPool(8);
+    }
+
+    @AfterEach
+    void tearDown() {
+        executor.shutdownNow();
+        setup.close();
+    }
+
+    private QuizActor createActor() {
+        return new QuizActor(new QuizService(repo, userId, clock), executor);
+    }
+
+    @Test
+    void commandsRunOneAtATimeInSubmissionOrder() throws Exception {
+        QuizActor actor = createActor();
+        AtomicInteger running = new AtomicInteger();
+        AtomicInteger maxRunning = new AtomicInteger();
+        List<Integer> order = new ArrayList<>();
+
+        List<CompletableFuture<Integer>> futures = new ArrayList<>();
+        for (int i = 0; i < 200; i++) {
+            int n = i;
+            futures.add(actor.ask(service -> {
+                maxRunning.accumulateAndGet(running.incrementAndGet(), Math::max);
+                order.add(n);
+                Thread.yield();
+                running.decrementAndGet();
+                return n;
+            }));
+        }
+        for (int i = 0; i < futures.size(); i++) {
+            assertThat(futures.get(i).get(5, TimeUnit.SECONDS)).isEqualTo(i);
+        }
+
+        assertThat(maxRunning.get()).isEqualTo(1);
+        assertThat(order).hasSize(200).isSorted();
+    }
+
+    @Test
+    void concurrentSubmitsForOneProblemApplyOnce() throws Exception {
+        QuizActor actor = createActor();
+        int key = actor.ask(service -> service.nextProblemKey(null)).get(5, TimeUnit.SECONDS);
+
+        // Same double submit the handler guards against: only the first finds a current problem
+        List<CompletableFuture<Boolean>> submits = new ArrayList<>();
+        CountDownLatch start = new CountDownLatch(1);
+        for (int i = 0; i < 8; i++) {
+            CompletableFuture<Boolean> submitted = new CompletableFuture<>();
+            submits.add(submitted);
+            Thread.ofVirtual().start(() -> {
+                try {
+                    start.await();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+                actor.ask(service -> {
+                    if (service.currentProblemKey() != key) {
+                        return false;
+                    }
+                    service.submitAnswer(FactKey.answer(key));
+                    return true;
+                }).whenComplete((applied, e) -> submitted.complete(applied));
+            });
+        }
+        start.countDown();
+
+        int applied = 0;
+        for (CompletableFuture<Boolean> submit : submits) {
+            if (submit.get(5, TimeUnit.SECONDS)) {
+                applied++;
+            }
+        }
+        assertThat(applied).isEqualTo(1);
+        assertThat(actor.ask(service -> service.sessionStats().problemsSolved()).get(5, TimeUnit.SECONDS)).isEqualTo(1);
+    }
+
+    @Test
+    void failingCommandCompletesExceptionallyAndActorKeepsWorking() throws Exception {
+        QuizActor actor = createActor();
+
+        CompletableFuture<AnswerResult> failed = actor.ask(service -> service.submitAnswer(1));
+
+        assertThatThrownBy(() -> failed.get(5, TimeUnit.SECONDS))
+            .isInstanceOf(ExecutionException.class)
+            .hasCauseInstanceOf(IllegalStateException.class);
+        assertThat(actor.ask(service -> service.nextProblemKey(null)).get(5, TimeUnit.SECONDS))
+            .isNotEqualTo(FactKey.NONE);
+    }
+}
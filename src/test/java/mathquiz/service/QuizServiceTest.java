@@ -9,6 +9,7 @@ import java.time.Clock;
 import java.time.Instant;
 import java.time.LocalDate;
 import java.time.ZoneId;
+import java.util.List;
 import java.util.Random;
 
 import static org.assertj.core.api.Assertions.*;
@@ -67,6 +68,17 @@ class QuizServiceTest {
         assertThat(problem.operation()).isEqualTo(Operation.MULTIPLICATION);
     }
 
+    @Test
+    void nextProblemKey_becomesCurrentProblem() {
+        QuizService service = createService();
+
+        int key = service.nextProblemKey(null);
+
+        assertThat(service.currentProblem()).isEqualTo(FactKey.toProblem(key));
+        assertThat(service.submitAnswer(FactKey.answer(key)).correct()).isTrue();
+        assertThat(service.currentProblem()).isNull();
+    }
+
     // --- Answer submission ---
 
     @Test
@@ -265,6 +277,55 @@ class QuizServiceTest {
         assertThat(next.operand2()).isEqualTo(op2);
     }
 
+    // --- Day rollover ---
+
+    @Test
+    void longLivedService_startsNewDayAtMidnight() {
+        MutableClock dayClock = new MutableClock(Instant.parse("2024-06-15T23:59:00Z"));
+        QuizService service = new QuizService(repo, userId, dayClock, new Random(42));
+
+        Problem first = service.getNextProblem(null);
+        service.submitAnswer(first.answer());
+        assertThat(service.dailyStats().problemsSolved()).isEqualTo(1);
+        assertThat(service.sessionStats().currentStreak()).isEqualTo(1);
+
+        dayClock.now = Instant.parse("2024-06-16T00:01:00Z");
+
+        assertThat(service.dailyStats().date()).isEqualTo(LocalDate.of(2024, 6, 16));
+        assertThat(service.dailyStats().problemsSolved()).isZero();
+        assertThat(service.sessionStats().currentStreak()).isZero();
+
+        Problem second = service.getNextProblem(null);
+        service.submitAnswer(second.answer());
+
+        assertThat(repo.getDailyStats(userId, LocalDate.of(2024, 6, 15)).orElseThrow().problemsSolved()).isEqualTo(1);
+        assertThat(repo.getDailyStats(userId, LocalDate.of(2024, 6, 16)).orElseThrow().problemsSolved()).isEqualTo(1);
+    }
+
+    /** Clock a test can move */
+    private static final class MutableClock extends Clock {
+        private Instant now;
+
+        MutableClock(Instant now) {
+            this.now = now;
+        }
+
+        @Override
+        public ZoneId getZone() {
+            return ZoneId.of("UTC");
+        }
+
+        @Override
+        public Clock withZone(ZoneId zone) {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        public Instant instant() {
+            return now;
+        }
+    }
+
     // --- Total stars ---
 
     @Test
@@ -278,6 +339,17 @@ class QuizServiceTest {
         assertThat(service.getTotalStars()).isEqualTo(5);
     }
 
+    @Test
+    void submitAnswer_returnsTotalStarsAfterCommit() {
+        repo.saveDailyStats(userId, new DailyStats(LocalDate.of(2024, 6, 14), 30, 30, 3, 5, 5));
+
+        QuizService service = createService();
+        Problem problem = service.getNextProblem(null);
+        AnswerResult result = service.submitAnswer(problem.answer());
+
+        assertThat(result.totalStars()).isEqualTo(3);
+    }
+
     // --- Attempt history ---
 
     @Test
@@ -319,4 +391,34 @@ class QuizServiceTest {
 
         assertThat(result.streak()).isEqualTo(4);
     }
+
+    // --- Per-request services ---
+
+    @Test
+    void forRequest_answersAndReviewsWithoutLoadingAllStats() {
+        int[] fullLoads = new int[1];
+        var countingRepo = new SqliteRepository(setup.jdbi()) {
+            @Override
+            public List<ProblemStats> getAllProblemStats(int userId) {
+                fullLoads[0]++;
+                return super.getAllProblemStats(userId);
+            }
+        };
+        repo.saveProblemStats(userId, new ProblemStats(
+            Operation.ADDITION, 3, 4, 2.5, 1.0, clock.instant().minusSeconds(60), 1, 1, 1));
+
+        QuizService service = QuizService.forRequest(countingRepo, userId, clock);
+        int key = service.nextProblemKey(null);
+        AnswerResult result = service.submitAnswer(FactKey.answer(key));
+
+        assertThat(key).isEqualTo(FactKey.of(Operation.ADDITION, 3, 4));
+        assertThat(result.correct()).isTrue();
+        assertThat(repo.getProblemStats(userId, Operation.ADDITION, 3, 4))
+            .get().extracting(ProblemStats::totalAttempts).isEqualTo(2);
+        assertThat(fullLoads[0]).isZero();
+
+        // Nothing due any more, so a new problem is sampled from the loaded schedule
+        service.nextProblemKey(null);
+        assertThat(fullLoads[0]).isEqualTo(1);
+    }
 }
@@ -1,11 +1,22 @@
 package mathquiz.storage;
 
+import mathquiz.domain.FactKey;
+import mathquiz.domain.Operation;
+import mathquiz.domain.ProblemStats;
+import mathquiz.domain.User;
+import org.flywaydb.core.Flyway;
 import org.junit.jupiter.api.Test;
 import org.junit.jupiter.api.io.TempDir;
 
 import java.nio.file.Path;
+import java.time.Duration;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
 
 import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static org.junit.jupiter.api.Assertions.assertTimeoutPreemptively;
 
 /**
  * Tests for DatabaseSetup utility.
@@ -46,6 +57,7 @@ class DatabaseSetupTest {
                 "flyway_schema_history",
                 "operation_progress",
                 "problem_stats",
+                "user_totals",
                 "users"
             );
         }
@@ -60,4 +72,136 @@ class DatabaseSetupTest {
             assertThat(repo.getUser(user.id())).isPresent();
         }
     }
+
+    @Test
+    void setupWal_enablesWalJournal(@TempDir Path tempDir) {
+        try (var setup = DatabaseSetup.setupWal(tempDir.resolve("test.db"), 2)) {
+            String mode = setup.jdbi().withHandle(handle ->
+                handle.createQuery("PRAGMA journal_mode").mapTo(String.class).one()
+            );
+
+            assertThat(mode).isEqualToIgnoringCase("wal");
+        }
+    }
+
+    @Test
+    void setupWal_keepsFullSynchronousUnlessOptedOut(@TempDir Path tempDir) {
+        try (var setup = DatabaseSetup.setupWal(tempDir.resolve("full.db"), 1)) {
+            assertThat(synchronousMode(setup)).isEqualTo(2); // FULL
+        }
+        try (var setup = DatabaseSetup.setupWal(tempDir.resolve("normal.db"), 1, true)) {
+            assertThat(synchronousMode(setup)).isEqualTo(1); // NORMAL
+        }
+    }
+
+    private static int synchronousMode(DatabaseSetup.SetupResult setup) {
+        return setup.jdbi().withHandle(handle ->
+            handle.createQuery("PRAGMA synchronous").mapTo(Integer.class).one()
+        );
+    }
+
+    @Test
+    void setupWal_readPoolIsReadOnly(@TempDir Path tempDir) {
+        try (var setup = DatabaseSetup.setupWal(tempDir.resolve("test.db"), 2)) {
+            assertThatThrownBy(() -> setup.readJdbi().useHandle(handle ->
+                handle.execute("INSERT INTO users (name, created_at) VALUES ('X', '2024-01-01T00:00:00Z')")
+            )).isInstanceOf(Exception.class);
+        }
+    }
+
+    @Test
+    void setupWal_readsProceedWhileWriteTransactionIsOpen(@TempDir Path tempDir) throws Exception {
+        try (var setup = DatabaseSetup.setupWal(tempDir.resolve("test.db"), 2)) {
+            var repo = new SqliteRepository(setup.jdbi(), setup.readJdbi());
+            repo.createUser("Alice");
+
+            CountDownLatch writeStarted = new CountDownLatch(1);
+            CountDownLatch releaseWrite = new CountDownLatch(1);
+
+            // Hold a write transaction open (this also occupies the only writer connection)
+            Thread writer = new Thread(() -> setup.jdbi().useTransaction(handle -> {
+                handle.execute("INSERT INTO users (name, created_at) VALUES ('Bob', '2024-01-01T00:00:00Z')");
+                writeStarted.countDown();
+                try {
+                    releaseWrite.await();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            }));
+            writer.start();
+            assertThat(writeStarted.await(5, TimeUnit.SECONDS)).isTrue();
+
+            try {
+                List<User> users = assertTimeoutPreemptively(Duration.ofSeconds(2), () -> repo.getUsers());
+                // Uncommitted write is not visible to readers
+                assertThat(users).extracting(User::name).containsExactly("Alice");
+                assertThat(assertTimeoutPreemptively(Duration.ofSeconds(2), () -> repo.getTotalStars(1))).isZero();
+            } finally {
+                releaseWrite.countDown();
+                writer.join();
+            }
+
+            assertThat(repo.getUsers()).extracting(User::name).containsExactly("Alice", "Bob");
+        }
+    }
+
+    @Test
+    void userTotalsMigration_backfillsExistingStars(@TempDir Path tempDir) {
+        Path dbPath = tempDir.resolve("test.db");
+
+        try (var dataSource = DatabaseSetup.createDataSource(dbPath)) {
+            // Bring the schema to V1 and add data the way the old version stored it
+            Flyway.configure()
+                .dataSource(dataSource)
+                .locations("classpath:db/migration")
+                .target("1")
+                .load()
+                .migrate();
+            var jdbi = DatabaseSetup.createJdbi(dataSource);
+            jdbi.useHandle(handle -> {
+                handle.execute("INSERT INTO users (id, name, created_at) VALUES (1, 'Alice', '2024-01-01T00:00:00Z')");
+                handle.execute("INSERT INTO daily_stats VALUES (1, '2024-01-01', 30, 30, 3, 5, 5)");
+                handle.execute("INSERT INTO daily_stats VALUES (1, '2024-01-02', 50, 50, 5, 9, 9)");
+            });
+
+            DatabaseSetup.runMigrations(dataSource);
+
+            assertThat(new SqliteRepository(jdbi).getTotalStars(1)).isEqualTo(8);
+        }
+    }
+
+    @Test
+    void factKeyMigration_preservesStatsAndAttempts(@TempDir Path tempDir) {
+        Path dbPath = tempDir.resolve("test.db");
+
+        try (var dataSource = DatabaseSetup.createDataSource(dbPath)) {
+            // Bring the schema to V2 and add rows in the old text-keyed layout
+            Flyway.configure()
+                .dataSource(dataSource)
+                .locations("classpath:db/migration")
+                .target("2")
+                .load()
+                .migrate();
+            var jdbi = DatabaseSetup.createJdbi(dataSource);
+            jdbi.useHandle(handle -> {
+                handle.execute("INSERT INTO users (id, name, created_at) VALUES (1, 'Alice', '2024-01-01T00:00:00Z')");
+                handle.execute("INSERT INTO problem_stats VALUES (1, 'ADDITION', 3, 4, 2.5, 1.0, 1700000000, 1, 1, 1)");
+                handle.execute("INSERT INTO problem_stats VALUES (1, 'DIVISION', 42, 6, 2.3, 6.0, NULL, 2, 3, 2)");
+                handle.execute("INSERT INTO attempts (user_id, ts, operation, operand1, operand2, correct) "
+                    + "VALUES (1, 1700000000, 'DIVISION', 42, 6, 1)");
+            });
+
+            DatabaseSetup.runMigrations(dataSource);
+
+            var repo = new SqliteRepository(jdbi);
+            assertThat(repo.getAllProblemStats(1)).hasSize(2);
+            assertThat(repo.getProblemStats(1, Operation.ADDITION, 3, 4)).get()
+                .extracting(ProblemStats::totalCorrect).isEqualTo(1);
+            assertThat(repo.getProblemStats(1, Operation.DIVISION, 42, 6)).get()
+                .extracting(ProblemStats::totalAttempts).isEqualTo(3);
+            int attemptKey = jdbi.withHandle(handle ->
+                handle.createQuery("SELECT fact_key FROM attempts").mapTo(Integer.class).one());
+            assertThat(attemptKey).isEqualTo(FactKey.of(Operation.DIVISION, 42, 6));
+        }
+    }
 }
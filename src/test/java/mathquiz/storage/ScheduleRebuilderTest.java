@@ -0,0 +1,127 @@
+package mathquiz.storage;
+
+import mathquiz.domain.*;
+import mathquiz.service.QuizService;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.file.Path;
+import java.time.Clock;
+import java.time.Duration;
+import java.time.Instant;
+import java.time.ZoneId;
+import java.util.List;
+import java.util.Random;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class ScheduleRebuilderTest {
+
+    private static final Instant START = Instant.parse("2024-06-15T10:00:00Z");
+
+    private DatabaseSetup.SetupResult setup;
+    private SqliteRepository repo;
+
+    @BeforeEach
+    void setUp() {
+        setup = DatabaseSetup.setupInMemory();
+        repo = new SqliteRepository(setup.jdbi());
+    }
+
+    @AfterEach
+    void tearDown() {
+        setup.close();
+    }
+
+    /**
+     * Answer problems through the live service, one service per answer so each gets its own time.
+     */
+    private void playHistory(int userId, int answers, long seed) {
+        for (int i = 0; i < answers; i++) {
+            Clock clock = Clock.fixed(START.plus(Duration.ofMinutes(37L * i)), ZoneId.of("UTC"));
+            QuizService service = new QuizService(repo, userId, clock, new Random(seed + i));
+            if (i == 10) {
+                service.unlockOperation(Operation.DIVISION);
+            }
+            Problem problem = service.getNextProblem(null);
+            service.submitAnswer(i % 4 == 0 ? problem.answer() + 1 : problem.answer());
+        }
+    }
+
+    private static List<Object> progressFields(DifficultyManager difficulty, Operation op) {
+        OperationProgress p = difficulty.getProgress(op);
+        return List.of(p.maxNumber(), p.isUnlocked(), p.isManuallyUnlocked(),
+                p.problemsAtCurrentRange(), p.correctAtCurrentRange());
+    }
+
+    @Test
+    void rebuildReproducesLiveSchedule() {
+        int userId = repo.createUser("Alice").id();
+        playHistory(userId, 80, 1);
+        List<ProblemStats> expectedStats = repo.getAllProblemStats(userId);
+        DifficultyManager expectedDifficulty = repo.getDifficulty(userId);
+
+        // Lose the derived state
+        setup.jdbi().useHandle(handle -> {
+            handle.execute("DELETE FROM problem_stats");
+            handle.execute("UPDATE operation_progress SET max_number = 99, problems_at_current_range = 0");
+        });
+
+        var result = new ScheduleRebuilder(setup, 2).rebuildAll();
+
+        assertThat(result.users()).isEqualTo(1);
+        assertThat(result.attempts()).isEqualTo(80);
+        assertThat(repo.getAllProblemStats(userId)).containsExactlyInAnyOrderElementsOf(expectedStats);
+        DifficultyManager rebuilt = repo.getDifficulty(userId);
+        for (Operation op : Operation.values()) {
+            assertThat(progressFields(rebuilt, op)).as(op.name())
+                .isEqualTo(progressFields(expectedDifficulty, op));
+        }
+    }
+
+    @Test
+    void manualUnlockSurvivesRebuild() {
+        int userId = repo.createUser("Alice").id();
+        playHistory(userId, 12, 5);
+
+        new ScheduleRebuilder(setup, 1).rebuildAll();
+
+        assertThat(repo.getDifficulty(userId).getProgress(Operation.DIVISION).isManuallyUnlocked()).isTrue();
+        assertThat(repo.getDifficulty(userId).isUnlocked(Operation.DIVISION)).isTrue();
+    }
+
+    @Test
+    void userWithoutHistoryIsReset() {
+        int userId = repo.createUser("Bob").id();
+        repo.saveProblemStats(userId, ProblemStats.newStats(Operation.ADDITION, 1, 2));
+
+        long replayed = new ScheduleRebuilder(setup, 1).rebuildUser(userId);
+
+        assertThat(replayed).isZero();
+        assertThat(repo.getAllProblemStats(userId)).isEmpty();
+        assertThat(repo.getDifficulty(userId).getUnlockedOperations()).containsExactly(Operation.ADDITION);
+    }
+
+    @Test
+    void rebuildsUsersInParallelOverWalReaders(@TempDir Path tempDir) {
+        try (var wal = DatabaseSetup.setupWal(tempDir.resolve("test.db"), 4)) {
+            repo = new SqliteRepository(wal.jdbi(), wal.readJdbi());
+            int alice = repo.createUser("Alice").id();
+            int bob = repo.createUser("Bob").id();
+            playHistory(alice, 30, 11);
+            playHistory(bob, 20, 21);
+            List<ProblemStats> aliceStats = repo.getAllProblemStats(alice);
+            List<ProblemStats> bobStats = repo.getAllProblemStats(bob);
+            wal.jdbi().useHandle(handle -> handle.execute("DELETE FROM problem_stats"));
+
+            var result = new ScheduleRebuilder(wal, 4).rebuildAll();
+
+            assertThat(result.users()).isEqualTo(2);
+            assertThat(result.attempts()).isEqualTo(50);
+            assertThat(repo.getAllProblemStats(alice)).containsExactlyInAnyOrderElementsOf(aliceStats);
+            assertThat(repo.getAllProblemStats(bob)).containsExactlyInAnyOrderElementsOf(bobStats);
+        }
+    }
+}
@@ -217,6 +217,43 @@ class SqliteRepositoryTest {
         assertThat(progress.correctAtCurrentRange()).isEqualTo(2);
     }
 
+    @Test
+    void saveDifficulty_writesOnlyChangedOperations() {
+        User user = repo.createUser("Alice");
+        DifficultyManager dm = repo.getDifficulty(user.id());
+
+        repo.saveDifficulty(user.id(), dm);
+        assertThat(countProgressRows(user.id())).isEqualTo(1); // Only addition differs from defaults
+
+        dm.unlockOperation(Operation.MULTIPLICATION);
+        repo.saveDifficulty(user.id(), dm);
+        assertThat(countProgressRows(user.id())).isEqualTo(2);
+        assertThat(dm.isDirty()).isFalse();
+    }
+
+    @Test
+    void saveDifficulty_unchanged_skipsWrite() {
+        User user = repo.createUser("Alice");
+        DifficultyManager dm = new DifficultyManager();
+        repo.saveDifficulty(user.id(), dm);
+
+        // Change the stored row behind the manager's back; a clean save must not overwrite it
+        setup.jdbi().useHandle(handle -> handle.execute(
+            "UPDATE operation_progress SET max_number = 40 WHERE user_id = ?", user.id()));
+        repo.saveDifficulty(user.id(), dm);
+
+        assertThat(repo.getDifficulty(user.id()).getProgress(Operation.ADDITION).maxNumber()).isEqualTo(40);
+    }
+
+    private int countProgressRows(int userId) {
+        return setup.jdbi().withHandle(handle ->
+            handle.createQuery("SELECT COUNT(*) FROM operation_progress WHERE user_id = :userId")
+                .bind("userId", userId)
+                .mapTo(Integer.class)
+                .one()
+        );
+    }
+
     // --- Daily stats tests ---
 
     @Test
@@ -285,6 +322,21 @@ class SqliteRepositoryTest {
         assertThat(totalStars).isEqualTo(0);
     }
 
+    @Test
+    void getTotalStars_followsRewrittenDay() {
+        User user = repo.createUser("Alice");
+        LocalDate day = LocalDate.of(2024, 1, 1);
+
+        repo.saveDailyStats(user.id(), new DailyStats(day, 10, 10, 1, 5, 5));
+        assertThat(repo.getTotalStars(user.id())).isEqualTo(1);
+
+        repo.saveDailyStats(user.id(), new DailyStats(day, 30, 30, 3, 5, 5));
+        assertThat(repo.getTotalStars(user.id())).isEqualTo(3);
+
+        // A fresh repository (empty cache) reads the materialized total
+        assertThat(new SqliteRepository(setup.jdbi()).getTotalStars(user.id())).isEqualTo(3);
+    }
+
     // --- Attempt history tests ---
 
     @Test
@@ -306,6 +358,62 @@ class SqliteRepositoryTest {
         assertThat(correct).containsExactly(1, 0);
     }
 
+    // --- Answer commit tests ---
+
+    @Test
+    void commitAnswer_persistsAllStateAndReturnsTotalStars() {
+        User user = repo.createUser("Alice");
+        repo.saveDailyStats(user.id(), new DailyStats(LocalDate.of(2024, 1, 14), 30, 30, 3, 5, 5));
+
+        LocalDate today = LocalDate.of(2024, 1, 15);
+        Instant now = Instant.parse("2024-01-15T10:00:00Z");
+        ProblemStats stats = new ProblemStats(
+            Operation.ADDITION, 2, 3,
+            2.5, 1.0 / 24, now.plusSeconds(3600), 1, 1, 1
+        );
+        DifficultyManager dm = new DifficultyManager();
+        dm.recordAttempt(Operation.ADDITION, true);
+        DailyStats daily = new DailyStats(today, 10, 10, 1, 10, 10);
+
+        int totalStars = repo.commitAnswer(user.id(), stats, dm, daily, true, now);
+
+        assertThat(totalStars).isEqualTo(4);
+        assertThat(repo.getProblemStats(user.id(), Operation.ADDITION, 2, 3))
+            .get().extracting(ProblemStats::totalCorrect).isEqualTo(1);
+        assertThat(repo.getDifficulty(user.id()).getProgress(Operation.ADDITION).problemsAtCurrentRange())
+            .isEqualTo(1);
+        assertThat(repo.getDailyStats(user.id(), today))
+            .get().extracting(DailyStats::problemsSolved).isEqualTo(10);
+
+        List<Integer> correct = setup.jdbi().withHandle(handle ->
+            handle.createQuery("SELECT correct FROM attempts WHERE user_id = :userId")
+                .bind("userId", user.id())
+                .mapTo(Integer.class)
+                .list()
+        );
+        assertThat(correct).containsExactly(1);
+    }
+
+    @Test
+    void commitAnswer_failure_rollsBackEverything() {
+        User user = repo.createUser("Alice");
+        LocalDate today = LocalDate.of(2024, 1, 15);
+        Instant now = Instant.parse("2024-01-15T10:00:00Z");
+
+        // Drop the history table so the last statement of the transaction fails
+        setup.jdbi().useHandle(handle -> handle.execute("DROP TABLE attempts"));
+
+        assertThatThrownBy(() -> repo.commitAnswer(user.id(),
+                ProblemStats.newStats(Operation.ADDITION, 1, 1),
+                new DifficultyManager(),
+                new DailyStats(today, 1, 1, 0, 1, 1),
+                true, now))
+            .isInstanceOf(Exception.class);
+
+        assertThat(repo.getProblemStats(user.id(), Operation.ADDITION, 1, 1)).isEmpty();
+        assertThat(repo.getDailyStats(user.id(), today)).isEmpty();
+    }
+
     // --- Isolation tests ---
 
     @Test
@@ -322,4 +430,18 @@ class SqliteRepositoryTest {
         assertThat(repo.getDailyStats(bob.id(), LocalDate.now())).isEmpty();
         assertThat(repo.getTotalStars(bob.id())).isEqualTo(0);
     }
+
+    // --- Quiz state sequence tests ---
+
+    @Test
+    void advanceQuizStateSequence_acceptsOnlyCurrentSequence() {
+        int userId = repo.createUser("Alice").id();
+
+        long first = repo.advanceQuizStateSequence(userId, -1);
+        long second = repo.advanceQuizStateSequence(userId, first);
+
+        assertThat(second).isEqualTo(first + 1);
+        assertThat(repo.advanceQuizStateSequence(userId, first)).isEqualTo(-1);
+        assertThat(repo.advanceQuizStateSequence(userId, -1)).isEqualTo(second + 1);
+    }
 }
@@ -0,0 +1,138 @@
+package mathquiz.storage;
+
+import mathquiz.domain.User;
+import org.junit.jupiter.api.*;
+
+import java.time.Clock;
+import java.time.Duration;
+import java.time.Instant;
+import java.time.ZoneId;
+
+import static org.assertj.core.api.Assertions.*;
+
+/**
+ * Tests for UserDirectory.
+ * Rows inserted behind the directory's back show whether a lookup hit the cache or the database.
+ */
+class UserDirectoryTest {
+
+    private DatabaseSetup.SetupResult setup;
+    private SqliteRepository repo;
+    private UserDirectory directory;
+
+    @BeforeEach
+    void setUp() {
+        setup = DatabaseSetup.setupInMemory();
+        repo = new SqliteRepository(setup.jdbi());
+        directory = new UserDirectory(repo);
+    }
+
+    @AfterEach
+    void tearDown() {
+        setup.close();
+    }
+
+    private void insertDirectly(int id, String name) {
+        setup.jdbi().useHandle(handle -> handle.execute(
+            "INSERT INTO users (id, name, created_at) VALUES (?, ?, '2024-01-01T00:00:00Z')", id, name));
+    }
+
+    @Test
+    void all_returnsUsersOrderedByName() {
+        repo.createUser("Zoe");
+        repo.createUser("Alice");
+
+        assertThat(directory.all()).extracting(User::name).containsExactly("Alice", "Zoe");
+    }
+
+    @Test
+    void all_isServedFromCache() {
+        repo.createUser("Alice");
+        directory.all();
+
+        insertDirectly(50, "Bob");
+
+        assertThat(directory.all()).extracting(User::name).containsExactly("Alice");
+    }
+
+    @Test
+    void create_refreshesDirectory() {
+        directory.all();
+
+        User created = directory.create("Alice");
+
+        assertThat(directory.all()).containsExactly(created);
+        assertThat(directory.find(created.id())).contains(created);
+    }
+
+    @Test
+    void find_unknownId_isRememberedAsMissing() {
+        assertThat(directory.find(42)).isEmpty();
+
+        insertDirectly(42, "Late");
+
+        // Negative result is cached, so the database is not asked again
+        assertThat(directory.find(42)).isEmpty();
+    }
+
+    @Test
+    void find_userCreatedElsewhere_isFoundAndRefreshesList() {
+        directory.all();
+
+        insertDirectly(7, "Remote");
+
+        assertThat(directory.find(7)).get().extracting(User::name).isEqualTo("Remote");
+        assertThat(directory.all()).extracting(User::name).containsExactly("Remote");
+    }
+
+    @Test
+    void create_clearsUnknownIds() {
+        assertThat(directory.find(1)).isEmpty();
+
+        User created = directory.create("Alice");
+
+        assertThat(created.id()).isEqualTo(1);
+        assertThat(directory.find(1)).contains(created);
+    }
+
+    @Test
+    void userCreatedOnAnotherInstance_appearsOnceCacheExpires() {
+        var clock = new MutableClock(Instant.parse("2024-01-01T00:00:00Z"));
+        var nodeA = new UserDirectory(new SqliteRepository(setup.jdbi()), clock, Duration.ofSeconds(30));
+        var nodeB = new UserDirectory(new SqliteRepository(setup.jdbi()), clock, Duration.ofSeconds(30));
+        assertThat(nodeB.all()).isEmpty();
+        assertThat(nodeB.find(1)).isEmpty();
+
+        User created = nodeA.create("Alice");
+
+        // Still cached on B until the entries expire
+        assertThat(nodeB.find(created.id())).isEmpty();
+        clock.now = clock.now.plusSeconds(30);
+        assertThat(nodeB.all()).containsExactly(created);
+        assertThat(nodeB.find(created.id())).contains(created);
+    }
+
+    /** Clock a test can move */
+    private static final class MutableClock extends Clock {
+        private Instant now;
+
+        MutableClock(Instant now) {
+            this.now = now;
+        }
+
+        @Override
+        public ZoneId getZone() {
+            return ZoneId.of("UTC");
+        }
+
+        @Override
+        public Clock withZone(ZoneId zone) {
+            return Clock.fixed(now, zone);
+        }
+
+        @Override
+        public Instant instant() {
+            return now;
+        }
+    }
+}
@@ -0,0 +1,239 @@
+package mathquiz.storage;
+
+import mathquiz.domain.*;
+import org.junit.jupiter.api.*;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.time.LocalDate;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.*;
+
+/**
+ * Tests for WriteBehindRepository.
+ * Uses a long durability window so writes stay queued until flushed explicitly.
+ */
+class WriteBehindRepositoryTest {
+
+    private DatabaseSetup.SetupResult setup;
+    private SqliteRepository sqliteRepo;
+    private WriteBehindRepository repo;
+    private int userId;
+
+    @BeforeEach
+    void setUp() {
+        setup = DatabaseSetup.setupInMemory();
+        sqliteRepo = new SqliteRepository(setup.jdbi());
+        repo = new WriteBehindRepository(sqliteRepo, Duration.ofHours(1), 100, 1000);
+        userId = repo.createUser("Alice").id();
+    }
+
+    @AfterEach
+    void tearDown() {
+        repo.close();
+        setup.close();
+    }
+
+    @Test
+    void queuedWrites_visibleBeforeCommit() {
+        ProblemStats stats = new ProblemStats(Operation.ADDITION, 2, 3, 2.5, 1.0, null, 1, 4, 3);
+
+        repo.saveProblemStats(userId, stats);
+
+        assertThat(repo.getProblemStats(userId, Operation.ADDITION, 2, 3)).contains(stats);
+        assertThat(sqliteRepo.getProblemStats(userId, Operation.ADDITION, 2, 3)).isEmpty();
+    }
+
+    @Test
+    void flush_commitsQueuedWrites() {
+        repo.saveProblemStats(userId, ProblemStats.newStats(Operation.ADDITION, 2, 3));
+        repo.saveDailyStats(userId, new DailyStats(LocalDate.of(2024, 1, 15), 5, 4, 0, 4, 2));
+
+        repo.flush();
+
+        assertThat(repo.pendingWrites()).isZero();
+        assertThat(sqliteRepo.getProblemStats(userId, Operation.ADDITION, 2, 3)).isPresent();
+        assertThat(sqliteRepo.getDailyStats(userId, LocalDate.of(2024, 1, 15))).isPresent();
+    }
+
+    @Test
+    void writesToSameKey_areMerged() {
+        for (int i = 1; i <= 5; i++) {
+            repo.saveProblemStats(userId, new ProblemStats(Operation.ADDITION, 2, 3, 2.5, 0.0, null, 0, i, i));
+        }
+
+        assertThat(repo.pendingWrites()).isEqualTo(1);
+
+        repo.flush();
+
+        assertThat(sqliteRepo.getProblemStats(userId, Operation.ADDITION, 2, 3))
+            .get().extracting(ProblemStats::totalAttempts).isEqualTo(5);
+    }
+
+    @Test
+    void attempts_areNeverMerged() {
+        Instant now = Instant.parse("2024-01-15T10:00:00Z");
+        repo.recordAttempt(userId, Operation.ADDITION, 2, 3, true, now);
+        repo.recordAttempt(userId, Operation.ADDITION, 2, 3, true, now);
+        repo.recordAttempt(userId, Operation.ADDITION, 2, 3, false, now);
+
+        repo.flush();
+
+        int count = setup.jdbi().withHandle(handle ->
+            handle.createQuery("SELECT COUNT(*) FROM attempts WHERE user_id = :userId")
+                .bind("userId", userId)
+                .mapTo(Integer.class)
+                .one()
+        );
+        assertThat(count).isEqualTo(3);
+    }
+
+    @Test
+    void fullBatch_isCommittedWithoutWaitingForWindow() {
+        try (var batching = new WriteBehindRepository(sqliteRepo, Duration.ofHours(1), 2, 10)) {
+            batching.saveProblemStats(userId, ProblemStats.newStats(Operation.ADDITION, 1, 1));
+            batching.saveProblemStats(userId, ProblemStats.newStats(Operation.ADDITION, 1, 2));
+
+            Assertions.assertTimeoutPreemptively(Duration.ofSeconds(5), () -> {
+                while (sqliteRepo.getAllProblemStats(userId).size() < 2) {
+                    Thread.sleep(10);
+                }
+            });
+        }
+    }
+
+    @Test
+    void close_flushesQueuedWrites() {
+        repo.saveProblemStats(userId, ProblemStats.newStats(Operation.ADDITION, 2, 3));
+
+        repo.close();
+
+        assertThat(sqliteRepo.getProblemStats(userId, Operation.ADDITION, 2, 3)).isPresent();
+        assertThatThrownBy(() -> repo.saveProblemStats(userId, ProblemStats.newStats(Operation.ADDITION, 1, 1)))
+            .isInstanceOf(IllegalStateException.class);
+    }
+
+    @Test
+    void getDueProblems_mergesQueuedAndStoredStats() {
+        Instant now = Instant.parse("2024-01-15T10:00:00Z");
+        sqliteRepo.saveProblemStats(userId, new ProblemStats(
+            Operation.ADDITION, 1, 1, 2.5, 1.0, now.minusSeconds(60), 1, 1, 1));
+        sqliteRepo.saveProblemStats(userId, new ProblemStats(
+            Operation.ADDITION, 2, 2, 2.5, 1.0, now.minusSeconds(30), 1, 1, 1));
+
+        // Queued update pushes 1+1 into the future; a new queued fact is due
+        repo.saveProblemStats(userId, new ProblemStats(
+            Operation.ADDITION, 1, 1, 2.5, 1.0, now.plusSeconds(3600), 2, 2, 2));
+        repo.saveProblemStats(userId, new ProblemStats(
+            Operation.ADDITION, 3, 3, 2.5, 0.0, now.minusSeconds(120), 0, 1, 0));
+
+        List<ProblemStats> due = repo.getDueProblems(userId, now, 10);
+
+        assertThat(due).extracting(ProblemStats::operand1).containsExactly(3, 2);
+    }
+
+    @Test
+    void getDifficulty_includesQueuedProgress() {
+        DifficultyManager dm = repo.getDifficulty(userId);
+        dm.unlockOperation(Operation.SUBTRACTION);
+
+        repo.saveDifficulty(userId, dm);
+
+        assertThat(repo.getDifficulty(userId).isUnlocked(Operation.SUBTRACTION)).isTrue();
+        assertThat(sqliteRepo.getDifficulty(userId).isUnlocked(Operation.SUBTRACTION)).isFalse();
+    }
+
+    @Test
+    void queuedDailyStats_notAffectedByLaterMutation() {
+        LocalDate day = LocalDate.of(2024, 1, 15);
+        DailyStats stats = new DailyStats(day);
+        stats.recordAnswer(true);
+
+        repo.saveDailyStats(userId, stats);
+        stats.recordAnswer(true);
+
+        assertThat(repo.getDailyStats(userId, day)).get()
+            .extracting(DailyStats::problemsSolved).isEqualTo(1);
+    }
+
+    @Test
+    void getTotalStars_tracksQueuedDailyStats() {
+        repo.saveDailyStats(userId, new DailyStats(LocalDate.of(2024, 1, 14), 30, 30, 3, 5, 5));
+        assertThat(repo.getTotalStars(userId)).isEqualTo(3);
+
+        repo.saveDailyStats(userId, new DailyStats(LocalDate.of(2024, 1, 15), 10, 10, 1, 10, 10));
+        repo.saveDailyStats(userId, new DailyStats(LocalDate.of(2024, 1, 15), 20, 20, 2, 20, 20));
+
+        assertThat(repo.getTotalStars(userId)).isEqualTo(5);
+        repo.flush();
+        assertThat(sqliteRepo.getTotalStars(userId)).isEqualTo(5);
+    }
+
+    @Test
+    void commitAnswer_returnsTotalStarsWithoutWaitingForCommit() {
+        repo.saveDailyStats(userId, new DailyStats(LocalDate.of(2024, 1, 14), 30, 30, 3, 5, 5));
+        repo.getTotalStars(userId);
+
+        Instant now = Instant.parse("2024-01-15T10:00:00Z");
+        int totalStars = repo.commitAnswer(userId,
+            ProblemStats.newStats(Operation.ADDITION, 1, 1),
+            new DifficultyManager(),
+            new DailyStats(LocalDate.of(2024, 1, 15), 10, 10, 1, 10, 10),
+            true, now);
+
+        assertThat(totalStars).isEqualTo(4);
+        assertThat(repo.pendingWrites()).isGreaterThan(0);
+
+        repo.flush();
+        assertThat(sqliteRepo.getTotalStars(userId)).isEqualTo(4);
+    }
+
+    @Test
+    void getTotalStars_firstReadDoesNotWaitForCommit() {
+        sqliteRepo.saveDailyStats(userId, new DailyStats(LocalDate.of(2024, 1, 13), 40, 40, 4, 5, 5));
+        sqliteRepo.saveDailyStats(userId, new DailyStats(LocalDate.of(2024, 1, 14), 20, 20, 2, 5, 5));
+        repo.saveDailyStats(userId, new DailyStats(LocalDate.of(2024, 1, 14), 50, 50, 5, 5, 5));
+        repo.saveDailyStats(userId, new DailyStats(LocalDate.of(2024, 1, 15), 10, 10, 1, 10, 10));
+
+        assertThat(repo.getTotalStars(userId)).isEqualTo(10);
+        assertThat(repo.pendingWrites()).isEqualTo(2);
+    }
+
+    @Test
+    void getTotalStars_keptPerUser() {
+        int bobId = repo.createUser("Bob").id();
+        repo.getTotalStars(userId);
+        repo.getTotalStars(bobId);
+
+        repo.saveDailyStats(userId, new DailyStats(LocalDate.of(2024, 1, 15), 10, 10, 1, 10, 10));
+        repo.saveDailyStats(bobId, new DailyStats(LocalDate.of(2024, 1, 15), 30, 30, 3, 30, 30));
+
+        assertThat(repo.getTotalStars(userId)).isEqualTo(1);
+        assertThat(repo.getTotalStars(bobId)).isEqualTo(3);
+    }
+
+    @Test
+    void failingCommit_keepsWritesQueuedAndRejectsNewOnes() {
+        repo.saveProblemStats(userId, ProblemStats.newStats(Operation.ADDITION, 2, 3));
+        setup.close();
+
+        assertThatThrownBy(repo::flush).isInstanceOf(IllegalStateException.class);
+
+        assertThat(repo.pendingWrites()).isEqualTo(1);
+        assertThat(repo.getProblemStats(userId, Operation.ADDITION, 2, 3)).isPresent();
+        assertThatThrownBy(() -> repo.saveProblemStats(userId, ProblemStats.newStats(Operation.ADDITION, 1, 1)))
+            .isInstanceOf(IllegalStateException.class);
+    }
+
+    @Test
+    void saveDifficulty_keepsChangesUnsavedWhenQueueRejectsThem() {
+        DifficultyManager dm = repo.getDifficulty(userId);
+        dm.unlockOperation(Operation.SUBTRACTION);
+        repo.close();
+
+        assertThatThrownBy(() -> repo.saveDifficulty(userId, dm)).isInstanceOf(IllegalStateException.class);
+
+        assertThat(dm.isDirty()).isTrue();
+    }
+}
@@ -0,0 +1,125 @@
+package mathquiz.tts;
+
+import org.junit.jupiter.api.Test;
+
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+class AudioMemoryCacheTest {
+
+    private static ByteBuffer clip(int size, int fill) {
+        byte[] audio = new byte[size];
+        Arrays.fill(audio, (byte) fill);
+        return ByteBuffer.wrap(audio);
+    }
+
+    @Test
+    void get_returnsReadOnlyViewOfStoredAudio() {
+        var cache = new AudioMemoryCache(10_000);
+        cache.put("a", ByteBuffer.wrap(new byte[]{1, 2, 3}));
+
+        ByteBuffer audio = cache.get("a").orElseThrow();
+        byte[] read = new byte[audio.remaining()];
+        audio.get(read);
+
+        assertThat(read).containsExactly(1, 2, 3);
+        assertThat(audio.isReadOnly()).isTrue();
+        // Each caller gets its own position
+        assertThat(cache.get("a").orElseThrow().remaining()).isEqualTo(3);
+    }
+
+    @Test
+    void stats_countHitsMissesAndResidentBytes() {
+        var cache = new AudioMemoryCache(10_000);
+        cache.put("a", clip(100, 1));
+        cache.put("b", clip(200, 2));
+
+        cache.get("a");
+        cache.get("a");
+        cache.get("missing");
+
+        var stats = cache.stats();
+        assertThat(stats.hits()).isEqualTo(2);
+        assertThat(stats.misses()).isEqualTo(1);
+        assertThat(stats.residentBytes()).isEqualTo(300);
+        assertThat(stats.entries()).isEqualTo(2);
+        assertThat(stats.hitRatio()).isEqualTo(2.0 / 3);
+    }
+
+    @Test
+    void put_staysWithinByteBudget() {
+        var cache = new AudioMemoryCache(1_000);
+        for (int i = 0; i < 100; i++) {
+            cache.get("clip" + i);
+            cache.put("clip" + i, clip(100, i));
+        }
+
+        assertThat(cache.stats().residentBytes()).isLessThanOrEqualTo(1_000);
+        assertThat(cache.stats().entries()).isPositive();
+    }
+
+    @Test
+    void put_ignoresClipLargerThanBudget() {
+        var cache = new AudioMemoryCache(1_000);
+        cache.put("huge", clip(2_000, 1));
+
+        assertThat(cache.contains("huge")).isFalse();
+        assertThat(cache.stats().residentBytes()).isZero();
+    }
+
+    @Test
+    void frequentClipsSurviveScanOfOneOffClips() {
+        var cache = new AudioMemoryCache(1_000);
+        // Feedback phrases: requested over and over
+        for (int round = 0; round < 5; round++) {
+            for (int i = 0; i < 5; i++) {
+                String hot = "hot" + i;
+                if (cache.get(hot).isEmpty()) {
+                    cache.put(hot, clip(100, i));
+                }
+            }
+        }
+
+        // A long tail of clips each requested once
+        for (int i = 0; i < 200; i++) {
+            String cold = "cold" + i;
+            cache.get(cold);
+            cache.put(cold, clip(100, i));
+        }
+
+        for (int i = 0; i < 5; i++) {
+            assertThat(cache.contains("hot" + i)).as("hot%d", i).isTrue();
+        }
+        assertThat(cache.stats().residentBytes()).isLessThanOrEqualTo(1_000);
+    }
+
+    @Test
+    void rejectedClipEvictsNothing() {
+        var cache = new AudioMemoryCache(1_000);
+        cache.get("cold");
+        cache.put("cold", clip(100, 1));
+        for (int i = 0; i < 5; i++) {
+            cache.get("hot");
+        }
+        cache.put("hot", clip(800, 2));
+
+        // Needs both cold and hot's room, but hot is requested more often
+        for (int i = 0; i < 3; i++) {
+            cache.get("warm");
+        }
+        cache.put("warm", clip(400, 3));
+
+        assertThat(cache.contains("warm")).isFalse();
+        assertThat(cache.contains("cold")).isTrue();
+        assertThat(cache.contains("hot")).isTrue();
+    }
+
+    @Test
+    void nonPositiveBudgetIsRefused() {
+        assertThatThrownBy(() -> new AudioMemoryCache(0))
+            .isInstanceOf(IllegalArgumentException.class);
+    }
+}
@@ -5,10 +5,17 @@ import org.junit.jupiter.api.Test;
 import org.junit.jupiter.api.io.TempDir;
 
 import java.io.IOException;
-import java.io.InputStream;
+import java.nio.ByteBuffer;
 import java.nio.file.Files;
 import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
 import java.util.Optional;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import static org.assertj.core.api.Assertions.assertThat;
 
@@ -78,24 +85,54 @@ class TtsCacheServiceTest {
     }
 
     @Test
-    void streamAudio_returnsCachedFile() throws IOException {
+    void loadAudio_returnsCachedFileContents() throws IOException {
         // Manually create a cached file
         String hash = service.computeHash("Test audio");
         Path cachePath = service.getCachePath(hash);
         byte[] testData = {1, 2, 3, 4, 5};
         Files.write(cachePath, testData);
 
-        Optional<InputStream> stream = service.streamAudio(hash);
+        Optional<ByteBuffer> audio = service.loadAudio(hash);
 
-        assertThat(stream).isPresent();
-        assertThat(stream.get().readAllBytes()).isEqualTo(testData);
+        assertThat(audio).isPresent();
+        assertThat(bytes(audio.get())).isEqualTo(testData);
     }
 
     @Test
-    void streamAudio_emptyWhenNotCached() {
-        Optional<InputStream> stream = service.streamAudio("nonexistent");
+    void loadAudio_emptyWhenNotCached() {
+        Optional<ByteBuffer> audio = service.loadAudio("nonexistent");
 
-        assertThat(stream).isEmpty();
+        assertThat(audio).isEmpty();
+    }
+
+    @Test
+    void loadAudio_readsCachedFile() throws IOException {
+        String hash = service.computeHash("Test audio");
+        Files.write(service.getCachePath(hash), new byte[]{1, 2, 3});
+
+        ByteBuffer audio = service.loadAudio(hash).orElseThrow();
+
+        assertThat(audio.remaining()).isEqualTo(3);
+        assertThat(service.loadAudio("0123456789abcdef0123456789abcdef")).isEmpty();
+        assertThat(service.memoryStats()).isEmpty();
+    }
+
+    @Test
+    void loadAudio_servesHotAudioFromMemory() throws IOException {
+        var tiered = new TtsCacheService(tempDir, "liivika", 1 << 20);
+        String hash = tiered.computeHash("Tubli!");
+        Files.write(tiered.getCachePath(hash), new byte[]{1, 2, 3});
+        tiered.loadAudio(hash);
+
+        // Gone from disk, still served from memory
+        Files.delete(tiered.getCachePath(hash));
+        ByteBuffer audio = tiered.loadAudio(hash).orElseThrow();
+
+        assertThat(bytes(audio)).containsExactly(1, 2, 3);
+        var stats = tiered.memoryStats().orElseThrow();
+        assertThat(stats.hits()).isEqualTo(1);
+        assertThat(stats.misses()).isEqualTo(1);
+        assertThat(stats.residentBytes()).isEqualTo(3);
     }
 
     @Test
@@ -104,7 +141,102 @@ class TtsCacheServiceTest {
 
         assertThat(disabled.isCached("anything")).isFalse();
         assertThat(disabled.getAudioHash("anything")).isEmpty();
-        assertThat(disabled.streamAudio("anything")).isEmpty();
+        assertThat(disabled.requestAudio("anything")).isEmpty();
+        assertThat(disabled.loadAudio("anything")).isEmpty();
+        assertThat(disabled.whenAvailable("anything").join()).isFalse();
+    }
+
+    @Test
+    void requestAudio_returnsHashBeforeSynthesisFinishes() throws Exception {
+        var release = new CountDownLatch(1);
+        var fetches = new AtomicInteger();
+        var slow = new TtsCacheService(tempDir, "liivika", text -> {
+            fetches.incrementAndGet();
+            try {
+                release.await();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            return Optional.of(new byte[]{1, 2, 3});
+        });
+
+        Optional<String> hash = slow.requestAudio("Kui palju on kaks pluss kolm?");
+        // Asking again while synthesis runs doesn't start another one
+        slow.requestAudio("Kui palju on kaks pluss kolm?");
+
+        assertThat(hash).contains(slow.computeHash("Kui palju on kaks pluss kolm?"));
+        var available = slow.whenAvailable(hash.get());
+        assertThat(available).isNotDone();
+
+        release.countDown();
+
+        assertThat(available.get(5, TimeUnit.SECONDS)).isTrue();
+        assertThat(bytes(slow.loadAudio(hash.get()).orElseThrow())).containsExactly(1, 2, 3);
+        assertThat(fetches).hasValue(1);
+        assertThat(slow.stats()).isEqualTo(new TtsCacheService.Stats(1, 1));
+    }
+
+    @Test
+    void getAudioHash_concurrentMissesShareOneFetch() throws Exception {
+        var release = new CountDownLatch(1);
+        var fetches = new AtomicInteger();
+        var slow = new TtsCacheService(tempDir, "liivika", text -> {
+            fetches.incrementAndGet();
+            try {
+                release.await();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            return Optional.of(new byte[]{1, 2, 3});
+        });
+        String text = "Kui palju on viis korda kuus?";
+        int threads = 8;
+
+        try (var executor = Executors.newVirtualThreadPerTaskExecutor()) {
+            List<Future<Optional<String>>> results = new ArrayList<>();
+            for (int i = 0; i < threads; i++) {
+                results.add(executor.submit(() -> slow.getAudioHash(text)));
+            }
+            // Every caller has either started the fetch or joined it before it completes
+            while (slow.stats().fetches() + slow.stats().coalesced() < threads) {
+                Thread.sleep(5);
+            }
+            release.countDown();
+
+            for (var result : results) {
+                assertThat(result.get(5, TimeUnit.SECONDS)).contains(slow.computeHash(text));
+            }
+        }
+
+        assertThat(fetches).hasValue(1);
+        assertThat(slow.stats()).isEqualTo(new TtsCacheService.Stats(1, threads - 1));
+        try (var files = Files.list(tempDir)) {
+            assertThat(files).containsExactly(slow.getCachePath(slow.computeHash(text)));
+        }
+    }
+
+    @Test
+    void whenAvailable_trueForCachedAudio() throws IOException {
+        String hash = service.computeHash("Cached text");
+        Files.write(service.getCachePath(hash), new byte[]{1, 2, 3});
+
+        assertThat(service.whenAvailable(hash).join()).isTrue();
+    }
+
+    @Test
+    void whenAvailable_falseWhenSynthesisFails() throws Exception {
+        var failing = new TtsCacheService(tempDir, "liivika", text -> Optional.empty());
+
+        String hash = failing.requestAudio("Unspeakable").orElseThrow();
+
+        assertThat(failing.whenAvailable(hash).get(5, TimeUnit.SECONDS)).isFalse();
+        assertThat(failing.whenAvailable("0123456789abcdef0123456789abcdef").join()).isFalse();
+    }
+
+    private static byte[] bytes(ByteBuffer audio) {
+        byte[] read = new byte[audio.remaining()];
+        audio.duplicate().get(read);
+        return read;
     }
 
     // Note: We don't test actual API calls here - that would require mocking
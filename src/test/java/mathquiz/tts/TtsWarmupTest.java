@@ -0,0 +1,91 @@
+package mathquiz.tts;
+
+import mathquiz.domain.Operation;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class TtsWarmupTest {
+
+    @TempDir
+    Path tempDir;
+
+    @Test
+    void catalog_startsWithFirstAdditionAndCoversMaxRanges() {
+        List<String> catalog = TtsWarmup.catalog();
+
+        // Addition is unlocked first; its space starts at 1 + 1
+        assertThat(catalog.subList(0, 3)).containsExactly(
+            EstonianSpeechFormatter.formatProblem(1, Operation.ADDITION, 1),
+            EstonianSpeechFormatter.formatCorrect(1, Operation.ADDITION, 1, 2),
+            EstonianSpeechFormatter.formatIncorrect(1, Operation.ADDITION, 1, 2));
+        assertThat(catalog).contains(
+            EstonianSpeechFormatter.formatProblem(49, Operation.ADDITION, 1),
+            EstonianSpeechFormatter.formatIncorrect(10, Operation.MULTIPLICATION, 10, 100),
+            EstonianSpeechFormatter.formatCorrect(100, Operation.DIVISION, 10, 10));
+        assertThat(new HashSet<>(catalog)).hasSameSizeAs(catalog);
+    }
+
+    @Test
+    void catalog_followsUnlockPath() {
+        List<String> catalog = TtsWarmup.catalog();
+
+        int midAddition = catalog.indexOf(EstonianSpeechFormatter.formatProblem(12, Operation.ADDITION, 12));
+        int firstSubtraction = catalog.indexOf(EstonianSpeechFormatter.formatProblem(2, Operation.SUBTRACTION, 1));
+        int firstMultiplication = catalog.indexOf(EstonianSpeechFormatter.formatProblem(2, Operation.MULTIPLICATION, 3));
+        int firstDivision = catalog.indexOf(EstonianSpeechFormatter.formatProblem(6, Operation.DIVISION, 3));
+
+        // Subtraction unlocks at addition range 25; multiplication later, division only by hand
+        assertThat(midAddition).isNotNegative().isLessThan(firstSubtraction);
+        assertThat(firstSubtraction).isLessThan(firstMultiplication);
+        assertThat(firstMultiplication).isLessThan(firstDivision);
+    }
+
+    @Test
+    void run_synthesizesMissingEntriesAndResumes() throws Exception {
+        var fetches = new AtomicInteger();
+        var tts = new TtsCacheService(tempDir, "liivika", text -> {
+            fetches.incrementAndGet();
+            return text.equals("broken") ? Optional.empty() : Optional.of(new byte[]{1});
+        });
+        List<String> catalog = List.of("one", "two", "broken", "three");
+        Files.write(tts.getCachePath(tts.computeHash("two")), new byte[]{1});
+
+        var warmup = new TtsWarmup(tts, catalog, 2, 1000);
+        warmup.run();
+
+        assertThat(warmup.progress())
+            .isEqualTo(new TtsWarmup.Progress(TtsWarmup.State.DONE, 4, 1, 2, 1));
+        assertThat(warmup.progress().remaining()).isZero();
+        assertThat(fetches).hasValue(3);
+
+        // After a restart only the failed entry is fetched again
+        var resumed = new TtsWarmup(tts, catalog, 2, 1000);
+        resumed.run();
+
+        assertThat(resumed.progress())
+            .isEqualTo(new TtsWarmup.Progress(TtsWarmup.State.DONE, 4, 3, 0, 1));
+        assertThat(fetches).hasValue(4);
+    }
+
+    @Test
+    void close_stopsWarmup() {
+        var tts = new TtsCacheService(tempDir, "liivika", text -> Optional.of(new byte[]{1}));
+        // One fetch a minute: the second entry waits long enough to be interrupted
+        var warmup = new TtsWarmup(tts, List.of("one", "two", "three"), 1, 1.0 / 60);
+
+        warmup.start();
+        warmup.close();
+
+        assertThat(warmup.progress().state()).isEqualTo(TtsWarmup.State.STOPPED);
+        assertThat(warmup.progress().remaining()).isPositive();
+    }
+}
@@ -0,0 +1,153 @@
+package mathquiz.web;
+
+import io.javalin.Javalin;
+import io.javalin.testtools.JavalinTest;
+import mathquiz.App;
+import mathquiz.service.QuizActorRegistry;
+import mathquiz.storage.DatabaseSetup;
+import mathquiz.storage.SqliteRepository;
+import mathquiz.tts.TtsCacheService;
+import mathquiz.web.handlers.ActorQuizStateStore;
+import okhttp3.*;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.file.Path;
+import java.time.Clock;
+import java.time.Instant;
+import java.time.ZoneId;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class SqliteSessionDataStoreTest {
+
+    @TempDir
+    Path tempDir;
+
+    private DatabaseSetup.SetupResult db;
+    private SqliteRepository repo;
+    private Clock clock;
+
+    @BeforeEach
+    void setUp() {
+        db = DatabaseSetup.setup(tempDir.resolve("test.db"));
+        repo = new SqliteRepository(db.jdbi());
+        clock = Clock.fixed(Instant.parse("2024-01-15T10:00:00Z"), ZoneId.of("UTC"));
+    }
+
+    @AfterEach
+    void tearDown() {
+        db.close();
+    }
+
+    private Javalin createApp(int sessionsInMemory) {
+        return App.createApp(repo, clock, TtsCacheService.disabled(), new ActorQuizStateStore(new QuizActorRegistry(repo, clock)),
+                App.createSessionHandler(db.jdbi(), sessionsInMemory));
+    }
+
+    /**
+     * Client that only keeps the session cookie, so a login can't be restored from the
+     * remembered-player cookie instead.
+     */
+    private static OkHttpClient sessionOnlyClient() {
+        var cookieJar = new CookieJar() {
+            private final List<Cookie> cookies = new ArrayList<>();
+
+            @Override
+            public void saveFromResponse(HttpUrl url, List<Cookie> cookies) {
+                for (Cookie cookie : cookies) {
+                    if (cookie.name().equals("JSESSIONID")) {
+                        this.cookies.removeIf(c -> c.name().equals(cookie.name()));
+                        this.cookies.add(cookie);
+                    }
+                }
+            }
+
+            @Override
+            public List<Cookie> loadForRequest(HttpUrl url) {
+                return cookies;
+            }
+        };
+        return new OkHttpClient.Builder().cookieJar(cookieJar).followRedirects(false).build();
+    }
+
+    private static void selectPlayer(OkHttpClient client, String baseUrl, int userId) throws Exception {
+        client.newCall(new Request.Builder()
+            .url(baseUrl + "/players/" + userId + "/select")
+            .post(RequestBody.create("", MediaType.parse("application/x-www-form-urlencoded")))
+            .build()).execute().close();
+    }
+
+    private static int quizStatus(OkHttpClient client, String baseUrl) throws Exception {
+        try (Response response = client.newCall(new Request.Builder().url(baseUrl + "/quiz").get().build()).execute()) {
+            return response.code();
+        }
+    }
+
+    @Test
+    void attributesRoundTripInCompactForm() throws Exception {
+        Map<String, Object> attributes = new HashMap<>();
+        attributes.put("userId", 42);
+        attributes.put("userName", "Mari");
+        attributes.put("count", 7L);
+        attributes.put("flag", true);
+        attributes.put("nothing", null);
+        attributes.put("date", java.time.LocalDate.of(2024, 1, 15));
+
+        byte[] encoded = SqliteSessionDataStore.encodeAttributes(attributes);
+
+        assertThat(SqliteSessionDataStore.decodeAttributes(encoded)).isEqualTo(attributes);
+        assertThat(SqliteSessionDataStore.encodeAttributes(Map.of("userId", 42, "userName", "Mari")))
+            .hasSizeLessThanOrEqualTo(32);
+    }
+
+    @Test
+    void loginSurvivesRestart() {
+        int userId = repo.createUser("MathKid").id();
+        OkHttpClient client = sessionOnlyClient();
+
+        JavalinTest.test(createApp(100), (server, c) -> {
+            String baseUrl = "http://localhost:" + server.port();
+            selectPlayer(client, baseUrl, userId);
+            assertThat(quizStatus(client, baseUrl)).isEqualTo(200);
+        });
+
+        // A new server with nothing in memory picks the session up from the database
+        JavalinTest.test(createApp(100), (server, c) -> {
+            assertThat(quizStatus(client, "http://localhost:" + server.port())).isEqualTo(200);
+        });
+    }
+
+    @Test
+    void sessionsDroppedFromMemoryAreRestored() {
+        int first = repo.createUser("First").id();
+        int second = repo.createUser("Second").id();
+        OkHttpClient firstClient = sessionOnlyClient();
+        OkHttpClient secondClient = sessionOnlyClient();
+
+        // Room for one session: the second login pushes the first out to the database
+        JavalinTest.test(createApp(1), (server, c) -> {
+            String baseUrl = "http://localhost:" + server.port();
+            selectPlayer(firstClient, baseUrl, first);
+            selectPlayer(secondClient, baseUrl, second);
+
+            assertThat(quizStatus(firstClient, baseUrl)).isEqualTo(200);
+            assertThat(quizStatus(secondClient, baseUrl)).isEqualTo(200);
+        });
+    }
+
+    @Test
+    void unknownSessionIsNotLoggedIn() {
+        OkHttpClient client = sessionOnlyClient();
+
+        JavalinTest.test(createApp(100), (server, c) -> {
+            assertThat(quizStatus(client, "http://localhost:" + server.port())).isEqualTo(302);
+        });
+    }
+}
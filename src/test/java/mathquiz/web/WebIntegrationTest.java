@@ -3,9 +3,12 @@ package mathquiz.web;
 import io.javalin.Javalin;
 import io.javalin.testtools.JavalinTest;
 import mathquiz.App;
+import mathquiz.service.QuizActorRegistry;
 import mathquiz.storage.DatabaseSetup;
 import mathquiz.storage.Repository;
 import mathquiz.storage.SqliteRepository;
+import mathquiz.tts.TtsCacheService;
+import mathquiz.web.handlers.ActorQuizStateStore;
 import okhttp3.OkHttpClient;
 import okhttp3.Request;
 import okhttp3.RequestBody;
@@ -56,6 +59,37 @@ class WebIntegrationTest {
         });
     }
     
+    @Test
+    void adminTtsStatusReturnsJson() {
+        var adminApp = App.createApp(repo, clock, TtsCacheService.disabled(),
+                new ActorQuizStateStore(new QuizActorRegistry(repo, clock)), null, null, "admin-token");
+        JavalinTest.test(adminApp, (server, client) -> {
+            var response = client.get("/admin/tts", req -> req.header("Authorization", "Bearer admin-token"));
+            assertThat(response.code()).isEqualTo(200);
+            assertThat(response.header("Content-Type")).startsWith("application/json");
+            assertThat(response.body().string())
+                .isEqualTo("{\"fetches\":0,\"coalesced\":0,\"memory\":null,\"warmup\":null}");
+        });
+    }
+    
+    @Test
+    void adminTtsStatusRequiresToken() {
+        var adminApp = App.createApp(repo, clock, TtsCacheService.disabled(),
+                new ActorQuizStateStore(new QuizActorRegistry(repo, clock)), null, null, "admin-token");
+        JavalinTest.test(adminApp, (server, client) -> {
+            assertThat(client.get("/admin/tts").code()).isEqualTo(401);
+            assertThat(client.get("/admin/tts", req -> req.header("Authorization", "Bearer wrong")).code())
+                .isEqualTo(401);
+        });
+    }
+    
+    @Test
+    void adminTtsStatusNotServedWithoutToken() {
+        JavalinTest.test(app, (server, client) -> {
+            assertThat(client.get("/admin/tts").code()).isEqualTo(404);
+        });
+    }
+    
     @Test
     void rootRedirectsToPlayers() {
         JavalinTest.test(app, (server, client) -> {
@@ -211,4 +245,119 @@ class WebIntegrationTest {
             assertThat(answerBody).contains("hx-swap-oob");
         });
     }
+    
+    @Test
+    void staleAnswerReShowsCurrentProblem() {
+        JavalinTest.test(app, (server, client) -> {
+            repo.createUser("MathKid");
+            
+            var cookieJar = new okhttp3.CookieJar() {
+                private final java.util.List<okhttp3.Cookie> cookies = new java.util.ArrayList<>();
+                
+                @Override
+                public void saveFromResponse(okhttp3.HttpUrl url, java.util.List<okhttp3.Cookie> cookies) {
+                    this.cookies.addAll(cookies);
+                }
+                
+                @Override
+                public java.util.List<okhttp3.Cookie> loadForRequest(okhttp3.HttpUrl url) {
+                    return cookies;
+                }
+            };
+            var sessionClient = new OkHttpClient.Builder()
+                .cookieJar(cookieJar)
+                .build();
+            String baseUrl = "http://localhost:" + server.port();
+            
+            sessionClient.newCall(new Request.Builder()
+                .url(baseUrl + "/players/1/select")
+                .post(RequestBody.create("", MediaType.parse("application/x-www-form-urlencoded")))
+                .build()).execute();
+            
+            // Problem fragment carries the key of the problem being answered
+            String problemBody = sessionClient.newCall(new Request.Builder()
+                .url(baseUrl + "/quiz/problem")
+                .get()
+                .build()).execute().body().string();
+            var matcher = java.util.regex.Pattern.compile("name=\"problem\" value=\"(\\d+)\"").matcher(problemBody);
+            assertThat(matcher.find()).isTrue();
+            String key = matcher.group(1);
+            
+            // An answer for some other problem (e.g. from an old tab) is not applied
+            String staleBody = sessionClient.newCall(new Request.Builder()
+                .url(baseUrl + "/quiz/answer")
+                .post(RequestBody.create("answer=2&problem=1", MediaType.parse("application/x-www-form-urlencoded")))
+                .build()).execute().body().string();
+            assertThat(staleBody).doesNotContain("class=\"feedback");
+            assertThat(staleBody).contains("name=\"problem\" value=\"" + key + "\"");
+            
+            // The matching answer is
+            String answerBody = sessionClient.newCall(new Request.Builder()
+                .url(baseUrl + "/quiz/answer")
+                .post(RequestBody.create("answer=2&problem=" + key, MediaType.parse("application/x-www-form-urlencoded")))
+                .build()).execute().body().string();
+            assertThat(answerBody).contains("class=\"feedback");
+        });
+    }
+    
+    @Test
+    void tabsOfOnePlayerShareCurrentProblem() {
+        JavalinTest.test(app, (server, client) -> {
+            repo.createUser("MathKid");
+            String baseUrl = "http://localhost:" + server.port();
+            var pattern = java.util.regex.Pattern.compile("name=\"problem\" value=\"(\\d+)\"");
+            
+            // Two tabs with separate sessions, same player
+            var tabA = sessionClient();
+            var tabB = sessionClient();
+            for (var tab : java.util.List.of(tabA, tabB)) {
+                tab.newCall(new Request.Builder()
+                    .url(baseUrl + "/players/1/select")
+                    .post(RequestBody.create("", MediaType.parse("application/x-www-form-urlencoded")))
+                    .build()).execute();
+            }
+            
+            var matcherA = pattern.matcher(tabA.newCall(new Request.Builder()
+                .url(baseUrl + "/quiz/problem").get().build()).execute().body().string());
+            assertThat(matcherA.find()).isTrue();
+            var matcherB = pattern.matcher(tabB.newCall(new Request.Builder()
+                .url(baseUrl + "/quiz/problem").get().build()).execute().body().string());
+            assertThat(matcherB.find()).isTrue();
+            
+            // B's problem replaced A's for the player, and answering it from B settles it
+            String answerB = tabB.newCall(new Request.Builder()
+                .url(baseUrl + "/quiz/answer")
+                .post(RequestBody.create("answer=2&problem=" + matcherB.group(1),
+                    MediaType.parse("application/x-www-form-urlencoded")))
+                .build()).execute().body().string();
+            assertThat(answerB).contains("class=\"feedback");
+            
+            // So A's answer to the problem it still shows is not counted
+            String answerA = tabA.newCall(new Request.Builder()
+                .url(baseUrl + "/quiz/answer")
+                .post(RequestBody.create("answer=2&problem=" + matcherA.group(1),
+                    MediaType.parse("application/x-www-form-urlencoded")))
+                .build()).execute().body().string();
+            assertThat(answerA).doesNotContain("class=\"feedback");
+        });
+    }
+    
+    private static OkHttpClient sessionClient() {
+        var cookieJar = new okhttp3.CookieJar() {
+            private final java.util.List<okhttp3.Cookie> cookies = new java.util.ArrayList<>();
+            
+            @Override
+            public void saveFromResponse(okhttp3.HttpUrl url, java.util.List<okhttp3.Cookie> cookies) {
+                this.cookies.addAll(cookies);
+            }
+            
+            @Override
+            public java.util.List<okhttp3.Cookie> loadForRequest(okhttp3.HttpUrl url) {
+                return cookies;
+            }
+        };
+        return new OkHttpClient.Builder()
+            .cookieJar(cookieJar)
+            .build();
+    }
 }
@@ -0,0 +1,157 @@
+package mathquiz.web.handlers;
+
+import io.javalin.Javalin;
+import io.javalin.testtools.JavalinTest;
+import mathquiz.App;
+import mathquiz.tts.TtsCacheService;
+import okhttp3.Request;
+import okhttp3.Response;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Clock;
+import java.util.Arrays;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * Audio responses: lengths, byte ranges and conditional requests, from disk and from memory.
+ */
+class AudioServingTest {
+
+    @TempDir
+    Path tempDir;
+
+    private TtsCacheService tts;
+    private String hash;
+    private byte[] audio;
+
+    @BeforeEach
+    void setUp() throws Exception {
+        tts = new TtsCacheService(tempDir, "liivika", 1 << 20);
+        hash = tts.computeHash("Kui palju on kaks pluss kolm?");
+        audio = new byte[1000];
+        for (int i = 0; i < audio.length; i++) {
+            audio[i] = (byte) i;
+        }
+        Files.write(tts.getCachePath(hash), audio);
+    }
+
+    private Javalin createApp() {
+        return App.createApp(null, Clock.systemDefaultZone(), tts);
+    }
+
+    private static Request.Builder request(Javalin server, String path) {
+        return new Request.Builder().url("http://localhost:" + server.port() + path);
+    }
+
+    @Test
+    void fullResponseHasLengthEtagAndAcceptRanges() {
+        JavalinTest.test(createApp(), (server, client) -> {
+            // Once from disk, once from memory
+            for (int i = 0; i < 2; i++) {
+                try (Response response = client.request("/audio/" + hash + ".wav", b -> {})) {
+                    assertThat(response.code()).isEqualTo(200);
+                    assertThat(response.header("Content-Type")).isEqualTo("audio/wav");
+                    assertThat(response.header("Content-Length")).isEqualTo("1000");
+                    assertThat(response.header("Accept-Ranges")).isEqualTo("bytes");
+                    assertThat(response.header("ETag")).isEqualTo("\"" + hash + "\"");
+                    assertThat(response.body().bytes()).isEqualTo(audio);
+                }
+            }
+            assertThat(tts.memoryStats().orElseThrow().hits()).isEqualTo(1);
+        });
+    }
+
+    @Test
+    void rangeRequestGetsPartialContent() {
+        JavalinTest.test(createApp(), (server, client) -> {
+            try (Response response = client.request("/audio/" + hash + ".wav",
+                    b -> b.header("Range", "bytes=100-199"))) {
+                assertThat(response.code()).isEqualTo(206);
+                assertThat(response.header("Content-Range")).isEqualTo("bytes 100-199/1000");
+                assertThat(response.header("Content-Length")).isEqualTo("100");
+                assertThat(response.body().bytes()).isEqualTo(Arrays.copyOfRange(audio, 100, 200));
+            }
+        });
+    }
+
+    @Test
+    void openAndSuffixRangesAreClampedToTheFile() {
+        JavalinTest.test(createApp(), (server, client) -> {
+            try (Response response = client.request("/audio/" + hash + ".wav",
+                    b -> b.header("Range", "bytes=900-"))) {
+                assertThat(response.code()).isEqualTo(206);
+                assertThat(response.header("Content-Range")).isEqualTo("bytes 900-999/1000");
+                assertThat(response.body().bytes()).isEqualTo(Arrays.copyOfRange(audio, 900, 1000));
+            }
+            try (Response response = client.request("/audio/" + hash + ".wav",
+                    b -> b.header("Range", "bytes=-10"))) {
+                assertThat(response.code()).isEqualTo(206);
+                assertThat(response.header("Content-Range")).isEqualTo("bytes 990-999/1000");
+                assertThat(response.body().bytes()).isEqualTo(Arrays.copyOfRange(audio, 990, 1000));
+            }
+            // Safari's probe for the first two bytes
+            try (Response response = client.request("/audio/" + hash + ".wav",
+                    b -> b.header("Range", "bytes=0-1"))) {
+                assertThat(response.code()).isEqualTo(206);
+                assertThat(response.body().bytes()).containsExactly(0, 1);
+            }
+        });
+    }
+
+    @Test
+    void unsatisfiableRangeGets416() {
+        JavalinTest.test(createApp(), (server, client) -> {
+            try (Response response = client.request("/audio/" + hash + ".wav",
+                    b -> b.header("Range", "bytes=1000-1100"))) {
+                assertThat(response.code()).isEqualTo(416);
+                assertThat(response.header("Content-Range")).isEqualTo("bytes */1000");
+            }
+        });
+    }
+
+    @Test
+    void multipleOrStaleRangesGetWholeFile() {
+        JavalinTest.test(createApp(), (server, client) -> {
+            try (Response response = client.request("/audio/" + hash + ".wav",
+                    b -> b.header("Range", "bytes=0-1,5-6"))) {
+                assertThat(response.code()).isEqualTo(200);
+                assertThat(response.body().bytes()).isEqualTo(audio);
+            }
+            try (Response response = client.request("/audio/" + hash + ".wav",
+                    b -> b.header("Range", "bytes=0-1").header("If-Range", "\"something-else\""))) {
+                assertThat(response.code()).isEqualTo(200);
+                assertThat(response.body().bytes()).isEqualTo(audio);
+            }
+        });
+    }
+
+    @Test
+    void matchingEtagGets304WithoutBody() {
+        JavalinTest.test(createApp(), (server, client) -> {
+            try (Response response = client.request("/audio/" + hash + ".wav",
+                    b -> b.header("If-None-Match", "\"" + hash + "\""))) {
+                assertThat(response.code()).isEqualTo(304);
+                assertThat(response.header("ETag")).isEqualTo("\"" + hash + "\"");
+                assertThat(response.body().bytes()).isEmpty();
+            }
+            try (Response response = client.request("/audio/" + hash + ".wav",
+                    b -> b.header("If-None-Match", "\"0123456789abcdef0123456789abcdef\""))) {
+                assertThat(response.code()).isEqualTo(200);
+            }
+        });
+    }
+
+    @Test
+    void missingAudioIsNotFound() {
+        JavalinTest.test(createApp(), (server, client) -> {
+            try (Response response = client.get("/audio/0123456789abcdef0123456789abcdef.wav")) {
+                assertThat(response.code()).isEqualTo(404);
+            }
+        });
+    }
+}
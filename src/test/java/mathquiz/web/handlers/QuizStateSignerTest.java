@@ -0,0 +1,77 @@
+package mathquiz.web.handlers;
+
+import mathquiz.domain.FactKey;
+import mathquiz.domain.Operation;
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+import java.time.Instant;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+class QuizStateSignerTest {
+
+    private static final String SECRET = "test-secret-with-enough-bytes";
+    private static final Instant NOW = Instant.parse("2024-01-15T10:00:00Z");
+
+    private final QuizStateSigner signer = new QuizStateSigner(SECRET);
+    private final QuizStateToken token =
+            new QuizStateToken(7, FactKey.of(Operation.MULTIPLICATION, 6, 7), 3, 42L, NOW);
+
+    @Test
+    void signedTokenVerifies() {
+        String signed = signer.sign(token);
+
+        assertThat(signer.verify(signed, NOW)).contains(token);
+        assertThat(signed).hasSizeLessThan(64);
+    }
+
+    @Test
+    void tokenWithoutProblemVerifies() {
+        var empty = new QuizStateToken(7, FactKey.NONE, 0, 1L, NOW);
+
+        assertThat(signer.verify(signer.sign(empty), NOW)).contains(empty);
+    }
+
+    @Test
+    void tamperedPayloadIsRejected() {
+        String signed = signer.sign(token);
+        String other = signer.sign(new QuizStateToken(8, token.problemKey(), token.streak(), token.sequence(), NOW));
+        // Other user's payload with this token's signature
+        String forged = other.substring(0, other.indexOf('.')) + signed.substring(signed.indexOf('.'));
+
+        assertThat(signer.verify(forged, NOW)).isEmpty();
+    }
+
+    @Test
+    void otherSecretIsRejected() {
+        var otherSigner = new QuizStateSigner("another-secret-with-enough-bytes");
+
+        assertThat(otherSigner.verify(signer.sign(token), NOW)).isEmpty();
+    }
+
+    @Test
+    void expiredTokenIsRejected() {
+        var shortLived = new QuizStateSigner(SECRET, Duration.ofMinutes(10));
+        String signed = shortLived.sign(token);
+
+        assertThat(shortLived.verify(signed, NOW.plus(Duration.ofMinutes(10)))).isPresent();
+        assertThat(shortLived.verify(signed, NOW.plus(Duration.ofMinutes(11)))).isEmpty();
+    }
+
+    @Test
+    void malformedTokensAreRejected() {
+        assertThat(signer.verify(null, NOW)).isEmpty();
+        assertThat(signer.verify("", NOW)).isEmpty();
+        assertThat(signer.verify("no-dot", NOW)).isEmpty();
+        assertThat(signer.verify("!!!.???", NOW)).isEmpty();
+        assertThat(signer.verify("AAAA.AAAA", NOW)).isEmpty();
+    }
+
+    @Test
+    void shortSecretIsRefused() {
+        assertThatThrownBy(() -> new QuizStateSigner("short"))
+            .isInstanceOf(IllegalArgumentException.class);
+    }
+}
@@ -0,0 +1,216 @@
+package mathquiz.web.handlers;
+
+import io.javalin.Javalin;
+import io.javalin.testtools.JavalinTest;
+import mathquiz.App;
+import mathquiz.storage.DatabaseSetup;
+import mathquiz.storage.SqliteRepository;
+import mathquiz.tts.TtsCacheService;
+import okhttp3.*;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.file.Path;
+import java.time.Clock;
+import java.time.Instant;
+import java.time.LocalDate;
+import java.time.ZoneId;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * Two app instances sharing one database and secret, serving the same player in turns.
+ */
+class SignedQuizStateStoreTest {
+
+    private static final String SECRET = "shared-secret-for-both-nodes";
+    private static final Pattern PROBLEM_KEY = Pattern.compile("name=\"problem\" value=\"(\\d+)\"");
+
+    @TempDir
+    Path tempDir;
+
+    private DatabaseSetup.SetupResult db;
+    private SqliteRepository repo;
+    private Clock clock;
+
+    @BeforeEach
+    void setUp() {
+        db = DatabaseSetup.setup(tempDir.resolve("test.db"));
+        repo = new SqliteRepository(db.jdbi());
+        clock = Clock.fixed(Instant.parse("2024-01-15T10:00:00Z"), ZoneId.of("UTC"));
+    }
+
+    @AfterEach
+    void tearDown() {
+        db.close();
+    }
+
+    private Javalin createNode(String secret) {
+        // Each node has its own repository over the shared database, like separate processes
+        var nodeRepo = new SqliteRepository(db.jdbi());
+        return App.createApp(nodeRepo, clock, TtsCacheService.disabled(),
+                new SignedQuizStateStore(nodeRepo, clock, new QuizStateSigner(secret)), null);
+    }
+
+    /**
+     * Keeps the latest cookie of each name, and lets a test put back an old one.
+     */
+    private static final class TestCookieJar implements CookieJar {
+        private final List<Cookie> cookies = new ArrayList<>();
+
+        @Override
+        public synchronized void saveFromResponse(HttpUrl url, List<Cookie> cookies) {
+            cookies.forEach(this::put);
+        }
+
+        @Override
+        public synchronized List<Cookie> loadForRequest(HttpUrl url) {
+            return List.copyOf(cookies);
+        }
+
+        synchronized void put(Cookie cookie) {
+            cookies.removeIf(c -> c.name().equals(cookie.name()));
+            cookies.add(cookie);
+        }
+
+        synchronized Cookie get(String name) {
+            return cookies.stream().filter(c -> c.name().equals(name)).findFirst().orElseThrow();
+        }
+    }
+
+    private static OkHttpClient client() {
+        return client(new TestCookieJar());
+    }
+
+    private static OkHttpClient client(TestCookieJar cookieJar) {
+        return new OkHttpClient.Builder().cookieJar(cookieJar).build();
+    }
+
+    private static String post(OkHttpClient client, String url, String form) throws Exception {
+        try (Response response = client.newCall(new Request.Builder()
+                .url(url)
+                .post(RequestBody.create(form, MediaType.parse("application/x-www-form-urlencoded")))
+                .build()).execute()) {
+            return response.body().string();
+        }
+    }
+
+    private static String get(OkHttpClient client, String url) throws Exception {
+        try (Response response = client.newCall(new Request.Builder().url(url).get().build()).execute()) {
+            return response.body().string();
+        }
+    }
+
+    private static String problemKey(String body) {
+        Matcher matcher = PROBLEM_KEY.matcher(body);
+        assertThat(matcher.find()).as("problem fragment with key").isTrue();
+        return matcher.group(1);
+    }
+
+    @Test
+    void eitherNodeServesEitherRequest() {
+        int userId = repo.createUser("MathKid").id();
+        OkHttpClient client = client();
+
+        JavalinTest.test(createNode(SECRET), (nodeA, ca) -> {
+            JavalinTest.test(createNode(SECRET), (nodeB, cb) -> {
+                String a = "http://localhost:" + nodeA.port();
+                String b = "http://localhost:" + nodeB.port();
+                post(client, a + "/players/" + userId + "/select", "");
+
+                // Problem from A, answered on B
+                String key = problemKey(get(client, a + "/quiz/problem"));
+                String feedback = post(client, b + "/quiz/answer", "answer=2&problem=" + key);
+                assertThat(feedback).contains("class=\"feedback");
+
+                // Replaying the same answer on A finds the problem already answered
+                String replay = post(client, a + "/quiz/answer", "answer=2&problem=" + key);
+                assertThat(replay).doesNotContain("class=\"feedback");
+                String next = problemKey(replay);
+
+                // And the new problem can be answered on B again
+                assertThat(post(client, b + "/quiz/answer", "answer=2&problem=" + next))
+                    .contains("class=\"feedback");
+            });
+        });
+
+        var today = repo.getDailyStats(userId, LocalDate.of(2024, 1, 15)).orElseThrow();
+        assertThat(today.problemsSolved()).isEqualTo(2);
+    }
+
+    @Test
+    void nodeWithOtherSecretIgnoresState() {
+        int userId = repo.createUser("MathKid").id();
+        OkHttpClient client = client();
+
+        JavalinTest.test(createNode(SECRET), (nodeA, ca) -> {
+            JavalinTest.test(createNode("some-other-secret-entirely"), (nodeB, cb) -> {
+                String a = "http://localhost:" + nodeA.port();
+                String b = "http://localhost:" + nodeB.port();
+                post(client, a + "/players/" + userId + "/select", "");
+
+                String key = problemKey(get(client, a + "/quiz/problem"));
+                String response = post(client, b + "/quiz/answer", "answer=2&problem=" + key);
+
+                // B can't read A's token, so it has no current problem and hands out a new one
+                assertThat(response).doesNotContain("class=\"feedback");
+                assertThat(response).contains("class=\"problem");
+            });
+        });
+
+        assertThat(repo.getDailyStats(userId, LocalDate.of(2024, 1, 15))).isEmpty();
+    }
+
+    @Test
+    void replayedTokenIsRejected() {
+        int userId = repo.createUser("MathKid").id();
+        var cookieJar = new TestCookieJar();
+        OkHttpClient client = client(cookieJar);
+
+        JavalinTest.test(createNode(SECRET), (node, c) -> {
+            String a = "http://localhost:" + node.port();
+            post(client, a + "/players/" + userId + "/select", "");
+
+            String key = problemKey(get(client, a + "/quiz/problem"));
+            Cookie issued = cookieJar.get(SignedQuizStateStore.COOKIE_QUIZ_STATE);
+            assertThat(post(client, a + "/quiz/answer", "answer=2&problem=" + key))
+                .contains("class=\"feedback");
+
+            // Sending the old cookie again must not count the answer a second time
+            cookieJar.put(issued);
+            assertThat(post(client, a + "/quiz/answer", "answer=2&problem=" + key))
+                .doesNotContain("class=\"feedback");
+        });
+
+        var today = repo.getDailyStats(userId, LocalDate.of(2024, 1, 15)).orElseThrow();
+        assertThat(today.problemsSolved()).isEqualTo(1);
+    }
+
+    @Test
+    void devicesOfOnePlayerShareCurrentProblem() {
+        int userId = repo.createUser("MathKid").id();
+        OkHttpClient deviceA = client();
+        OkHttpClient deviceB = client();
+
+        JavalinTest.test(createNode(SECRET), (node, c) -> {
+            String a = "http://localhost:" + node.port();
+            post(deviceA, a + "/players/" + userId + "/select", "");
+            post(deviceB, a + "/players/" + userId + "/select", "");
+
+            String keyA = problemKey(get(deviceA, a + "/quiz/problem"));
+            // B starting over supersedes A's token
+            get(deviceB, a + "/quiz/problem");
+
+            assertThat(post(deviceA, a + "/quiz/answer", "answer=2&problem=" + keyA))
+                .doesNotContain("class=\"feedback");
+        });
+
+        assertThat(repo.getDailyStats(userId, LocalDate.of(2024, 1, 15))).isEmpty();
+    }
+}